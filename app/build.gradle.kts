@@ -25,6 +25,12 @@ android {
                 "proguard-rules.pro"
             )
         }
+        // Bản release ký bằng debug key để module :macrobenchmark cài và đo được
+        create("benchmark") {
+            initWith(getByName("release"))
+            signingConfig = signingConfigs.getByName("debug")
+            matchingFallbacks += listOf("release")
+        }
     }
     compileOptions {
         sourceCompatibility = JavaVersion.VERSION_17
@@ -32,6 +38,7 @@ android {
     }
     buildFeatures {
         viewBinding = true
+        buildConfig = true
     }
 
     packaging {
@@ -49,6 +56,7 @@ dependencies {
     implementation(libs.constraintlayout)
     implementation(libs.play.services.tasks)
     testImplementation(libs.junit)
+    testImplementation(libs.mockwebserver)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
 
@@ -60,6 +68,7 @@ dependencies {
         exclude(group = "com.google.protobuf", module = "protobuf-lite")
     }
     implementation("com.google.firebase:firebase-auth")
+    implementation("com.google.firebase:firebase-storage")
     // Sửa Google Auth để dùng BOM
     implementation("com.google.auth:google-auth-library-oauth2-http:1.33.1")
 
@@ -85,4 +94,23 @@ dependencies {
 
     //security
     implementation("androidx.security:security-crypto:1.1.0-alpha06")
+
+    //Local message store
+    implementation(libs.room.runtime)
+    annotationProcessor(libs.room.compiler)
+
+    //Background work
+    implementation(libs.work.runtime)
+
+    //Paged user directory
+    implementation(libs.paging.runtime)
+    implementation(libs.paging.guava)
+    implementation(libs.concurrent.futures)
+
+    //App-wide presence
+    implementation(libs.lifecycle.process)
+
+    //Startup tracing
+    implementation(libs.tracing)
+    implementation(libs.profileinstaller)
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package com.androids.javachat.utilities;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.androids.javachat.models.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Đo một lượt cập nhật hội thoại trên 5k hội thoại với nhiều tin mới liên tục trên thiết bị thật:
+ * ConversationList (tra theo id, binary search, một lệnh notifyItem*) so với cách cũ
+ * (quét tuần tự tìm hội thoại, sort lại cả danh sách, notifyDataSetChanged bind lại mọi item).
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConversationListBenchmark {
+
+    private static final String TAG = "ConversationListBenchmark";
+    private static final int CONVERSATIONS = 5_000;
+    private static final int UPDATES = 20_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    private static final Comparator<ChatMessage> NEWEST_FIRST = Comparator
+            .comparing((ChatMessage chatMessage) -> chatMessage.dateObject, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(chatMessage -> chatMessage.conversionId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private List<ChatMessage> initial;
+    private List<ChatMessage> updates;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        initial = new ArrayList<>();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            initial.add(conversation("user-" + i, random.nextInt(1_000_000), "hello"));
+        }
+        // Phần lớn là tin mới đẩy hội thoại lên đầu, phần còn lại đổi nội dung ở vị trí bất kỳ
+        updates = new ArrayList<>();
+        long clock = 1_000_000;
+        for (int i = 0; i < UPDATES; i++) {
+            String id = "user-" + random.nextInt(CONVERSATIONS);
+            long time = random.nextInt(10) < 8 ? ++clock : random.nextInt(1_000_000);
+            updates.add(conversation(id, time, "message " + i));
+        }
+    }
+
+    @Test
+    public void keyedUpdates_areCheaperThanScanAndSort() {
+        int[] rebinds = new int[1];
+        double fullSort = measure(() -> {
+            List<ChatMessage> list = new ArrayList<>(initial);
+            Collections.sort(list, NEWEST_FIRST);
+            rebinds[0] = 0;
+            for (ChatMessage update : updates) {
+                for (int i = 0; i < list.size(); i++) {
+                    if (list.get(i).conversionId.equals(update.conversionId)) {
+                        list.set(i, update);
+                        break;
+                    }
+                }
+                Collections.sort(list, NEWEST_FIRST);
+                rebinds[0] += list.size();
+            }
+        });
+        int fullSortRebinds = rebinds[0];
+        double keyed = measure(() -> {
+            ConversationList list = new ConversationList(NEWEST_FIRST);
+            for (ChatMessage conversation : initial) {
+                list.upsert(conversation);
+            }
+            rebinds[0] = 0;
+            list.setListener(rebindCounter(rebinds));
+            for (ChatMessage update : updates) {
+                list.upsert(update);
+            }
+        });
+        Log.i(TAG, String.format("%d conversations: scan+sort %.0f ns/update (%d rebinds), "
+                        + "keyed %.0f ns/update (%d rebinds) (%.1fx)",
+                CONVERSATIONS, fullSort, fullSortRebinds, keyed, rebinds[0], fullSort / keyed));
+        assertTrue(keyed < fullSort);
+    }
+
+    private static ChatMessage conversation(String conversionId, long time, String message) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.conversionId = conversionId;
+        chatMessage.dateObject = new Date(time);
+        chatMessage.message = message;
+        return chatMessage;
+    }
+
+    // Đếm số item adapter phải bind lại
+    private static ConversationList.Listener rebindCounter(int[] rebinds) {
+        return new ConversationList.Listener() {
+            @Override
+            public void onInserted(int position) {
+                rebinds[0]++;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+            }
+
+            @Override
+            public void onChanged(int position) {
+                rebinds[0]++;
+            }
+
+            @Override
+            public void onRemoved(int position) {
+            }
+        };
+    }
+
+    private double measure(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / (double) (MEASUREMENT_ITERATIONS * UPDATES);
+    }
+}
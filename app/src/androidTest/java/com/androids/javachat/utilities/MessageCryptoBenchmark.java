@@ -0,0 +1,189 @@
+package com.androids.javachat.utilities;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Đo chi phí giải mã mỗi tin nhắn trên thiết bị thật (warmup + measurement): cách cũ decode khóa,
+ * gọi Cipher.getInstance và Base64 mỗi lần, cách mới dùng MessageCrypto với khóa cache và MessageEnvelope;
+ * kèm thông lượng AES-GCM so với AES-CBC trên tin nhắn 50–1000 byte.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MessageCryptoBenchmark {
+
+    private static final String TAG = "MessageCryptoBenchmark";
+    private static final int MESSAGES = 500;
+    private static final int WARMUP_ITERATIONS = 5;
+    private static final int MEASUREMENT_ITERATIONS = 10;
+    private static final String CONVERSATION = "alice_bob";
+    private static final int[] MESSAGE_SIZES = {50, 200, 1000};
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private Cipher cbcCipher;
+    private SecretKeySpec cbcKey;
+    private byte[] cbcKeyId;
+    private String encodedKey;
+    private List<byte[]> payloads;
+    private List<String> legacyMessages;
+    private MessageCrypto messageCrypto;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] keyBytes = new byte[32];
+        secureRandom.nextBytes(keyBytes);
+        cbcCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cbcKey = new SecretKeySpec(keyBytes, "AES");
+        cbcKeyId = Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(keyBytes), 4);
+        encodedKey = Base64.getEncoder().encodeToString(keyBytes);
+        messageCrypto = new MessageCrypto();
+        messageCrypto.setKey(encodedKey);
+        payloads = new ArrayList<>();
+        legacyMessages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            payloads.add(messageCrypto.encrypt(CONVERSATION, "Tin nhắn thử nghiệm số " + i));
+            legacyMessages.add(legacyEncrypt(keyBytes, "Tin nhắn thử nghiệm số " + i));
+        }
+    }
+
+    @Test
+    public void envelope_isCheaperPerMessage() throws Exception {
+        double legacy = measure(() -> {
+            for (String message : legacyMessages) {
+                legacyDecrypt(encodedKey, message);
+            }
+        });
+        double base64 = measure(() -> {
+            List<MessageEnvelope> envelopes = new ArrayList<>(MESSAGES);
+            for (String legacyMessage : legacyMessages) {
+                envelopes.add(MessageEnvelope.read(null, legacyMessage));
+            }
+            messageCrypto.decryptAll(keys(MESSAGES), envelopes);
+        });
+        double envelope = measure(() -> messageCrypto.decryptAll(keys(MESSAGES), envelopes(payloads)));
+        Log.i(TAG, String.format("Per message: legacy %.0f ns, cached key + Base64 %.0f ns, binary envelope %.0f ns (%.1fx)",
+                legacy, base64, envelope, legacy / envelope));
+        assertTrue(envelope < legacy);
+    }
+
+    @Test
+    public void gcmVersusCbcThroughput() throws Exception {
+        for (int size : MESSAGE_SIZES) {
+            String message = "x".repeat(size);
+            List<byte[]> gcm = new ArrayList<>(MESSAGES);
+            List<byte[]> cbc = new ArrayList<>(MESSAGES);
+            double gcmEncrypt = measure(() -> {
+                gcm.clear();
+                for (int i = 0; i < MESSAGES; i++) {
+                    gcm.add(messageCrypto.encrypt(CONVERSATION, message));
+                }
+            });
+            double cbcEncrypt = measure(() -> {
+                cbc.clear();
+                for (int i = 0; i < MESSAGES; i++) {
+                    cbc.add(cbcEnvelope(message));
+                }
+            });
+            List<MessageEnvelope> gcmEnvelopes = envelopes(gcm);
+            List<MessageEnvelope> cbcEnvelopes = envelopes(cbc);
+            double gcmDecrypt = measure(() -> messageCrypto.decryptAll(keys(MESSAGES), gcmEnvelopes));
+            double cbcDecrypt = measure(() -> messageCrypto.decryptAll(keys(MESSAGES), cbcEnvelopes));
+            assertEquals(message, messageCrypto.decryptAll(keys(1), gcmEnvelopes.subList(0, 1)).get(0));
+            Log.i(TAG, String.format("AES %4d bytes: encrypt GCM %.1f MB/s, CBC %.1f MB/s; "
+                            + "decrypt GCM %.1f MB/s, CBC %.1f MB/s; envelope GCM %d bytes, CBC %d bytes",
+                    size, megabytesPerSecond(size, gcmEncrypt), megabytesPerSecond(size, cbcEncrypt),
+                    megabytesPerSecond(size, gcmDecrypt), megabytesPerSecond(size, cbcDecrypt),
+                    gcm.get(0).length, cbc.get(0).length));
+        }
+    }
+
+    private static double megabytesPerSecond(int size, double nanosPerMessage) {
+        return size / nanosPerMessage * 1_000_000_000 / (1024 * 1024);
+    }
+
+    private static List<String> keys(int count) {
+        return Collections.nCopies(count, CONVERSATION);
+    }
+
+    private static List<MessageEnvelope> envelopes(List<byte[]> payloads) {
+        List<MessageEnvelope> envelopes = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            envelopes.add(MessageEnvelope.read(payload, null));
+        }
+        return envelopes;
+    }
+
+    private double measure(ThrowingRunnable runnable) throws Exception {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / (double) (MEASUREMENT_ITERATIONS * MESSAGES);
+    }
+
+    // Envelope AES-CBC (version 1) với khóa chung, như trước khi chuyển sang GCM; Cipher và key id dùng lại như MessageCrypto
+    private byte[] cbcEnvelope(String message) throws Exception {
+        byte[] iv = new byte[16];
+        secureRandom.nextBytes(iv);
+        Cipher cipher = cbcCipher;
+        cipher.init(Cipher.ENCRYPT_MODE, cbcKey, new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        int headerLength = MessageEnvelope.headerLength(cbcKeyId, iv);
+        byte[] envelope = new byte[headerLength + ciphertext.length];
+        MessageEnvelope.writeHeader(envelope, MessageEnvelope.VERSION_AES_CBC, cbcKeyId, iv, 0);
+        System.arraycopy(ciphertext, 0, envelope, headerLength, ciphertext.length);
+        return envelope;
+    }
+
+    // Định dạng chuỗi trước đây: Base64(IV + ciphertext CBC)
+    private static String legacyEncrypt(byte[] keyBytes, String message) throws Exception {
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        byte[] encrypted = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, encrypted, 0, iv.length);
+        System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
+        return Base64.getMimeEncoder().encodeToString(encrypted);
+    }
+
+    // Bản sao cách giải mã trước đây trong ChatActivity/MainActivity
+    private static String legacyDecrypt(String aesKey, String encryptedMessage) throws Exception {
+        byte[] keyBytes = Base64.getMimeDecoder().decode(aesKey);
+        byte[] encryptedBytes = Base64.getMimeDecoder().decode(encryptedMessage);
+        byte[] iv = new byte[16];
+        byte[] ciphertext = new byte[encryptedBytes.length - 16];
+        System.arraycopy(encryptedBytes, 0, iv, 0, 16);
+        System.arraycopy(encryptedBytes, 16, ciphertext, 0, encryptedBytes.length - 16);
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
+        return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+    }
+
+    private interface ThrowingRunnable {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,86 @@
+package com.androids.javachat.utilities;
+
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Đo chi phí một lần cập nhật trên danh sách 10k phần tử trên thiết bị thật: chèn bằng binary search
+ * so với cách cũ (add rồi Collections.sort cả danh sách).
+ */
+@RunWith(AndroidJUnit4.class)
+public class OrderedListBenchmark {
+
+    private static final String TAG = "OrderedListBenchmark";
+    private static final int ITEMS = 10_000;
+    private static final int UPDATES = 1_000;
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASUREMENT_ITERATIONS = 5;
+
+    private static final Comparator<long[]> BY_TIME_THEN_ID = Comparator
+            .comparingLong((long[] item) -> item[0])
+            .thenComparingLong(item -> item[1]);
+
+    private List<long[]> initialItems;
+    private List<long[]> updates;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        initialItems = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            initialItems.add(new long[]{random.nextInt(1_000_000), i});
+        }
+        updates = new ArrayList<>();
+        for (int i = 0; i < UPDATES; i++) {
+            updates.add(new long[]{random.nextInt(1_000_000), ITEMS + i});
+        }
+    }
+
+    @Test
+    public void binaryInsert_isCheaperPerUpdate() {
+        double sorted = measure(() -> {
+            List<long[]> list = new ArrayList<>(initialItems);
+            Collections.sort(list, BY_TIME_THEN_ID);
+            for (long[] update : updates) {
+                list.add(update);
+                Collections.sort(list, BY_TIME_THEN_ID);
+            }
+        });
+        double ordered = measure(() -> {
+            OrderedList<long[]> list = new OrderedList<>(BY_TIME_THEN_ID);
+            for (long[] item : initialItems) {
+                list.add(item);
+            }
+            for (long[] update : updates) {
+                list.add(update);
+            }
+        });
+        Log.i(TAG, String.format("%d items: add+sort %.0f ns/update, binary insert %.0f ns/update (%.1fx)",
+                ITEMS, sorted, ordered, sorted / ordered));
+        assertTrue(ordered < sorted);
+    }
+
+    private double measure(Runnable runnable) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            runnable.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASUREMENT_ITERATIONS; i++) {
+            runnable.run();
+        }
+        return (System.nanoTime() - start) / (double) (MEASUREMENT_ITERATIONS * UPDATES);
+    }
+}
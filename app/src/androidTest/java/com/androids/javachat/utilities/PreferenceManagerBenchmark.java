@@ -0,0 +1,59 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.*;
+
+/**
+ * Đo chi phí PreferenceManager cho mỗi lần mở activity trên thiết bị thật: cách cũ tạo lại
+ * MasterKey + EncryptedSharedPreferences và giải mã từng lần đọc, cách mới lấy singleton và đọc từ snapshot.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PreferenceManagerBenchmark {
+
+    private static final String TAG = "PreferenceBenchmark";
+    private static final int LAUNCHES = 20;
+    // Số lần đọc preferences trong onCreate/onResume của một activity điển hình
+    private static final int READS_PER_LAUNCH = 6;
+
+    @Test
+    public void singleton_isCheaperPerActivityLaunch() {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        PreferenceManager.getInstance(context).putString(Constant.KEY_USER_ID, "benchmark-user");
+        PreferenceManager.getInstance(context).flush();
+
+        long legacyNanos = 0;
+        for (int i = 0; i < LAUNCHES; i++) {
+            long start = System.nanoTime();
+            SharedPreferences preferences = PreferenceManager.openSharedPreferences(context);
+            for (int r = 0; r < READS_PER_LAUNCH; r++) {
+                assertEquals("benchmark-user", preferences.getString(Constant.KEY_USER_ID, null));
+            }
+            legacyNanos += System.nanoTime() - start;
+        }
+
+        long singletonNanos = 0;
+        for (int i = 0; i < LAUNCHES; i++) {
+            long start = System.nanoTime();
+            PreferenceManager preferenceManager = PreferenceManager.getInstance(context);
+            for (int r = 0; r < READS_PER_LAUNCH; r++) {
+                assertEquals("benchmark-user", preferenceManager.getString(Constant.KEY_USER_ID));
+            }
+            singletonNanos += System.nanoTime() - start;
+        }
+
+        double legacyMs = legacyNanos / 1e6 / LAUNCHES;
+        double singletonMs = singletonNanos / 1e6 / LAUNCHES;
+        Log.i(TAG, String.format("Per launch: legacy %.3f ms, singleton %.3f ms, saved %.3f ms",
+                legacyMs, singletonMs, legacyMs - singletonMs));
+        assertTrue(singletonNanos < legacyNanos);
+    }
+}
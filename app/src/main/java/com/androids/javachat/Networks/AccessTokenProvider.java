@@ -0,0 +1,172 @@
+package com.androids.javachat.Networks;
+
+import android.content.Context;
+
+import com.androids.javachat.R;
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Access token OAuth cho FCM, dùng chung cho cả app:
+// credentials chỉ đọc một lần, token được cache tới gần lúc hết hạn và làm mới ở background trước khi hết hạn
+public class AccessTokenProvider implements TokenProvider {
+
+    public interface Source {
+        Token fetch() throws IOException;
+    }
+
+    public static class Token {
+        public final String value;
+        public final long expiresAtMillis;
+
+        public Token(String value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+    }
+
+    // Token còn dưới 1 phút coi như đã hết hạn
+    static final long EXPIRY_MARGIN_MS = 60 * 1000;
+    // Làm mới ở background trước khi hết hạn 5 phút
+    static final long REFRESH_AHEAD_MS = 5 * 60 * 1000;
+    private static final long MIN_REFRESH_DELAY_MS = 30 * 1000;
+
+    private static AccessTokenProvider instance;
+
+    private final Source source;
+    private final ScheduledExecutorService executor;
+    private final LongSupplier clock;
+    private Token token;
+    private CompletableFuture<String> pendingFetch;
+    private ScheduledFuture<?> scheduledRefresh;
+
+    AccessTokenProvider(Source source, ScheduledExecutorService executor, LongSupplier clock) {
+        this.source = source;
+        this.executor = executor;
+        this.clock = clock;
+    }
+
+    public static synchronized AccessTokenProvider getInstance(Context context) {
+        if (instance == null) {
+            instance = new AccessTokenProvider(new CredentialsSource(context.getApplicationContext()),
+                    Executors.newSingleThreadScheduledExecutor(), System::currentTimeMillis);
+            // Tải trước để lần gửi đầu tiên không phải chờ
+            instance.getTokenAsync();
+        }
+        return instance;
+    }
+
+    // Trả ngay token đang cache nếu còn hạn, nếu không thì dùng chung một lần tải đang chạy
+    public synchronized CompletableFuture<String> getTokenAsync() {
+        if (token != null && clock.getAsLong() < token.expiresAtMillis - EXPIRY_MARGIN_MS) {
+            return CompletableFuture.completedFuture(token.value);
+        }
+        return fetchAsync();
+    }
+
+    public synchronized CompletableFuture<String> refreshAsync() {
+        return fetchAsync();
+    }
+
+    // Dùng trên thread của OkHttp (interceptor/authenticator), không gọi từ UI thread
+    @Override
+    public String getToken() throws IOException {
+        return await(getTokenAsync());
+    }
+
+    @Override
+    public String refreshToken() throws IOException {
+        return await(refreshAsync());
+    }
+
+    private CompletableFuture<String> fetchAsync() {
+        if (pendingFetch == null) {
+            CompletableFuture<String> future = new CompletableFuture<>();
+            pendingFetch = future;
+            executor.execute(() -> fetch(future));
+        }
+        return pendingFetch;
+    }
+
+    private void fetch(CompletableFuture<String> future) {
+        Token fresh;
+        try {
+            fresh = source.fetch();
+        } catch (Exception e) {
+            synchronized (this) {
+                pendingFetch = null;
+            }
+            future.completeExceptionally(e);
+            return;
+        }
+        synchronized (this) {
+            token = fresh;
+            pendingFetch = null;
+            scheduleRefresh(fresh);
+        }
+        future.complete(fresh.value);
+    }
+
+    private void scheduleRefresh(Token fresh) {
+        if (scheduledRefresh != null) {
+            scheduledRefresh.cancel(false);
+        }
+        long delay = fresh.expiresAtMillis - REFRESH_AHEAD_MS - clock.getAsLong();
+        scheduledRefresh = executor.schedule(this::refreshInBackground, Math.max(delay, MIN_REFRESH_DELAY_MS), TimeUnit.MILLISECONDS);
+    }
+
+    private void refreshInBackground() {
+        refreshAsync();
+    }
+
+    private static String await(CompletableFuture<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to get access token", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for access token", e);
+        }
+    }
+
+    // Đọc service account một lần, chỉ chạy trên executor của provider
+    private static class CredentialsSource implements Source {
+        private final Context context;
+        private GoogleCredentials credentials;
+
+        CredentialsSource(Context context) {
+            this.context = context;
+        }
+
+        @Override
+        public Token fetch() throws IOException {
+            if (credentials == null) {
+                try (InputStream serviceAccountStream = context.getResources().openRawResource(R.raw.account_service)) {
+                    credentials = GoogleCredentials
+                            .fromStream(serviceAccountStream)
+                            .createScoped(Collections.singletonList("https://www.googleapis.com/auth/firebase.messaging"));
+                }
+            }
+            credentials.refresh();
+            AccessToken accessToken = credentials.getAccessToken();
+            long expiresAt = accessToken.getExpirationTime() != null
+                    ? accessToken.getExpirationTime().getTime()
+                    : Long.MAX_VALUE;
+            return new Token(accessToken.getTokenValue(), expiresAt);
+        }
+    }
+}
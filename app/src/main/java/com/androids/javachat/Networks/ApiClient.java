@@ -1,45 +1,64 @@
 package com.androids.javachat.Networks;
 
+import com.androids.javachat.BuildConfig;
+
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.ConnectionPool;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
+// Một OkHttpClient/Retrofit dùng chung cho cả process: chung connection pool, HTTP/2 multiplexing với FCM
 public class ApiClient {
-    private static Retrofit retrofit;
     private static final String BASE_URL = "https://fcm.googleapis.com/";
 
-    public static ApiService getApiService(String accessToken) {
-        HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
-        loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.BODY);
-
-        OkHttpClient client = new OkHttpClient.Builder()
-                .addInterceptor(loggingInterceptor)
-                .addInterceptor(chain -> {
-                    okhttp3.Request original = chain.request();
-                    okhttp3.Request request = original.newBuilder()
-                            .header("Authorization", "Bearer " + accessToken)
-                            .build();
-                    return chain.proceed(request);
-                })
+    private static TokenProvider tokenProvider;
+    private static ApiService apiService;
+
+    // Gọi một lần trước khi gửi; các lần sau bị bỏ qua
+    public static synchronized void init(TokenProvider provider) {
+        if (tokenProvider == null) {
+            tokenProvider = provider;
+        }
+    }
+
+    public static synchronized ApiService getApiService() {
+        if (tokenProvider == null) {
+            throw new IllegalStateException("ApiClient.init must be called before getApiService");
+        }
+        if (apiService == null) {
+            OkHttpClient client = createClient(tokenProvider, BuildConfig.DEBUG);
+            apiService = createRetrofit(BASE_URL, client).create(ApiService.class);
+        }
+        return apiService;
+    }
+
+    static OkHttpClient createClient(TokenProvider tokenProvider, boolean debug) {
+        BearerTokenInterceptor bearerTokenInterceptor = new BearerTokenInterceptor(tokenProvider);
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .addInterceptor(bearerTokenInterceptor)
+                .authenticator(bearerTokenInterceptor)
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
-                .writeTimeout(30, TimeUnit.SECONDS)
-                .build();
-
-        if (retrofit == null) {
-            retrofit = new Retrofit.Builder()
-                    .baseUrl(BASE_URL)
-                    .client(client)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+                .writeTimeout(30, TimeUnit.SECONDS);
+        if (debug) {
+            // Chỉ log header, không log body chứa FCM token của người nhận
+            HttpLoggingInterceptor loggingInterceptor = new HttpLoggingInterceptor();
+            loggingInterceptor.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+            loggingInterceptor.redactHeader("Authorization");
+            builder.addInterceptor(loggingInterceptor);
         }
-        return retrofit.create(ApiService.class);
+        return builder.build();
     }
 
-    public static void resetRetrofit() {
-        retrofit = null;
+    static Retrofit createRetrofit(String baseUrl, OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
     }
-}
\ No newline at end of file
+}
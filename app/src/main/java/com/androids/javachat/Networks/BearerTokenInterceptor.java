@@ -0,0 +1,53 @@
+package com.androids.javachat.Networks;
+
+import java.io.IOException;
+
+import okhttp3.Authenticator;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.Route;
+
+// Gắn "Authorization: Bearer <token>" từ token đang cache; khi nhận 401 thì làm mới token và thử lại một lần
+public class BearerTokenInterceptor implements Interceptor, Authenticator {
+
+    private static final String HEADER_AUTHORIZATION = "Authorization";
+
+    private final TokenProvider tokenProvider;
+
+    public BearerTokenInterceptor(TokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request().newBuilder()
+                .header(HEADER_AUTHORIZATION, bearer(tokenProvider.getToken()))
+                .build();
+        return chain.proceed(request);
+    }
+
+    @Override
+    public Request authenticate(Route route, Response response) throws IOException {
+        if (response.priorResponse() != null) {
+            // Đã thử lại với token mới mà vẫn bị từ chối
+            return null;
+        }
+        String failedHeader = response.request().header(HEADER_AUTHORIZATION);
+        String token;
+        synchronized (this) {
+            token = tokenProvider.getToken();
+            // Request khác có thể đã làm mới token trong lúc chờ
+            if (bearer(token).equals(failedHeader)) {
+                token = tokenProvider.refreshToken();
+            }
+        }
+        return response.request().newBuilder()
+                .header(HEADER_AUTHORIZATION, bearer(token))
+                .build();
+    }
+
+    private static String bearer(String token) {
+        return "Bearer " + token;
+    }
+}
@@ -0,0 +1,98 @@
+package com.androids.javachat.Networks;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.androids.javachat.models.MessageRequest;
+import com.androids.javachat.models.MessageResponse;
+import com.androids.javachat.models.User;
+import com.androids.javachat.utilities.EventLogger;
+import com.androids.javachat.utilities.UserRepository;
+
+import java.util.HashMap;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+// Gửi một đợt đã gộp thành một thông báo FCM data-only; access token được gắn bởi interceptor của ApiClient
+public class FcmNotificationSender implements NotificationCoalescer.Sender {
+
+    private static final String TAG = "FCM_TEST";
+
+    private final Context context;
+
+    public FcmNotificationSender(Context context) {
+        this.context = context;
+        ApiClient.init(AccessTokenProvider.getInstance(context));
+    }
+
+    @Override
+    public void send(NotificationCoalescer.Burst burst) {
+        if (burst.recipientToken != null && !burst.recipientToken.isEmpty()) {
+            post(burst);
+            return;
+        }
+        // Token đã thấy trước đó (trong TTL) được lấy từ cache, không gọi Firestore
+        UserRepository.getInstance(context).get(burst.recipientId, new UserRepository.Callback<User>() {
+            @Override
+            public void onSuccess(User user) {
+                burst.recipientToken = user.token;
+                if (burst.recipientToken != null && !burst.recipientToken.isEmpty()) {
+                    post(burst);
+                } else {
+                    Log.e(TAG, "FCM token still not found for receiver after fetch");
+                    log(burst, "fcm_token_missing");
+                }
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e(TAG, "Failed to fetch FCM token: " + e);
+                log(burst, "fcm_fetch_failed");
+            }
+        });
+    }
+
+    private void post(NotificationCoalescer.Burst burst) {
+        HashMap<String, String> data = new HashMap<>();
+        data.put("title", "JavaChat");
+        data.put("body", burst.count > 1
+                ? burst.senderName + " đã gửi " + burst.count + " tin nhắn"
+                : "Bạn có tin nhắn từ " + burst.senderName);
+        data.put("senderId", burst.senderId);
+        data.put("senderName", burst.senderName);
+        data.put("count", String.valueOf(burst.count));
+
+        // Cùng collapse_key theo người gửi: máy nhận offline chỉ nhận đợt mới nhất
+        MessageRequest request = new MessageRequest(new MessageRequest.Message(burst.recipientToken, data,
+                new MessageRequest.AndroidConfig("chat_" + burst.senderId, "high")));
+
+        ApiClient.getApiService().sendNotification(request).enqueue(new Callback<MessageResponse>() {
+            @Override
+            public void onResponse(Call<MessageResponse> call, Response<MessageResponse> response) {
+                if (response.isSuccessful() && response.body() != null) {
+                    Log.d(TAG, "Notification sent for " + burst.count + " messages");
+                    log(burst, "fcm_sent");
+                } else {
+                    Log.e(TAG, "Failed to send: " + response.code() + " - " + response.raw().toString());
+                    if (response.code() == 404) {
+                        // Token đã bị hủy đăng ký: bỏ bản cache để lần sau đọc token mới
+                        UserRepository.getInstance(context).invalidate(burst.recipientId);
+                    }
+                    log(burst, "fcm_send_failed");
+                }
+            }
+
+            @Override
+            public void onFailure(Call<MessageResponse> call, Throwable t) {
+                Log.e(TAG, "Error: " + t.getMessage());
+                log(burst, "fcm_send_failed");
+            }
+        });
+    }
+
+    private void log(NotificationCoalescer.Burst burst, String action) {
+        EventLogger.getInstance(context).log(burst.senderId, action, burst.recipientId);
+    }
+}
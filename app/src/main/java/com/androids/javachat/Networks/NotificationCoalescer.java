@@ -0,0 +1,100 @@
+package com.androids.javachat.Networks;
+
+import android.content.Context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// Gộp thông báo FCM theo người nhận: nhiều tin gửi liên tiếp chỉ tạo một lần gọi sendNotification kèm số lượng
+// Gửi khi đã im lặng QUIET_MILLIS, nhưng không chậm quá MAX_DELAY_MILLIS kể từ tin đầu tiên của đợt
+public class NotificationCoalescer {
+
+    public interface Sender {
+        void send(Burst burst);
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    // Một đợt tin nhắn gửi tới cùng một người nhận
+    public static class Burst {
+        public final String recipientId;
+        public final String senderId;
+        public final String senderName;
+        public String recipientToken;
+        public int count;
+        final long firstAt;
+        long dueAt;
+
+        Burst(String recipientId, String senderId, String senderName, long firstAt) {
+            this.recipientId = recipientId;
+            this.senderId = senderId;
+            this.senderName = senderName;
+            this.firstAt = firstAt;
+        }
+    }
+
+    static final long QUIET_MILLIS = 1500;
+    static final long MAX_DELAY_MILLIS = 5000;
+
+    private static NotificationCoalescer instance;
+
+    private final Sender sender;
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+    private final Map<String, Burst> bursts = new HashMap<>();
+
+    NotificationCoalescer(Sender sender, Scheduler scheduler, LongSupplier clock) {
+        this.sender = sender;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    public static synchronized NotificationCoalescer getInstance(Context context) {
+        if (instance == null) {
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+            instance = new NotificationCoalescer(new FcmNotificationSender(context.getApplicationContext()),
+                    (task, delayMillis) -> executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+                    System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    // recipientToken có thể null, khi đó Sender tự tra token lúc gửi
+    public void submit(String recipientId, String recipientToken, String senderId, String senderName) {
+        long now = clock.getAsLong();
+        long dueAt;
+        synchronized (this) {
+            Burst burst = bursts.get(recipientId);
+            if (burst == null) {
+                burst = new Burst(recipientId, senderId, senderName, now);
+                bursts.put(recipientId, burst);
+            }
+            if (recipientToken != null) {
+                burst.recipientToken = recipientToken;
+            }
+            burst.count++;
+            burst.dueAt = Math.min(now + QUIET_MILLIS, burst.firstAt + MAX_DELAY_MILLIS);
+            dueAt = burst.dueAt;
+        }
+        // Mỗi lần submit hẹn một lượt kiểm tra; lượt nào tới trước hạn mới của đợt thì bỏ qua
+        scheduler.schedule(() -> flushIfDue(recipientId), Math.max(0, dueAt - now));
+    }
+
+    private void flushIfDue(String recipientId) {
+        Burst burst;
+        synchronized (this) {
+            burst = bursts.get(recipientId);
+            if (burst == null || burst.dueAt > clock.getAsLong()) {
+                return;
+            }
+            bursts.remove(recipientId);
+        }
+        sender.send(burst);
+    }
+}
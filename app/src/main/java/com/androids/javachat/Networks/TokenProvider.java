@@ -0,0 +1,13 @@
+package com.androids.javachat.Networks;
+
+import java.io.IOException;
+
+// Nguồn access token cho các request tới FCM
+public interface TokenProvider {
+
+    // Token đang cache, chỉ lấy mới khi chưa có
+    String getToken() throws IOException;
+
+    // Bỏ token đang cache và lấy token mới (khi server trả về 401)
+    String refreshToken() throws IOException;
+}
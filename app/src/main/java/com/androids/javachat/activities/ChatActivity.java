@@ -1,130 +1,273 @@
 package com.androids.javachat.activities;
 
-import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.View;
 import android.util.Log;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.androids.javachat.R;
 import com.androids.javachat.adapter.ChatAdapter;
+import com.androids.javachat.database.ChatDatabase;
 import com.androids.javachat.databinding.ActivityChatBinding;
 import com.androids.javachat.models.ChatMessage;
-import com.androids.javachat.models.MessageRequest;
-import com.androids.javachat.models.MessageResponse;
+import com.androids.javachat.models.EncryptedMessage;
+import com.androids.javachat.models.OutboxMessage;
 import com.androids.javachat.models.User;
+import com.androids.javachat.utilities.AvatarCache;
+import com.androids.javachat.utilities.ChatMessagePipeline;
 import com.androids.javachat.utilities.Constant;
-import com.androids.javachat.utilities.PreferenceManager;
-import com.google.android.gms.tasks.OnCompleteListener;
+import com.androids.javachat.utilities.EventLogger;
+import com.androids.javachat.utilities.ListenerRegistry;
+import com.androids.javachat.utilities.ConversationKey;
+import com.androids.javachat.utilities.MessageCrypto;
+import com.androids.javachat.utilities.MessageWindow;
+import com.androids.javachat.utilities.Outbox;
+import com.androids.javachat.utilities.PresenceService;
+import com.androids.javachat.utilities.RateLimiter;
+import com.androids.javachat.utilities.UserRepository;
 import com.google.firebase.firestore.DocumentChange;
-import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.MetadataChanges;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
-import com.androids.javachat.Networks.ApiClient;
-import com.androids.javachat.Networks.ApiService;
-import com.google.gson.Gson;
-
-import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.SecureRandom;
-import java.text.SimpleDateFormat;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Locale;
-import java.util.Objects;
-
-import javax.crypto.Cipher;
-import javax.crypto.spec.IvParameterSpec;
-import javax.crypto.spec.SecretKeySpec;
-
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class ChatActivity extends BaseActivity {
 
+    private static final int PAGE_SIZE = 50;
+    private static final int MAX_WINDOW_SIZE = PAGE_SIZE * 3;
+
     private ActivityChatBinding binding;
     private User receiverUser;
-    private List<ChatMessage> chatMessages;
+    private MessageWindow messageWindow;
+    private String conversationKey;
+    private boolean isLoadingPage = false;
+    private boolean historyExhausted = false;
     private ChatAdapter chatAdapter;
-    private PreferenceManager preferenceManager;
+    private RateLimiter messageRateLimiter;
+    private final MessageCrypto messageCrypto = MessageCrypto.getInstance();
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private ChatMessagePipeline messagePipeline;
+    private Outbox outbox;
+    private UserRepository userRepository;
     private FirebaseFirestore db = FirebaseFirestore.getInstance();
-    private String conversionId = null;
-    private Boolean isReceiverOnline = false;
+    private PresenceService presenceService;
+    // Listener Firestore của màn hình, tự gỡ khi onStop và gắn lại khi onStart
+    private ListenerRegistry listenerRegistry;
+    private Date resumeAfter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // BaseActivity đã chuyển sang màn hình đăng nhập
+        if (isFinishing()) {
+            return;
+        }
         binding = ActivityChatBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        messageRateLimiter = RateLimiter.forMessages(getApplicationContext());
+        messagePipeline = new ChatMessagePipeline(messageCrypto, ChatDatabase.getInstance(this).messageDao(),
+                getString(R.string.decryption_failed), decodeExecutor, ContextCompat.getMainExecutor(this));
+        outbox = Outbox.getInstance(getApplicationContext());
+        userRepository = UserRepository.getInstance(getApplicationContext());
+        presenceService = PresenceService.getInstance(getApplicationContext());
+        listenerRegistry = ListenerRegistry.bind(this);
         setListener();
         loadReceiverDetails();
         init();
+        listenAvailability();
         listenMessage();
+        outbox.addListener(outboxListener);
+        showPendingMessages();
     }
 
     private void init() {
-        chatMessages = new ArrayList<>();
-        chatAdapter = new ChatAdapter(chatMessages, getBitmapFromEncodedString(receiverUser.image), preferenceManager.getString(Constant.KEY_USER_ID));
+        messageWindow = new MessageWindow(MAX_WINDOW_SIZE);
+        conversationKey = ConversationKey.of(preferenceManager.getString(Constant.KEY_USER_ID), receiverUser.id);
+        chatAdapter = new ChatAdapter(null, preferenceManager.getString(Constant.KEY_USER_ID));
         binding.chatView.setAdapter(chatAdapter);
+        loadReceiverAvatar();
+        binding.chatView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy < 0 && !recyclerView.canScrollVertically(-1)) {
+                    loadOlderMessages();
+                } else if (dy > 0 && !recyclerView.canScrollVertically(1)) {
+                    loadNewerMessages();
+                }
+            }
+        });
     }
 
     private void listenMessage() {
-        db.collection(Constant.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constant.KEY_SENDER_ID, preferenceManager.getString(Constant.KEY_USER_ID))
-                .whereEqualTo(Constant.KEY_RECEIVER_ID, receiverUser.id)
-                .addSnapshotListener(eventListener);
-        db.collection(Constant.KEY_COLLECTION_CHAT)
-                .whereEqualTo(Constant.KEY_SENDER_ID, receiverUser.id)
-                .whereEqualTo(Constant.KEY_RECEIVER_ID, preferenceManager.getString(Constant.KEY_USER_ID))
-                .addSnapshotListener(eventListener);
+        // Hiển thị ngay trang mới nhất trong store cục bộ, sau đó chỉ lắng nghe phần tin nhắn mới hơn
+        messagePipeline.loadLatest(conversationKey, PAGE_SIZE, (cachedMessages, failedCount) -> {
+            if (!cachedMessages.isEmpty()) {
+                onMessagesDecoded(cachedMessages, failedCount);
+                // Mốc nghe lại lấy từ tin đã lưu (giờ server), không từ tin đang chờ gửi (giờ máy)
+                listenNewMessages(cachedMessages.get(cachedMessages.size() - 1).dateObject);
+            } else {
+                // Store trống: chỉ tải N tin nhắn mới nhất từ Firestore thay vì toàn bộ lịch sử
+                loadOlderFromRemote(null, () -> listenNewMessages(newestConfirmedDate()));
+            }
+        });
     }
 
-    private void logChatEvent(String userId, String action) {
-        HashMap<String, Object> log = new HashMap<>();
-        log.put("userId", userId != null ? userId : "unknown");
-        log.put("action", action);
-        log.put("receiverId", receiverUser != null ? receiverUser.id : "unknown");
-        log.put("timestamp", com.google.firebase.firestore.FieldValue.serverTimestamp());
-        log.put("deviceInfo", android.os.Build.MODEL + " (Android " + android.os.Build.VERSION.RELEASE + ")");
-        db.collection("logs").add(log)
-                .addOnFailureListener(e -> Log.e("ChatActivity", "Failed to log chat event: " + e.getMessage()));
+    private Date newestConfirmedDate() {
+        List<ChatMessage> messages = messageWindow.snapshot();
+        for (int i = messages.size() - 1; i >= 0; i--) {
+            if (!messages.get(i).pending) {
+                return messages.get(i).dateObject;
+            }
+        }
+        return null;
     }
 
-    private boolean checkMessageRateLimit() {
-        int messageCount = preferenceManager.getString(Constant.KEY_MESSAGE_COUNT) != null ?
-                Integer.parseInt(preferenceManager.getString(Constant.KEY_MESSAGE_COUNT)) : 0;
-        long lastMessageTime = preferenceManager.getString(Constant.KEY_MESSAGE_TIMESTAMP) != null ?
-                Long.parseLong(preferenceManager.getString(Constant.KEY_MESSAGE_TIMESTAMP)) : 0;
-        long currentTime = System.currentTimeMillis();
-
-        if (currentTime - lastMessageTime > Constant.RATE_LIMIT_WINDOW) {
-            preferenceManager.putString(Constant.KEY_MESSAGE_COUNT, "0");
-            preferenceManager.putString(Constant.KEY_MESSAGE_TIMESTAMP, String.valueOf(currentTime));
-            return true;
+    private void listenNewMessages(Date lastSeen) {
+        if (isDestroyed()) {
+            return;
         }
+        resumeAfter = lastSeen;
+        // Gắn lại sau onStop chỉ đọc các tin mới hơn tin cuối cùng đã nhận
+        listenerRegistry.add("messages", () -> {
+            Query query = messagesQuery();
+            if (resumeAfter != null) {
+                query = query.whereGreaterThan(Constant.KEY_TIMESTAMP, resumeAfter);
+            } else {
+                query = query.orderBy(Constant.KEY_TIMESTAMP).limitToLast(PAGE_SIZE);
+            }
+            return query.addSnapshotListener(MetadataChanges.INCLUDE, eventListener)::remove;
+        });
+    }
 
-        if (messageCount >= Constant.MAX_MESSAGES_PER_MINUTE) {
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "rate_limit_exceeded");
-            return false;
+    // Một truy vấn duy nhất theo conversationId cho cả hai chiều gửi/nhận
+    private Query messagesQuery() {
+        return db.collection(Constant.KEY_COLLECTION_CHAT)
+                .whereEqualTo(Constant.KEY_CONVERSATION_ID, conversationKey);
+    }
+
+    private void loadOlderMessages() {
+        if (isLoadingPage || historyExhausted || messageWindow.isEmpty()) {
+            return;
         }
+        isLoadingPage = true;
+        messagePipeline.loadBefore(conversationKey, messageWindow.oldest(), PAGE_SIZE, (olderMessages, failedCount) -> {
+            if (isDestroyed()) {
+                return;
+            }
+            showOlderMessages(olderMessages);
+            if (olderMessages.size() < PAGE_SIZE) {
+                // Đã hết phần lịch sử có trong store, tải tiếp từ Firestore
+                loadOlderFromRemote(new Date(messageWindow.oldestTimestamp()), () -> isLoadingPage = false);
+            } else {
+                isLoadingPage = false;
+            }
+        });
+    }
 
-        return true;
+    private void loadOlderFromRemote(Date cursor, Runnable onComplete) {
+        Query query;
+        if (cursor == null) {
+            query = messagesQuery().orderBy(Constant.KEY_TIMESTAMP).limitToLast(PAGE_SIZE);
+        } else {
+            query = messagesQuery().orderBy(Constant.KEY_TIMESTAMP, Query.Direction.DESCENDING)
+                    .startAfter(cursor).limit(PAGE_SIZE);
+        }
+        query.get().addOnCompleteListener(task -> {
+            if (isDestroyed()) {
+                return;
+            }
+            if (!task.isSuccessful() || task.getResult() == null) {
+                Log.e("ChatActivity", "Failed to load older messages");
+                binding.progBar.setVisibility(View.GONE);
+                onComplete.run();
+                return;
+            }
+            List<DocumentSnapshot> page = task.getResult().getDocuments();
+            if (page.isEmpty()) {
+                historyExhausted = true;
+                binding.progBar.setVisibility(View.GONE);
+                onComplete.run();
+                return;
+            }
+            ensureAesKey();
+            messagePipeline.submit(page, (olderMessages, failedCount) -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                if (messageWindow.isEmpty()) {
+                    onMessagesDecoded(olderMessages, failedCount);
+                } else {
+                    showOlderMessages(olderMessages);
+                }
+                onComplete.run();
+            });
+        });
+    }
+
+    private void showOlderMessages(List<ChatMessage> olderMessages) {
+        int inserted = messageWindow.addOlder(olderMessages);
+        int removed = messageWindow.trimNewest();
+        if (inserted > 0 || removed > 0) {
+            chatAdapter.submitList(messageWindow.snapshot());
+        }
+    }
+
+    private void loadNewerMessages() {
+        if (isLoadingPage || !messageWindow.hasEvictedNewer() || messageWindow.isEmpty()) {
+            return;
+        }
+        isLoadingPage = true;
+        messagePipeline.loadAfter(conversationKey, messageWindow.newest(), PAGE_SIZE, (newerMessages, failedCount) -> {
+            if (isDestroyed()) {
+                return;
+            }
+            boolean caughtUp = newerMessages.size() < PAGE_SIZE;
+            if (caughtUp) {
+                messageWindow.setEvictedNewer(false);
+            }
+            int inserted = messageWindow.addNewer(newerMessages);
+            int removed = messageWindow.trimOldest();
+            if (removed > 0) {
+                historyExhausted = false;
+            }
+            if (inserted > 0 || removed > 0) {
+                chatAdapter.submitList(messageWindow.snapshot());
+            }
+            isLoadingPage = false;
+            if (caughtUp) {
+                // Tin đang chờ gửi không có trong store, hiện lại từ outbox khi đã về tới cuối
+                showPendingMessages();
+            }
+        });
     }
 
-    private void incrementMessageCount() {
-        int messageCount = preferenceManager.getString(Constant.KEY_MESSAGE_COUNT) != null ?
-                Integer.parseInt(preferenceManager.getString(Constant.KEY_MESSAGE_COUNT)) : 0;
-        preferenceManager.putString(Constant.KEY_MESSAGE_COUNT, String.valueOf(messageCount + 1));
-        preferenceManager.putString(Constant.KEY_MESSAGE_TIMESTAMP, String.valueOf(System.currentTimeMillis()));
+    private void logChatEvent(String userId, String action) {
+        EventLogger.getInstance(getApplicationContext())
+                .log(userId, action, receiverUser != null ? receiverUser.id : "unknown");
+    }
+
+    private boolean checkMessageRateLimit() {
+        if (!messageRateLimiter.tryAcquire()) {
+            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "rate_limit_exceeded");
+            return false;
+        }
+        return true;
     }
 
     private String sanitizeMessage(String message) {
@@ -138,266 +281,258 @@ public class ChatActivity extends BaseActivity {
             Toast.makeText(this, "Message cannot exceed 1000 characters", Toast.LENGTH_SHORT).show();
             return null;
         }
-        String sanitized = message
+        return message
                 .replace("<", "\\u003C")
                 .replace(">", "\\u003E")
                 .replace("\"", "\\u0022")
                 .replace("'", "\\u0027");
-        Log.d("ChatActivity", "Message sanitized: " + sanitized);
-        return sanitized;
     }
 
-    private String decodeMessage(String message) {
-        if (message == null) return "";
-        return message
-                .replace("\\u003C", "<")
-                .replace("\\u003E", ">")
-                .replace("\\u0022", "\"")
-                .replace("\\u0027", "'");
-    }
-
-    //Mã hóa tin nhắn
-    private String encryptMessage(String message) {
+    //Mã hóa tin nhắn thành MessageEnvelope nhị phân; null nếu lỗi, không bao giờ gửi message thô
+    private byte[] encryptMessage(String message) {
         if (message == null || message.isEmpty()) {
             Log.w("ChatActivity", "Message is null or empty");
-            return "";
+            return null;
         }
-        String aesKey = preferenceManager.getString("AES_KEY");
-        if (aesKey == null) {
+        if (!ensureAesKey()) {
             Log.e("ChatActivity", "AES key not found for encryption");
             showToast("Lỗi: Không tìm thấy khóa mã hóa");
-            return ""; // Trả về chuỗi rỗng thay vì message thô
+            return null;
         }
         try {
-            byte[] keyBytes = Base64.decode(aesKey, Base64.DEFAULT);
-            SecureRandom random = new SecureRandom();
-            byte[] iv = new byte[16];
-            random.nextBytes(iv);
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
-            byte[] ciphertext = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
-            byte[] encrypted = new byte[iv.length + ciphertext.length];
-            System.arraycopy(iv, 0, encrypted, 0, iv.length);
-            System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
-            String encoded = Base64.encodeToString(encrypted, Base64.DEFAULT);
-            Log.d("ChatActivity", "Encryption successful: " + encoded);
-            return encoded;
+            byte[] envelope = messageCrypto.encrypt(conversationKey, message);
+            Log.d("ChatActivity", "Encryption successful: " + envelope.length + " bytes");
+            return envelope;
         } catch (Exception e) {
             Log.e("ChatActivity", "Encryption failed: " + e.getMessage());
             showToast("Lỗi mã hóa tin nhắn");
-            return ""; // Trả về chuỗi rỗng thay vì message thô
+            return null;
         }
     }
 
-    private String decryptMessage(String encryptedMessage) {
-        if (encryptedMessage == null || encryptedMessage.isEmpty()) return "";
-        try {
-            String aesKey = preferenceManager.getString("AES_KEY");
-            if (aesKey == null) {
-                Log.e("ChatActivity", "AES key not found for decryption");
-                logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "decryption_failed");
-                return encryptedMessage;
-            }
-            byte[] keyBytes = Base64.decode(aesKey, Base64.DEFAULT);
-            byte[] encryptedBytes = Base64.decode(encryptedMessage, Base64.DEFAULT);
-            byte[] iv = new byte[16];
-            byte[] ciphertext = new byte[encryptedBytes.length - 16];
-            System.arraycopy(encryptedBytes, 0, iv, 0, 16);
-            System.arraycopy(encryptedBytes, 16, ciphertext, 0, encryptedBytes.length - 16);
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
-            byte[] decryptedBytes = cipher.doFinal(ciphertext);
-            return new String(decryptedBytes, StandardCharsets.UTF_8);
-        } catch (Exception e) {
-            Log.e("ChatActivity", "Decryption failed: " + e.getMessage());
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "decryption_failed");
-            return "encryptedMessage";
+    private boolean ensureAesKey() {
+        if (!messageCrypto.hasKey()) {
+            messageCrypto.setKey(preferenceManager.getString(Constant.KEY_AES_KEY));
         }
+        return messageCrypto.hasKey();
     }
 
     private void sendMessage() {
+        String messageText = binding.inputMessage.getText().toString();
+        String sanitizedMessage = sanitizeMessage(messageText);
+        if (sanitizedMessage == null) {
+            return;
+        }
+        // Kiểm tra sau khi lọc để tin nhắn rỗng/quá dài không bị tính lượt
         if (!checkMessageRateLimit()) {
             Toast.makeText(this, "Bạn đã gửi quá nhiều tin nhắn, vui lòng thử lại sau 1 phút", Toast.LENGTH_SHORT).show();
             return;
         }
-
-        String messageText = binding.inputMessage.getText().toString();
-        String sanitizedMessage = sanitizeMessage(messageText);
-        if (sanitizedMessage == null) {
+        byte[] encryptedMessage = encryptMessage(sanitizedMessage);
+        if (encryptedMessage == null) {
             return;
         }
-        String encryptedMessage = encryptMessage(sanitizedMessage);
-        HashMap<String, Object> message = new HashMap<>();
-        message.put(Constant.KEY_SENDER_ID, preferenceManager.getString(Constant.KEY_USER_ID));
-        message.put(Constant.KEY_RECEIVER_ID, receiverUser.id);
-        message.put(Constant.KEY_MESSAGE, encryptedMessage);
-        message.put(Constant.KEY_TIMESTAMP, new Date());
-        db.collection(Constant.KEY_COLLECTION_CHAT).add(message).addOnSuccessListener(documentReference -> {
-            incrementMessageCount();
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "message_sent");
-            if (receiverUser.token == null) {
-                fetchReceiverFcmTokenFromFirestoreAndSend(sanitizedMessage);
-            } else {
-                sendNotificationToReceiver(sanitizedMessage);
-            }
-        }).addOnFailureListener(e -> {
-            Log.e("Firestore", "Failed to send message: " + e.getMessage());
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "message_send_failed");
-        });
+        OutboxMessage outboxMessage = new OutboxMessage();
+        outboxMessage.clientId = UUID.randomUUID().toString();
+        outboxMessage.conversationKey = conversationKey;
+        outboxMessage.senderId = preferenceManager.getString(Constant.KEY_USER_ID);
+        outboxMessage.senderName = preferenceManager.getString(Constant.KEY_NAME);
+        outboxMessage.senderImageHash = preferenceManager.getString(Constant.KEY_IMAGE_HASH);
+        outboxMessage.senderImage = preferenceManager.getString(Constant.KEY_IMAGE);
+        outboxMessage.receiverId = receiverUser.id;
+        outboxMessage.receiverName = receiverUser.name;
+        outboxMessage.receiverImageHash = receiverUser.imageHash;
+        outboxMessage.receiverImage = receiverUser.image;
+        outboxMessage.payload = encryptedMessage;
+        outboxMessage.timestamp = System.currentTimeMillis();
+
+        // Hiển thị ngay ở trạng thái đang gửi; outbox lưu xuống đĩa rồi gửi ở background
+        ChatMessage pendingMessage = new ChatMessage();
+        pendingMessage.messageId = outboxMessage.clientId;
+        pendingMessage.senderId = outboxMessage.senderId;
+        pendingMessage.receiverId = outboxMessage.receiverId;
+        // Tin đã decode sẵn như tin từ ChatMessagePipeline, adapter hiển thị nguyên văn
+        pendingMessage.message = messageText;
+        pendingMessage.dateObject = new Date(outboxMessage.timestamp);
+        pendingMessage.pending = true;
+        showSentMessage(pendingMessage);
+        outbox.enqueue(outboxMessage);
         binding.inputMessage.setText(null);
-        if (conversionId != null) {
-            updateConversion(encryptedMessage);
-        } else {
-            HashMap<String, Object> conversion = new HashMap<>();
-            conversion.put(Constant.KEY_SENDER_ID, preferenceManager.getString(Constant.KEY_USER_ID));
-            conversion.put(Constant.KEY_SENDER_NAME, preferenceManager.getString(Constant.KEY_NAME));
-            conversion.put(Constant.KEY_SENDER_IMG, preferenceManager.getString(Constant.KEY_IMAGE));
-            conversion.put(Constant.KEY_RECEIVER_ID, receiverUser.id);
-            conversion.put(Constant.KEY_RECEIVER_NAME, receiverUser.name);
-            conversion.put(Constant.KEY_RECEIVER_IMG, receiverUser.image);
-            conversion.put(Constant.KEY_LAST_MESSAGE, encryptedMessage);
-            conversion.put(Constant.KEY_TIMESTAMP, new Date());
-            addConversion(conversion);
-        }
     }
 
-    private void fetchReceiverFcmTokenFromFirestoreAndSend(String sanitizedMessage) {
-        db.collection(Constant.KEY_COLLECTION_USERS).document(receiverUser.id).get().addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null) {
-                DocumentSnapshot document = task.getResult();
-                receiverUser.token = document.getString(Constant.KEY_FCM_TOKEN);
-                if (receiverUser.token != null && !receiverUser.token.isEmpty()) {
-                    sendNotificationToReceiver(sanitizedMessage);
-                } else {
-                    Log.e("FCM_TEST", "FCM token still not found for receiver after fetch");
-                    logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_token_missing");
-                }
-            } else {
-                Log.e("FCM_TEST", "Failed to fetch FCM token: " + task.getException());
-                logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_fetch_failed");
+    // Đang xem lịch sử cũ thì quay về trang mới nhất, để tin vừa gửi (chỉ có trong outbox) luôn hiển thị
+    private void showSentMessage(ChatMessage pendingMessage) {
+        if (!messageWindow.hasEvictedNewer()) {
+            onMessagesDecoded(Collections.singletonList(pendingMessage), 0);
+            return;
+        }
+        isLoadingPage = true;
+        messagePipeline.loadLatest(conversationKey, PAGE_SIZE, (latestMessages, failedCount) -> {
+            if (isDestroyed()) {
+                return;
             }
+            messageWindow.clear();
+            messageWindow.addNewer(latestMessages);
+            messageWindow.addNewer(Collections.singletonList(pendingMessage));
+            messageWindow.trimOldest();
+            historyExhausted = false;
+            isLoadingPage = false;
+            chatAdapter.submitList(messageWindow.snapshot(), () -> {
+                if (!isDestroyed()) {
+                    binding.chatView.scrollToPosition(chatAdapter.getItemCount() - 1);
+                }
+            });
+            // Các tin đang chờ gửi khác có thể đã bị bỏ khỏi cửa sổ khi cuộn lên
+            showPendingMessages();
         });
     }
 
-    private void sendNotificationToReceiver(String sanitizedMessage) {
-        try {
-            String accessToken = preferenceManager.getAccessToken();
-            sendNotificationWithToken(accessToken, sanitizedMessage);
-        } catch (IOException e) {
-            Log.e("FCM_TEST", "Failed to get access token: " + e.getMessage());
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_access_token_failed");
+    // Gọi trên thread của outbox, kể cả cho tin nhắn của hội thoại khác
+    private final Outbox.Listener outboxListener = new Outbox.Listener() {
+        @Override
+        public void onSent(OutboxMessage message) {
+            runOnUiThread(() -> {
+                if (!conversationKey.equals(message.conversationKey)) {
+                    return;
+                }
+                // Thông báo cho người nhận do Outbox gửi, kể cả khi màn hình này đã đóng
+                logChatEvent(message.senderId, "message_sent");
+            });
         }
-    }
 
-    private void sendNotificationWithToken(String accessToken, String sanitizedMessage) {
-        if (receiverUser.token == null || receiverUser.token.isEmpty()) {
-            Log.e("FCM_TEST", "FCM token not found for receiver");
-            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_token_missing");
-            return;
+        @Override
+        public void onFailed(OutboxMessage message, Exception e) {
+            runOnUiThread(() -> {
+                if (!conversationKey.equals(message.conversationKey)) {
+                    return;
+                }
+                Log.e("Firestore", "Failed to send message: " + e.getMessage());
+                logChatEvent(message.senderId, "message_send_failed");
+                // Outbox đã bỏ cuộc: hiện tin ở trạng thái gửi lỗi thay vì đang gửi
+                if (message.failed && messageWindow.markFailed(message.clientId)) {
+                    chatAdapter.submitList(messageWindow.snapshot());
+                }
+            });
         }
+    };
 
-        HashMap<String, String> data = new HashMap<>();
-        data.put("title", "JavaChat");
-        data.put("body", "Bạn có tin nhắn từ " + preferenceManager.getString(Constant.KEY_NAME));
-        data.put("senderId", preferenceManager.getString(Constant.KEY_USER_ID));
-        data.put("senderName", preferenceManager.getString(Constant.KEY_NAME));
-
-        Log.d("FCM_TEST", "Receiver token: " + receiverUser.token);
-
-        HashMap<String, Object> message = new HashMap<>();
-        message.put("token", receiverUser.token);
-        message.put("data", data);
-        HashMap<String, Object> requestMap = new HashMap<>();
-        requestMap.put("message", message);
-
-        String jsonRequest = new Gson().toJson(requestMap);
-        Log.d("FCM_TEST", "Sending request: " + jsonRequest);
-
-        MessageRequest request = new MessageRequest(new MessageRequest.Message(receiverUser.token, data));
-
-        ApiService apiService = ApiClient.getApiService(accessToken);
-        Call<MessageResponse> call = apiService.sendNotification(request);
-        call.enqueue(new Callback<MessageResponse>() {
-            @Override
-            public void onResponse(Call<MessageResponse> call, Response<MessageResponse> response) {
-                if (response.isSuccessful() && response.body() != null) {
-                    Log.d("FCM_TEST", "Notification sent successfully: " + response.body().toString());
-                    logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_sent");
-                } else {
-                    Log.e("FCM_TEST", "Failed to send: " + response.code() + " - " + response.raw().toString());
-                    Log.e("FCM_TEST", "Request body: " + new Gson().toJson(request));
-                    logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_send_failed");
-                }
+    // Tin nhắn còn trong outbox từ lần mở trước (ví dụ gửi lúc mất mạng) được hiển thị lại ở trạng thái đang gửi
+    private void showPendingMessages() {
+        // Callback chạy trên thread của outbox: về main thread rồi mới kiểm tra activity còn sống,
+        // vì onDestroy đã shutdown decodeExecutor
+        outbox.loadPending(conversationKey, pending -> runOnUiThread(() -> {
+            if (pending.isEmpty() || isDestroyed()) {
+                return;
             }
-
-            @Override
-            public void onFailure(Call<MessageResponse> call, Throwable t) {
-                Log.e("FCM_TEST", "Error: " + t.getMessage());
-                logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fcm_send_failed");
+            List<EncryptedMessage> encryptedMessages = new ArrayList<>(pending.size());
+            Set<String> failedIds = new HashSet<>();
+            for (OutboxMessage outboxMessage : pending) {
+                encryptedMessages.add(outboxMessage.toEncryptedMessage());
+                if (outboxMessage.failed) {
+                    failedIds.add(outboxMessage.clientId);
+                }
             }
-        });
+            ensureAesKey();
+            messagePipeline.submitMessages(encryptedMessages, (pendingMessages, failedCount) -> {
+                for (ChatMessage pendingMessage : pendingMessages) {
+                    pendingMessage.pending = true;
+                    pendingMessage.failed = failedIds.contains(pendingMessage.messageId);
+                }
+                onMessagesDecoded(pendingMessages, failedCount);
+            });
+        }));
     }
 
+    // Một listener dùng chung trong PresenceService; online suy ra từ TTL của lastSeen
     private void listenAvailability() {
-        db.collection(Constant.KEY_COLLECTION_USERS).document(receiverUser.id).addSnapshotListener(ChatActivity.this, (value, error) -> {
-            if (error != null) {
+        listenerRegistry.add("presence", () -> presenceService.observe(receiverUser.id, (online, lastSeen) -> {
+            if (isDestroyed()) {
                 return;
             }
-            if (value != null) {
-                if (value.getLong(Constant.KEY_AVAILABILITY) != null) {
-                    int availability = Objects.requireNonNull(value.getLong(Constant.KEY_AVAILABILITY)).intValue();
-                    isReceiverOnline = availability == 1;
-                }
-            }
-            if (isReceiverOnline) {
-                binding.txtAvail.setVisibility(View.VISIBLE);
-            } else {
-                binding.txtAvail.setVisibility(View.GONE);
+            // Listener presence cũng làm mới hồ sơ trong cache, lấy token mới nhất từ đó
+            User latest = userRepository.peek(receiverUser.id);
+            if (latest != null && latest.token != null) {
+                receiverUser.token = latest.token;
             }
-        });
+            binding.txtAvail.setVisibility(online ? View.VISIBLE : View.GONE);
+        })::remove);
     }
 
     private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
-        if (error != null) {
+        if (error != null || isDestroyed()) {
             return;
         }
         if (value != null) {
-            int count = chatMessages.size();
+            List<DocumentSnapshot> addedDocuments = new ArrayList<>();
             for (DocumentChange documentChange : value.getDocumentChanges()) {
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    ChatMessage chatMessage = new ChatMessage();
-                    chatMessage.senderId = documentChange.getDocument().getString(Constant.KEY_SENDER_ID);
-                    chatMessage.receiverId = documentChange.getDocument().getString(Constant.KEY_RECEIVER_ID);
-                    String encryptedMessage = documentChange.getDocument().getString(Constant.KEY_MESSAGE);
-                    String decryptedMessage = decryptMessage(encryptedMessage);
-                    chatMessage.message = decodeMessage(decryptedMessage);
-                    chatMessage.dateTime = getReadDateTime(documentChange.getDocument().getDate(Constant.KEY_TIMESTAMP));
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constant.KEY_TIMESTAMP);
-                    chatMessages.add(chatMessage);
+                DocumentSnapshot document = documentChange.getDocument();
+                boolean pendingWrite = document.getMetadata().hasPendingWrites();
+                // Bản ghi cục bộ của outbox về dưới dạng ADDED còn pending; khi server xác nhận chỉ metadata đổi (MODIFIED)
+                if (documentChange.getType() == DocumentChange.Type.MODIFIED && pendingWrite) {
+                    continue;
+                }
+                if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                    continue;
+                }
+                addedDocuments.add(document);
+                Date timestamp = document.getDate(Constant.KEY_TIMESTAMP);
+                // Chỉ tiến mốc nghe lại theo tin đã xác nhận, để không bỏ lỡ bản xác nhận của tin đang chờ
+                if (!pendingWrite && timestamp != null && (resumeAfter == null || timestamp.after(resumeAfter))) {
+                    resumeAfter = timestamp;
                 }
             }
-            Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
-            if (count == 0) {
-                chatAdapter.notifyDataSetChanged();
-            } else {
-                chatAdapter.notifyItemRangeInserted(chatMessages.size(), chatMessages.size());
-                binding.chatView.smoothScrollToPosition(chatMessages.size() - 1);
+            if (addedDocuments.isEmpty() && !messageWindow.isEmpty()) {
+                // Thay đổi chỉ ở metadata (ví dụ isFromCache) không cần decode lại
+                return;
             }
-            binding.chatView.setVisibility(View.VISIBLE);
-        }
-        binding.progBar.setVisibility(View.GONE);
-        if (conversionId == null) {
-            checkForConversion();
+            if (!ensureAesKey()) {
+                Log.e("ChatActivity", "AES key not found for decryption");
+            }
+            messagePipeline.submit(addedDocuments, this::onMessagesDecoded);
+        } else {
+            binding.progBar.setVisibility(View.GONE);
         }
     };
 
-    private Bitmap getBitmapFromEncodedString(String encodedImage) {
-        if (encodedImage != null) {
-            byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        } else {
-            return null;
+    private void onMessagesDecoded(List<ChatMessage> decodedMessages, int failedCount) {
+        if (isDestroyed()) {
+            return;
+        }
+        if (failedCount > 0) {
+            Log.e("ChatActivity", "Decryption failed for " + failedCount + " messages");
+            logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "decryption_failed");
+        }
+        if (messageWindow.hasEvictedNewer()) {
+            // Người dùng đang xem lịch sử cũ: tin nhắn mới đã nằm trong store, sẽ được tải khi cuộn xuống
+            return;
         }
+        int count = messageWindow.size();
+        int inserted = messageWindow.addNewer(decodedMessages);
+        if (inserted == 0 && count != 0) {
+            return;
+        }
+        if (messageWindow.trimOldest() > 0) {
+            historyExhausted = false;
+        }
+        // DiffUtil chỉ bind lại các item vừa chèn, cuộn xuống sau khi danh sách mới được áp dụng
+        chatAdapter.submitList(messageWindow.snapshot(), () -> {
+            if (count != 0 && !isDestroyed()) {
+                binding.chatView.smoothScrollToPosition(chatAdapter.getItemCount() - 1);
+            }
+        });
+        binding.chatView.setVisibility(View.VISIBLE);
+        binding.progBar.setVisibility(View.GONE);
+    }
+
+    // Ảnh người nhận được decode ở background và dùng chung qua AvatarCache
+    private void loadReceiverAvatar() {
+        AvatarCache.getInstance(this).get(receiverUser.id, receiverUser.imageHash, receiverUser.image, bitmap -> {
+            if (bitmap == null || isDestroyed()) {
+                return;
+            }
+            chatAdapter.setReceiverProfileImage(bitmap);
+            chatAdapter.notifyItemRangeChanged(0, chatAdapter.getItemCount());
+        });
     }
 
     private void loadReceiverDetails() {
@@ -410,25 +545,32 @@ public class ChatActivity extends BaseActivity {
         }
         binding.txtName.setText(receiverUser.name);
 
-        if (receiverUser.token == null || receiverUser.image == null) {
-            fetchReceiverDetailsFromFirestore();
+        if (receiverUser.token == null || (receiverUser.imageHash == null && receiverUser.image == null)) {
+            fetchReceiverDetails();
         }
     }
 
-    private void fetchReceiverDetailsFromFirestore() {
-        db.collection(Constant.KEY_COLLECTION_USERS).document(receiverUser.id).get().addOnCompleteListener(task -> {
-            if (task.isSuccessful() && task.getResult() != null) {
-                DocumentSnapshot document = task.getResult();
+    // Hồ sơ đã có trong UserRepository (còn hạn) thì không gọi mạng
+    private void fetchReceiverDetails() {
+        userRepository.get(receiverUser.id, new UserRepository.Callback<User>() {
+            @Override
+            public void onSuccess(User user) {
+                if (isDestroyed()) {
+                    return;
+                }
                 if (receiverUser.token == null) {
-                    receiverUser.token = document.getString(Constant.KEY_FCM_TOKEN);
+                    receiverUser.token = user.token;
                 }
-                if (receiverUser.image == null) {
-                    receiverUser.image = document.getString(Constant.KEY_IMAGE);
+                if (receiverUser.imageHash == null && receiverUser.image == null) {
+                    receiverUser.imageHash = user.imageHash;
+                    receiverUser.image = user.image;
                 }
-                chatAdapter = new ChatAdapter(chatMessages, getBitmapFromEncodedString(receiverUser.image), preferenceManager.getString(Constant.KEY_USER_ID));
-                binding.chatView.setAdapter(chatAdapter);
-            } else {
-                Log.e("FCM_TEST", "Failed to fetch receiver details: " + task.getException());
+                loadReceiverAvatar();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e("FCM_TEST", "Failed to fetch receiver details: " + e);
                 logChatEvent(preferenceManager.getString(Constant.KEY_USER_ID), "fetch_receiver_failed");
             }
         });
@@ -439,52 +581,22 @@ public class ChatActivity extends BaseActivity {
         binding.layoutSend.setOnClickListener(v -> sendMessage());
     }
 
-    private String getReadDateTime(Date date) {
-        return new SimpleDateFormat("dd MMMM, YYYY - hh:mm a", Locale.getDefault()).format(date);
-    }
-
-    private void updateConversion(String message) {
-        DocumentReference documentReference = db.collection(Constant.KEY_COLLECTION_CONVERSATIONS).document(conversionId);
-        documentReference.update(
-                Constant.KEY_LAST_MESSAGE, message,
-                Constant.KEY_TIMESTAMP, new Date()
-        ).addOnFailureListener(e -> Log.e("ChatActivity", "Failed to update conversion: " + e.getMessage()));
-    }
-
-    private void addConversion(HashMap<String, Object> conversion) {
-        db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
-                .add(conversion)
-                .addOnSuccessListener(documentReference -> conversionId = documentReference.getId())
-                .addOnFailureListener(e -> Log.e("ChatActivity", "Failed to add conversion: " + e.getMessage()));
-    }
-
-    private void checkForConversion() {
-        if (chatMessages.size() != 0) {
-            checkForConversionRemotely(preferenceManager.getString(Constant.KEY_USER_ID), receiverUser.id);
-            checkForConversionRemotely(receiverUser.id, preferenceManager.getString(Constant.KEY_USER_ID));
-        }
-    }
-
-    private void checkForConversionRemotely(String senderId, String receiverId) {
-        db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constant.KEY_SENDER_ID, senderId)
-                .whereEqualTo(Constant.KEY_RECEIVER_ID, receiverId)
-                .get()
-                .addOnCompleteListener(task -> {
-                    if (task.isSuccessful() && task.getResult() != null && task.getResult().getDocuments().size() > 0) {
-                        DocumentSnapshot documentSnapshot = task.getResult().getDocuments().get(0);
-                        conversionId = documentSnapshot.getId();
-                    }
-                });
-    }
-
     private void showToast(String message) {
         Toast.makeText(getApplicationContext(), message, Toast.LENGTH_SHORT).show();
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        listenAvailability();
+    protected void onStop() {
+        super.onStop();
+        messageRateLimiter.persist();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (outbox != null) {
+            outbox.removeListener(outboxListener);
+        }
+        decodeExecutor.shutdownNow();
     }
 }
\ No newline at end of file
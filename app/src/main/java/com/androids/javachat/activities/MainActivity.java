@@ -2,8 +2,6 @@ package com.androids.javachat.activities;
 
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Build;
 import android.os.Bundle;
 import android.util.Base64;
@@ -13,73 +11,135 @@ import android.widget.Toast;
 
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.tracing.Trace;
 
 
 import android.Manifest;
 
+import com.androids.javachat.R;
 import com.androids.javachat.adapter.RecentConversationsAdapter;
 import com.androids.javachat.databinding.ActivityMainBinding;
+import com.androids.javachat.firebase.ConversationMigrationWorker;
 import com.androids.javachat.listener.ConversionListener;
 import com.androids.javachat.models.ChatMessage;
 import com.androids.javachat.models.User;
+import com.androids.javachat.storage.AvatarStore;
+import com.androids.javachat.storage.BlobStore;
+import com.androids.javachat.utilities.AvatarCache;
 import com.androids.javachat.utilities.Constant;
-import com.androids.javachat.utilities.PreferenceManager;
+import com.androids.javachat.utilities.ConversationDecryptor;
+import com.androids.javachat.utilities.ConversationKey;
+import com.androids.javachat.utilities.ConversationList;
+import com.androids.javachat.utilities.EventLogger;
+import com.androids.javachat.utilities.ListenerRegistry;
+import com.androids.javachat.utilities.ConversationMigration;
+import com.androids.javachat.utilities.DeferredInit;
+import com.androids.javachat.utilities.MessageCrypto;
+import com.androids.javachat.utilities.MessageEnvelope;
+import com.androids.javachat.utilities.Outbox;
+import com.androids.javachat.utilities.PresenceService;
 import com.androids.javachat.utilities.SpaceItemDecoration;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.google.firebase.messaging.FirebaseMessaging;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
-import javax.crypto.spec.IvParameterSpec;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends BaseActivity implements ConversionListener {
 
     private static final int NOTIFICATION_PERMISSION_CODE = 1001;
     private ActivityMainBinding binding;
-    private PreferenceManager preferenceManager;
-    private List<ChatMessage> conversations;
+    private final MessageCrypto messageCrypto = MessageCrypto.getInstance();
+    // Mới nhất trước; trùng thời gian thì so sánh conversionId để thứ tự luôn xác định
+    private static final Comparator<ChatMessage> NEWEST_FIRST = Comparator
+            .comparing((ChatMessage chatMessage) -> chatMessage.dateObject, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(chatMessage -> chatMessage.conversionId, Comparator.nullsFirst(Comparator.naturalOrder()));
+    private ConversationList conversations;
     private RecentConversationsAdapter conversationsAdapter;
     private FirebaseFirestore db;
     private FirebaseAuth auth;
+    // Listener Firestore của màn hình, tự gỡ khi onStop và gắn lại khi onStart
+    private ListenerRegistry listenerRegistry;
+    private final ExecutorService decryptExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    private ConversationDecryptor conversationDecryptor;
+    private DeferredInit deferredInit;
+    private boolean reportedFullyDrawn = false;
+    private Date resumeAfter;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-        super.onCreate(savedInstanceState);
-        auth = FirebaseAuth.getInstance();
-        preferenceManager = new PreferenceManager(getApplicationContext());
-        FirebaseUser currentUser = auth.getCurrentUser();
-        String userId = preferenceManager.getString(Constant.KEY_USER_ID);
-        Log.d("MainActivity", "Current user: " + (currentUser != null ? currentUser.getUid() : "null") + ", Stored userId: " + userId);
-        if (currentUser == null || userId == null || !userId.equals(currentUser.getUid())) {
-            Log.w("MainActivity", "Invalid session: user not logged in or userId mismatch");
-            signOut();
-            return;
+        Trace.beginSection("MainActivity.onCreate");
+        try {
+            super.onCreate(savedInstanceState);
+            // BaseActivity đã chuyển sang màn hình đăng nhập
+            if (isFinishing()) {
+                return;
+            }
+            auth = FirebaseAuth.getInstance();
+            FirebaseUser currentUser = auth.getCurrentUser();
+            String userId = preferenceManager.getString(Constant.KEY_USER_ID);
+            Log.d("MainActivity", "Current user: " + (currentUser != null ? currentUser.getUid() : "null") + ", Stored userId: " + userId);
+            if (currentUser == null || userId == null || !userId.equals(currentUser.getUid())) {
+                Log.w("MainActivity", "Invalid session: user not logged in or userId mismatch");
+                signOut();
+                return;
+            }
+            trace("MainActivity.inflate", () -> {
+                binding = ActivityMainBinding.inflate(getLayoutInflater());
+                setContentView(binding.getRoot());
+            });
+            trace("MainActivity.init", this::init);
+            trace("MainActivity.loadUserDetail", this::loadUserDetail);
+            setListeners();
+            listenSessionChanges(); // Thêm listener cho session token
+            // Danh sách hội thoại là thứ người dùng chờ: gắn listener ngay, không chờ kiểm tra phiên
+            // (SignInActivity đã kiểm tra phiên trước khi mở màn hình này, listener session theo dõi tiếp)
+            trace("MainActivity.listenConversion", this::listenConversion);
+            // Hội thoại cũ chưa có participants: đọc một lần theo senderId/receiverId để hiện ngay,
+            // còn backfill chạy trong ConversationMigrationWorker, không chặn danh sách
+            if (!new ConversationMigration(db, preferenceManager).isComplete()) {
+                loadLegacyConversations(userId);
+                ConversationMigrationWorker.schedule(getApplicationContext());
+            }
+            deferredInit = DeferredInit.afterFirstDraw(binding.getRoot());
+            defer("fcmToken", this::getToken);
+            // Gửi nốt các tin nhắn còn trong outbox từ lần chạy trước
+            defer("outbox", () -> Outbox.getInstance(getApplicationContext()).drainAsync());
+            // Tải khóa AES nằm sau kiểm tra phiên; hội thoại đến trước khóa được ConversationDecryptor giải mã lại
+            defer("authCheck", this::checkAuthToken);
+        } finally {
+            Trace.endSection();
+        }
+    }
+
+    private static void trace(String section, Runnable step) {
+        Trace.beginSection(section);
+        try {
+            step.run();
+        } finally {
+            Trace.endSection();
         }
-        binding = ActivityMainBinding.inflate(getLayoutInflater());
-        setContentView(binding.getRoot());
-        init();
-        loadUserDetail();
-        getToken();
-        setListeners();
-        checkAuthToken();
-        listenSessionChanges(); // Thêm listener cho session token
     }
 
     private void listenSessionChanges() {
         String userId = preferenceManager.getString(Constant.KEY_USER_ID);
-        db.collection(Constant.KEY_COLLECTION_USERS)
+        listenerRegistry.add("session", () -> db.collection(Constant.KEY_COLLECTION_USERS)
                 .document(userId)
                 .addSnapshotListener((value, error) -> {
                     if (error != null) {
@@ -95,11 +155,27 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                             signOut();
                         }
                     }
-                });
+                })::remove);
+    }
+
+    // Listener session có thể đã đăng xuất và đóng màn hình trước frame đầu: khi đó bỏ qua các việc hoãn
+    private void defer(String name, Runnable step) {
+        deferredInit.add(name, () -> {
+            if (!isFinishing()) {
+                step.run();
+            }
+        });
     }
 
     private void checkAuthToken() {
-        auth.getCurrentUser().getIdToken(false).addOnSuccessListener(result -> {
+        // Chạy sau frame đầu, người dùng có thể đã bị đăng xuất trong lúc chờ
+        FirebaseUser currentUser = auth.getCurrentUser();
+        if (currentUser == null) {
+            Log.w("MainActivity", "Signed out before auth check, redirecting to SignInActivity");
+            redirectToSignIn();
+            return;
+        }
+        currentUser.getIdToken(false).addOnSuccessListener(result -> {
             Log.d("MainActivity", "Auth token valid until: " + result.getExpirationTimestamp());
             // Kiểm tra session token ban đầu
             String userId = preferenceManager.getString(Constant.KEY_USER_ID);
@@ -115,7 +191,7 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                             signOut();
                         } else {
                             fetchAesKey();
-                            listenConversion();
+                            migrateLegacyAvatar();
                         }
                     })
                     .addOnFailureListener(e -> {
@@ -131,12 +207,14 @@ public class MainActivity extends BaseActivity implements ConversionListener {
     }
 
     private void init() {
-        conversations = new ArrayList<>();
+        conversations = new ConversationList(NEWEST_FIRST);
         conversationsAdapter = new RecentConversationsAdapter(conversations, this);
         binding.conversationsRecyclerView.setAdapter(conversationsAdapter);
         int spacingInPixels = (int) (16 * getResources().getDisplayMetrics().density);
         binding.conversationsRecyclerView.addItemDecoration(new SpaceItemDecoration(spacingInPixels));
         db = FirebaseFirestore.getInstance();
+        listenerRegistry = ListenerRegistry.bind(this);
+        conversationDecryptor = new ConversationDecryptor(messageCrypto, decryptExecutor, ContextCompat.getMainExecutor(this));
     }
 
     private void fetchAesKey() {
@@ -145,8 +223,9 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                     if (documentSnapshot.exists()) {
                         String aesKey = documentSnapshot.getString("key");
                         if (aesKey != null) {
-                            preferenceManager.putString("AES_KEY", aesKey);
-                            Log.d("MainActivity", "AES key fetched and stored: " + aesKey);
+                            preferenceManager.putString(Constant.KEY_AES_KEY, aesKey);
+                            messageCrypto.setKey(aesKey);
+                            Log.d("MainActivity", "AES key fetched and stored");
                             // Kiểm tra lại conversations nếu cần
                             if (!conversations.isEmpty()) {
                                 refreshConversations();
@@ -166,14 +245,57 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                 });
     }
 
+    // Chuyển ảnh Base64 cũ trong document người dùng sang AvatarStore, document chỉ còn giữ hash và URL
+    private void migrateLegacyAvatar() {
+        String legacyImage = preferenceManager.getString(Constant.KEY_IMAGE);
+        if (preferenceManager.getString(Constant.KEY_IMAGE_HASH) != null || legacyImage == null) {
+            return;
+        }
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(legacyImage, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            Log.e("MainActivity", "Invalid legacy avatar: " + e.getMessage());
+            return;
+        }
+        String imageHash = AvatarStore.hashOf(bytes);
+        AvatarStore.getInstance(this).upload(imageHash, bytes, new BlobStore.Callback<String>() {
+            @Override
+            public void onSuccess(String imageUrl) {
+                HashMap<String, Object> updates = new HashMap<>();
+                updates.put(Constant.KEY_IMAGE_HASH, imageHash);
+                updates.put(Constant.KEY_IMAGE_URL, imageUrl);
+                updates.put(Constant.KEY_IMAGE, FieldValue.delete());
+                db.collection(Constant.KEY_COLLECTION_USERS)
+                        .document(preferenceManager.getString(Constant.KEY_USER_ID))
+                        .update(updates)
+                        .addOnSuccessListener(unused -> preferenceManager.putString(Constant.KEY_IMAGE_HASH, imageHash))
+                        .addOnFailureListener(e -> Log.e("MainActivity", "Failed to migrate avatar: " + e.getMessage()));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e("MainActivity", "Failed to upload avatar: " + e.getMessage());
+            }
+        });
+    }
+
     private void refreshConversations() {
-        // Cập nhật lại danh sách conversations sau khi lấy được AES key
-        for (int i = 0; i < conversations.size(); i++) {
-            String encryptedMessage = conversations.get(i).message;
-            String decryptedMessage = decryptMessage(encryptedMessage);
-            conversations.get(i).message = decodeMessage(decryptedMessage);
+        // Khóa AES về muộn: chỉ giải mã lại hội thoại chưa giải mã được, song song trên worker
+        // Khóa có thể về sau onDestroy (xoay màn hình, bấm back), lúc đó decryptExecutor đã shutdown
+        if (isDestroyed()) {
+            return;
         }
-        conversationsAdapter.notifyDataSetChanged();
+        conversationDecryptor.decryptPending(conversations.snapshot(), decrypted -> {
+            for (ChatMessage conversation : decrypted) {
+                ChatMessage current = conversations.find(conversation.conversionId);
+                // Bỏ qua nếu hội thoại đã nhận tin mới trong lúc đang giải mã
+                if (current != null && current.envelope == conversation.envelope) {
+                    // Thời gian không đổi nên item giữ nguyên vị trí, adapter chỉ nhận notifyItemChanged
+                    conversations.upsert(conversation);
+                }
+            }
+        });
     }
 
     private String decodeMessage(String message) {
@@ -185,38 +307,31 @@ public class MainActivity extends BaseActivity implements ConversionListener {
                 .replace("\\u0027", "'");
     }
 
-    private String decryptMessage(String encryptedMessage) {
-        if (encryptedMessage == null || encryptedMessage.isEmpty()) {
-            Log.w("MainActivity", "Encrypted message is null or empty");
-            return "";
-        }
-        String aesKey = preferenceManager.getString("AES_KEY");
-        if (aesKey == null) {
+    // Phần tử chưa giải mã được (hoặc chưa có khóa) là null
+    private List<String> decryptMessages(List<String> conversationKeys, List<MessageEnvelope> envelopes) {
+        if (!ensureAesKey()) {
             Log.e("MainActivity", "AES key not found for decryption");
-            return encryptedMessage; // Trả về chuỗi mã hóa gốc
+            return Collections.nCopies(envelopes.size(), null);
         }
         try {
-            Log.d("MainActivity", "Attempting to decrypt message: " + encryptedMessage);
-            byte[] keyBytes = Base64.decode(aesKey, Base64.DEFAULT);
-            byte[] encryptedBytes = Base64.decode(encryptedMessage, Base64.DEFAULT);
-            if (encryptedBytes.length < 16) {
-                Log.e("MainActivity", "Invalid encrypted message: too short for IV");
-                return encryptedMessage;
+            List<String> results = messageCrypto.decryptAll(conversationKeys, envelopes);
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    Log.e("MainActivity", "Decryption failed, envelope version: " + envelopes.get(i).version);
+                }
             }
-            byte[] iv = new byte[16];
-            byte[] ciphertext = new byte[encryptedBytes.length - 16];
-            System.arraycopy(encryptedBytes, 0, iv, 0, 16);
-            System.arraycopy(encryptedBytes, 16, ciphertext, 0, encryptedBytes.length - 16);
-            Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
-            byte[] decryptedBytes = cipher.doFinal(ciphertext);
-            String decryptedMessage = new String(decryptedBytes, StandardCharsets.UTF_8);
-            Log.d("MainActivity", "Decryption successful: " + decryptedMessage);
-            return decryptedMessage;
+            return results;
         } catch (Exception e) {
-            Log.e("MainActivity", "Decryption failed: " + e.getMessage() + ", Input: " + encryptedMessage);
-            return encryptedMessage;
+            Log.e("MainActivity", "Decryption failed: " + e.getMessage());
+            return Collections.nCopies(envelopes.size(), null);
+        }
+    }
+
+    private boolean ensureAesKey() {
+        if (!messageCrypto.hasKey()) {
+            messageCrypto.setKey(preferenceManager.getString(Constant.KEY_AES_KEY));
         }
+        return messageCrypto.hasKey();
     }
 
     private void setListeners() {
@@ -227,9 +342,9 @@ public class MainActivity extends BaseActivity implements ConversionListener {
 
     private void loadUserDetail() {
         binding.txtName.setText(preferenceManager.getString(Constant.KEY_NAME));
-        byte[] bytes = Base64.decode(preferenceManager.getString(Constant.KEY_IMAGE), Base64.DEFAULT);
-        Bitmap bitmap = BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        binding.imageProfile.setImageBitmap(bitmap);
+        AvatarCache.getInstance(this).load(preferenceManager.getString(Constant.KEY_USER_ID),
+                preferenceManager.getString(Constant.KEY_IMAGE_HASH), preferenceManager.getString(Constant.KEY_IMAGE),
+                binding.imageProfile);
     }
 
     private void showToast(String message) {
@@ -239,12 +354,31 @@ public class MainActivity extends BaseActivity implements ConversionListener {
     private void listenConversion() {
         String userId = preferenceManager.getString(Constant.KEY_USER_ID);
         Log.d("MainActivity", "Listening to conversations for user: " + userId);
-        db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constant.KEY_SENDER_ID, userId)
-                .addSnapshotListener(eventListener);
-        db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
-                .whereEqualTo(Constant.KEY_RECEIVER_ID, userId)
-                .addSnapshotListener(eventListener);
+        // Một listener duy nhất cho các cuộc trò chuyện có người dùng tham gia
+        // Gắn lại sau onStop chỉ đọc các hội thoại có tin mới hơn mốc đã nhận (cần composite index participants + timestamp)
+        listenerRegistry.add("conversations", () -> {
+            Query query = db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
+                    .whereArrayContains(Constant.KEY_PARTICIPANTS, userId);
+            if (resumeAfter != null) {
+                query = query.whereGreaterThan(Constant.KEY_TIMESTAMP, resumeAfter);
+            }
+            return query.addSnapshotListener(eventListener)::remove;
+        });
+    }
+
+    // Kết quả đi qua cùng eventListener; hội thoại trùng người nhận chỉ giữ bản mới nhất
+    private void loadLegacyConversations(String userId) {
+        for (String field : new String[]{Constant.KEY_SENDER_ID, Constant.KEY_RECEIVER_ID}) {
+            db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
+                    .whereEqualTo(field, userId)
+                    .get()
+                    .addOnSuccessListener(snapshot -> {
+                        if (!isDestroyed()) {
+                            eventListener.onEvent(snapshot, null);
+                        }
+                    })
+                    .addOnFailureListener(e -> Log.e("MainActivity", "Failed to load legacy conversations: " + e.getMessage()));
+        }
     }
 
     private final EventListener<QuerySnapshot> eventListener = (value, error) -> {
@@ -258,49 +392,94 @@ public class MainActivity extends BaseActivity implements ConversionListener {
             return;
         }
         if (value != null) {
+            List<MessageEnvelope> envelopes = new ArrayList<>();
+            List<String> conversationKeys = new ArrayList<>();
             for (DocumentChange documentChange : value.getDocumentChanges()) {
-                if (documentChange.getType() == DocumentChange.Type.ADDED) {
-                    String senderId = documentChange.getDocument().getString(Constant.KEY_SENDER_ID);
-                    String receiverId = documentChange.getDocument().getString(Constant.KEY_RECEIVER_ID);
-                    ChatMessage chatMessage = new ChatMessage();
-                    chatMessage.senderId = senderId;
-                    chatMessage.receiverId = receiverId;
-                    if (preferenceManager.getString(Constant.KEY_USER_ID).equals(senderId)) {
-                        chatMessage.conversionImg = documentChange.getDocument().getString(Constant.KEY_RECEIVER_IMG);
-                        chatMessage.conversionName = documentChange.getDocument().getString(Constant.KEY_RECEIVER_NAME);
-                        chatMessage.conversionId = documentChange.getDocument().getString(Constant.KEY_RECEIVER_ID);
-                    } else {
-                        chatMessage.conversionImg = documentChange.getDocument().getString(Constant.KEY_SENDER_IMG);
-                        chatMessage.conversionName = documentChange.getDocument().getString(Constant.KEY_SENDER_NAME);
-                        chatMessage.conversionId = documentChange.getDocument().getString(Constant.KEY_SENDER_ID);
-                    }
-                    String encryptedMessage = documentChange.getDocument().getString(Constant.KEY_LAST_MESSAGE);
-                    String decryptedMessage = decryptMessage(encryptedMessage);
-                    chatMessage.message = decodeMessage(decryptedMessage);
-                    chatMessage.dateObject = documentChange.getDocument().getDate(Constant.KEY_TIMESTAMP);
-                    conversations.add(chatMessage);
-                } else if (documentChange.getType() == DocumentChange.Type.MODIFIED) {
-                    for (int i = 0; i < conversations.size(); i++) {
-                        String senderId = documentChange.getDocument().getString(Constant.KEY_SENDER_ID);
-                        String receiverId = documentChange.getDocument().getString(Constant.KEY_RECEIVER_ID);
-                        if (conversations.get(i).senderId.equals(senderId) && conversations.get(i).receiverId.equals(receiverId)) {
-                            String encryptedMessage = documentChange.getDocument().getString(Constant.KEY_LAST_MESSAGE);
-                            String decryptedMessage = decryptMessage(encryptedMessage);
-                            conversations.get(i).message = decodeMessage(decryptedMessage);
-                            conversations.get(i).dateObject = documentChange.getDocument().getDate(Constant.KEY_TIMESTAMP);
-                            break;
-                        }
+                DocumentSnapshot document = documentChange.getDocument();
+                Blob payload = document.getBlob(Constant.KEY_LAST_PAYLOAD);
+                String legacyMessage = payload == null ? document.getString(Constant.KEY_LAST_MESSAGE) : null;
+                envelopes.add(MessageEnvelope.read(payload != null ? payload.toBytes() : null, legacyMessage));
+                conversationKeys.add(ConversationKey.ofNullable(document.getString(Constant.KEY_SENDER_ID), document.getString(Constant.KEY_RECEIVER_ID)));
+                // Giờ server chưa có (bản ghi cục bộ đang chờ) thì trả về null, không tiến mốc nghe lại
+                Date timestamp = document.getDate(Constant.KEY_TIMESTAMP);
+                if (timestamp != null && (resumeAfter == null || timestamp.after(resumeAfter))) {
+                    resumeAfter = timestamp;
+                }
+            }
+            List<String> decryptedMessages = decryptMessages(conversationKeys, envelopes);
+            int changeIndex = 0;
+            boolean movedToTop = false;
+            for (DocumentChange documentChange : value.getDocumentChanges()) {
+                MessageEnvelope envelope = envelopes.get(changeIndex);
+                String decryptedMessage = decryptedMessages.get(changeIndex++);
+                DocumentSnapshot document = documentChange.getDocument();
+                String senderId = document.getString(Constant.KEY_SENDER_ID);
+                String receiverId = document.getString(Constant.KEY_RECEIVER_ID);
+                // Người còn lại trong hội thoại, bất kể ai gửi tin cuối
+                String conversionId = preferenceManager.getString(Constant.KEY_USER_ID).equals(senderId) ? receiverId : senderId;
+                if (conversionId == null) {
+                    continue;
+                }
+                ChatMessage existing = conversations.find(conversionId);
+                if (documentChange.getType() == DocumentChange.Type.REMOVED) {
+                    // Chỉ xóa khi đúng document đang hiển thị, không phải bản cũ trùng người nhận
+                    if (existing != null && document.getId().equals(existing.messageId)) {
+                        conversations.remove(conversionId);
                     }
+                    continue;
                 }
+                // Không giải mã được thì hiện chữ thay thế, không hiện ciphertext; envelope giữ lại để giải mã khi có khóa
+                ChatMessage chatMessage = toConversation(document, conversionId,
+                        decryptedMessage != null ? decodeMessage(decryptedMessage) : getString(R.string.decryption_failed));
+                chatMessage.envelope = envelope;
+                chatMessage.decrypted = decryptedMessage != null;
+                // Hội thoại cũ (id ngẫu nhiên) chưa được chuyển sang id cố định: chỉ giữ bản mới nhất
+                if (existing != null && !document.getId().equals(existing.messageId) && isOlder(chatMessage, existing)) {
+                    continue;
+                }
+                if (conversations.upsert(chatMessage) == 0) {
+                    movedToTop = true;
+                }
+            }
+            if (movedToTop) {
+                binding.conversationsRecyclerView.smoothScrollToPosition(0);
             }
-            Collections.sort(conversations, (obj1, ojb2) -> ojb2.dateObject.compareTo(obj1.dateObject));
-            conversationsAdapter.notifyDataSetChanged();
-            binding.conversationsRecyclerView.smoothScrollToPosition(0);
             binding.conversationsRecyclerView.setVisibility(View.VISIBLE);
             binding.progBar.setVisibility(View.GONE);
+            // Mốc time-to-full-display cho StartupTimingMetric: danh sách hội thoại đầu tiên đã hiển thị
+            if (!reportedFullyDrawn) {
+                reportedFullyDrawn = true;
+                reportFullyDrawn();
+            }
         }
     };
 
+    // messageId giữ id document hội thoại để nhận ra REMOVED và bản trùng cũ
+    private ChatMessage toConversation(DocumentSnapshot document, String conversionId, String message) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageId = document.getId();
+        chatMessage.senderId = document.getString(Constant.KEY_SENDER_ID);
+        chatMessage.receiverId = document.getString(Constant.KEY_RECEIVER_ID);
+        chatMessage.conversionId = conversionId;
+        if (conversionId.equals(chatMessage.receiverId)) {
+            chatMessage.conversionImg = document.getString(Constant.KEY_RECEIVER_IMG);
+            chatMessage.conversionImgHash = document.getString(Constant.KEY_RECEIVER_IMG_HASH);
+            chatMessage.conversionName = document.getString(Constant.KEY_RECEIVER_NAME);
+        } else {
+            chatMessage.conversionImg = document.getString(Constant.KEY_SENDER_IMG);
+            chatMessage.conversionImgHash = document.getString(Constant.KEY_SENDER_IMG_HASH);
+            chatMessage.conversionName = document.getString(Constant.KEY_SENDER_NAME);
+        }
+        chatMessage.message = message;
+        chatMessage.dateObject = document.getDate(Constant.KEY_TIMESTAMP, DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        return chatMessage;
+    }
+
+    private static boolean isOlder(ChatMessage conversation, ChatMessage other) {
+        return conversation.dateObject != null && other.dateObject != null
+                && conversation.dateObject.before(other.dateObject);
+    }
+
     private void getToken() {
         FirebaseMessaging.getInstance().getToken().addOnSuccessListener(token -> {
             String currentToken = preferenceManager.getDeviceFcmToken();
@@ -341,33 +520,11 @@ public class MainActivity extends BaseActivity implements ConversionListener {
         String userId = preferenceManager.getString(Constant.KEY_USER_ID);
         Log.d("MainActivity", "User signing out: " + userId);
 
-        HashMap<String, Object> log = new HashMap<>();
-        log.put("userId", userId != null ? userId : "unknown");
-        log.put("action", "sign_out");
-        log.put("timestamp", FieldValue.serverTimestamp());
-        log.put("deviceInfo", Build.MODEL + " (Android " + Build.VERSION.RELEASE + ")");
-        db.collection("logs").add(log)
-                .addOnSuccessListener(documentReference -> {
-                    Log.d("MainActivity", "Sign out logged successfully");
-                })
-                .addOnFailureListener(e -> {
-                    Log.e("MainActivity", "Failed to log sign out: " + e.getMessage());
-                });
+        EventLogger.getInstance(getApplicationContext()).log(userId, "sign_out");
 
+        // Ghi offline và dừng heartbeat trước khi mất quyền ghi document user
+        PresenceService.getInstance(getApplicationContext()).signOut(userId);
         auth.signOut();
-        if (userId != null) {
-            DocumentReference documentReference = db.collection(Constant.KEY_COLLECTION_USERS)
-                    .document(userId);
-            HashMap<String, Object> updates = new HashMap<>();
-            updates.put(Constant.KEY_AVAILABILITY, 0); // Chỉ cập nhật availability
-            documentReference.update(updates)
-                    .addOnSuccessListener(unused -> {
-                        Log.d("MainActivity", "User data updated successfully");
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e("MainActivity", "Failed to update user data: " + e.getMessage());
-                    });
-        }
 
         preferenceManager.clear();
         preferenceManager.putBoolean(Constant.KEY_SIGNED_IN, false);
@@ -400,6 +557,15 @@ public class MainActivity extends BaseActivity implements ConversionListener {
         requestNotificationPermission();
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (deferredInit != null) {
+            deferredInit.clear();
+        }
+        decryptExecutor.shutdownNow();
+    }
+
     private void requestNotificationPermission() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU &&
                 ContextCompat.checkSelfPermission(this, Manifest.permission.POST_NOTIFICATIONS) != PackageManager.PERMISSION_GRANTED) {
@@ -11,7 +11,10 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.androids.javachat.databinding.ActivitySignInBinding;
 import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.EventLogger;
 import com.androids.javachat.utilities.PreferenceManager;
+import com.androids.javachat.utilities.RateLimiter;
+import com.androids.javachat.utilities.UserPrefixIndex;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthInvalidCredentialsException;
 import com.google.firebase.auth.FirebaseAuthInvalidUserException;
@@ -26,6 +29,7 @@ public class SignInActivity extends AppCompatActivity {
 
     private ActivitySignInBinding binding;
     private PreferenceManager preferenceManager;
+    private RateLimiter loginRateLimiter;
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
     private boolean isProcessing = false;
@@ -35,7 +39,8 @@ public class SignInActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         binding = ActivitySignInBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        loginRateLimiter = RateLimiter.forLogins(getApplicationContext());
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
         if (mAuth.getCurrentUser() != null && preferenceManager.getBoolean(Constant.KEY_SIGNED_IN)) {
@@ -87,7 +92,7 @@ public class SignInActivity extends AppCompatActivity {
                 startActivity(new Intent(getApplicationContext(), SignUpActivity.class)));
         binding.btnSignIn.setOnClickListener(v -> {
             if (!isProcessing && isValidSignInDetails()) {
-                if (checkLoginAttempts()) {
+                if (loginRateLimiter.canAcquire()) {
                     signIn();
                 } else {
                     showToast("Đã vượt quá số lần thử đăng nhập, vui lòng thử lại sau 5 phút");
@@ -96,33 +101,6 @@ public class SignInActivity extends AppCompatActivity {
         });
     }
 
-    private boolean checkLoginAttempts() {
-        int attempts = preferenceManager.getString(Constant.KEY_LOGIN_ATTEMPTS) != null ?
-                Integer.parseInt(preferenceManager.getString(Constant.KEY_LOGIN_ATTEMPTS)) : 0;
-        long lastAttemptTime = preferenceManager.getString(Constant.KEY_ATTEMPT_TIMESTAMP) != null ?
-                Long.parseLong(preferenceManager.getString(Constant.KEY_ATTEMPT_TIMESTAMP)) : 0;
-        long currentTime = System.currentTimeMillis();
-
-        if (currentTime - lastAttemptTime > Constant.ATTEMPT_WINDOW) {
-            preferenceManager.putString(Constant.KEY_LOGIN_ATTEMPTS, "0");
-            preferenceManager.putString(Constant.KEY_ATTEMPT_TIMESTAMP, String.valueOf(currentTime));
-            return true;
-        }
-
-        if (attempts >= Constant.MAX_LOGIN_ATTEMPTS) {
-            return false;
-        }
-
-        return true;
-    }
-
-    private void incrementLoginAttempts() {
-        int attempts = preferenceManager.getString(Constant.KEY_LOGIN_ATTEMPTS) != null ?
-                Integer.parseInt(preferenceManager.getString(Constant.KEY_LOGIN_ATTEMPTS)) : 0;
-        preferenceManager.putString(Constant.KEY_LOGIN_ATTEMPTS, String.valueOf(attempts + 1));
-        preferenceManager.putString(Constant.KEY_ATTEMPT_TIMESTAMP, String.valueOf(System.currentTimeMillis()));
-    }
-
     private void signIn() {
         isProcessing = true;
         loading(true);
@@ -168,6 +146,8 @@ public class SignInActivity extends AppCompatActivity {
                                         updates.put("isEmailVerified", true);
                                         updates.put(Constant.KEY_AVAILABILITY, 1);
                                         updates.put(Constant.KEY_SESSION_TOKEN, sessionToken);
+                                        // Tài khoản tạo trước khi có tìm kiếm chưa có nameLower: bổ sung khi đăng nhập
+                                        updates.put(Constant.KEY_NAME_LOWER, UserPrefixIndex.normalize(document.getString(Constant.KEY_NAME)));
 
                                         // Lấy FCM token
                                         FirebaseMessaging.getInstance().getToken().addOnCompleteListener(tokenTask -> {
@@ -191,7 +171,8 @@ public class SignInActivity extends AppCompatActivity {
                                             preferenceManager.putString(Constant.KEY_NAME, document.getString(Constant.KEY_NAME));
                                             preferenceManager.putString(Constant.KEY_EMAIL, document.getString(Constant.KEY_EMAIL));
                                             preferenceManager.putString(Constant.KEY_IMAGE, document.getString(Constant.KEY_IMAGE));
-                                            preferenceManager.putString(Constant.KEY_LOGIN_ATTEMPTS, "0");
+                                            preferenceManager.putString(Constant.KEY_IMAGE_HASH, document.getString(Constant.KEY_IMAGE_HASH));
+                                            loginRateLimiter.reset();
                                             loading(false);
                                             isProcessing = false;
                                             showToast("Đăng nhập thành công!");
@@ -206,7 +187,9 @@ public class SignInActivity extends AppCompatActivity {
                     } else {
                         loading(false);
                         isProcessing = false;
-                        incrementLoginAttempts();
+                        // Chỉ lần đăng nhập sai mới bị tính lượt; hiếm nên ghi ngay
+                        loginRateLimiter.tryAcquire();
+                        loginRateLimiter.persist();
                         try {
                             throw task.getException();
                         } catch (FirebaseAuthInvalidUserException e) {
@@ -224,12 +207,7 @@ public class SignInActivity extends AppCompatActivity {
     }
 
     private void logSessionEvent(String userId, String action) {
-        HashMap<String, Object> log = new HashMap<>();
-        log.put("userId", userId != null ? userId : "unknown");
-        log.put("action", action);
-        log.put("timestamp", com.google.firebase.firestore.FieldValue.serverTimestamp());
-        db.collection("logs").add(log)
-                .addOnFailureListener(e -> Log.e("SignInActivity", "Failed to log session event: " + e.getMessage()));
+        EventLogger.getInstance(getApplicationContext()).log(userId, action);
     }
 
     private void loading(boolean isLoading) {
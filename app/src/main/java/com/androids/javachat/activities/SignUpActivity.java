@@ -8,7 +8,6 @@ import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.util.Log;
 import android.util.Patterns;
 import android.view.View;
@@ -20,8 +19,12 @@ import androidx.appcompat.app.AppCompatActivity;
 
 import com.androids.javachat.R;
 import com.androids.javachat.databinding.ActivitySignUpBinding;
+import com.androids.javachat.storage.AvatarStore;
+import com.androids.javachat.storage.BlobStore;
 import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.EventLogger;
 import com.androids.javachat.utilities.PreferenceManager;
+import com.androids.javachat.utilities.UserPrefixIndex;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthUserCollisionException;
 import com.google.firebase.auth.FirebaseAuthWeakPasswordException;
@@ -36,7 +39,8 @@ import java.util.HashMap;
 public class SignUpActivity extends AppCompatActivity {
 
     private ActivitySignUpBinding binding;
-    private String encodedImage;
+    private byte[] imageBytes;
+    private String imageHash;
     private PreferenceManager preferenceManager;
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
@@ -50,7 +54,7 @@ public class SignUpActivity extends AppCompatActivity {
         super.onCreate(savedInstanceState);
         binding = ActivitySignUpBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        preferenceManager = PreferenceManager.getInstance(getApplicationContext());
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
         verificationHandler = new Handler(Looper.getMainLooper());
@@ -104,7 +108,7 @@ public class SignUpActivity extends AppCompatActivity {
                                     preferenceManager.putString(Constant.KEY_USER_ID, userId);
                                     preferenceManager.putString(Constant.KEY_NAME, name);
                                     preferenceManager.putString(Constant.KEY_EMAIL, email);
-                                    preferenceManager.putString(Constant.KEY_IMAGE, encodedImage);
+                                    preferenceManager.putString(Constant.KEY_IMAGE_HASH, imageHash);
 
                                     showToast("Vui lòng xác minh email qua Gmail");
                                     binding.txtSignUp.setText("Hủy");
@@ -203,52 +207,70 @@ public class SignUpActivity extends AppCompatActivity {
                 showToast("Không thể lấy FCM token, dữ liệu sẽ được đồng bộ sau");
             }
 
-            HashMap<String, Object> user = new HashMap<>();
-            user.put(Constant.KEY_NAME, name);
-            user.put(Constant.KEY_EMAIL, email);
-            user.put(Constant.KEY_IMAGE, encodedImage);
-            user.put(Constant.KEY_FCM_TOKEN, fcmToken != null ? fcmToken : "");
-            user.put(Constant.KEY_AVAILABILITY, 1);
-            user.put("isEmailVerified", true);
+            // Ảnh được lưu một lần trong AvatarStore, document người dùng chỉ giữ hash và URL
+            AvatarStore.getInstance(this).upload(imageHash, imageBytes, new BlobStore.Callback<String>() {
+                @Override
+                public void onSuccess(String imageUrl) {
+                    runOnUiThread(() -> saveUserDocument(userId, name, email, fcmToken, imageUrl));
+                }
 
-            db.collection(Constant.KEY_COLLECTION_USERS)
-                    .document(userId)
-                    .set(user)
-                    .addOnSuccessListener(documentReference -> {
-                        Log.d("SignUpActivity", "User data saved: ID=" + userId + ", Name=" + name);
-                        preferenceManager.putBoolean(Constant.KEY_SIGNED_IN, true);
-                        preferenceManager.putString(Constant.KEY_USER_ID, userId);
-                        preferenceManager.putString(Constant.KEY_NAME, name);
-                        preferenceManager.putString(Constant.KEY_EMAIL, email);
-                        preferenceManager.putString(Constant.KEY_IMAGE, encodedImage);
-                        if (fcmToken != null) {
-                            preferenceManager.saveDeviceFcmToken(fcmToken);
-                        }
+                @Override
+                public void onFailure(Exception e) {
+                    Log.e("SignUpActivity", "Failed to upload avatar: " + e.getMessage());
+                    runOnUiThread(() -> {
                         stopVerification();
-                        showToast("Đăng ký thành công!");
-                        logSessionEvent(userId, "sign_up_success");
-                        Intent intent = new Intent(getApplicationContext(), MainActivity.class);
-                        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-                        startActivity(intent);
-                        finish();
-                    })
-                    .addOnFailureListener(exception -> {
-                        Log.e("SignUpActivity", "Failed to save user data: " + exception.getMessage());
-                        stopVerification();
-                        showToast("Lưu thông tin thất bại: " + exception.getMessage());
-                        logSessionEvent(userId, "save_user_failed");
+                        showToast("Tải ảnh đại diện thất bại: " + e.getMessage());
+                        logSessionEvent(userId, "avatar_upload_failed");
                         mAuth.signOut();
                     });
+                }
+            });
         });
     }
 
+    private void saveUserDocument(String userId, String name, String email, String fcmToken, String imageUrl) {
+        HashMap<String, Object> user = new HashMap<>();
+        user.put(Constant.KEY_NAME, name);
+        user.put(Constant.KEY_NAME_LOWER, UserPrefixIndex.normalize(name));
+        user.put(Constant.KEY_EMAIL, email);
+        user.put(Constant.KEY_IMAGE_HASH, imageHash);
+        user.put(Constant.KEY_IMAGE_URL, imageUrl);
+        user.put(Constant.KEY_FCM_TOKEN, fcmToken != null ? fcmToken : "");
+        user.put(Constant.KEY_AVAILABILITY, 1);
+        user.put("isEmailVerified", true);
+
+        db.collection(Constant.KEY_COLLECTION_USERS)
+                .document(userId)
+                .set(user)
+                .addOnSuccessListener(documentReference -> {
+                    Log.d("SignUpActivity", "User data saved: ID=" + userId + ", Name=" + name);
+                    preferenceManager.putBoolean(Constant.KEY_SIGNED_IN, true);
+                    preferenceManager.putString(Constant.KEY_USER_ID, userId);
+                    preferenceManager.putString(Constant.KEY_NAME, name);
+                    preferenceManager.putString(Constant.KEY_EMAIL, email);
+                    preferenceManager.putString(Constant.KEY_IMAGE_HASH, imageHash);
+                    if (fcmToken != null) {
+                        preferenceManager.saveDeviceFcmToken(fcmToken);
+                    }
+                    stopVerification();
+                    showToast("Đăng ký thành công!");
+                    logSessionEvent(userId, "sign_up_success");
+                    Intent intent = new Intent(getApplicationContext(), MainActivity.class);
+                    intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                    startActivity(intent);
+                    finish();
+                })
+                .addOnFailureListener(exception -> {
+                    Log.e("SignUpActivity", "Failed to save user data: " + exception.getMessage());
+                    stopVerification();
+                    showToast("Lưu thông tin thất bại: " + exception.getMessage());
+                    logSessionEvent(userId, "save_user_failed");
+                    mAuth.signOut();
+                });
+    }
+
     private void logSessionEvent(String userId, String action) {
-        HashMap<String, Object> log = new HashMap<>();
-        log.put("userId", userId != null ? userId : "unknown");
-        log.put("action", action);
-        log.put("timestamp", com.google.firebase.firestore.FieldValue.serverTimestamp());
-        db.collection("logs").add(log)
-                .addOnFailureListener(e -> Log.e("SignUpActivity", "Failed to log session event: " + e.getMessage()));
+        EventLogger.getInstance(getApplicationContext()).log(userId, action);
     }
 
     private void stopVerification() {
@@ -261,7 +283,7 @@ public class SignUpActivity extends AppCompatActivity {
         }
     }
 
-    private String encodeImage(Bitmap bitmap) {
+    private byte[] compressImage(Bitmap bitmap) {
         int preWidth = 150;
         int preHeight = bitmap.getHeight() * preWidth / bitmap.getWidth();
         Bitmap preBitmap = Bitmap.createScaledBitmap(bitmap, preWidth, preHeight, false);
@@ -271,7 +293,7 @@ public class SignUpActivity extends AppCompatActivity {
         if (bytes.length > 1024 * 1024) {
             throw new IllegalStateException("Ảnh quá lớn, vui lòng chọn ảnh nhỏ hơn");
         }
-        return Base64.encodeToString(bytes, Base64.DEFAULT);
+        return bytes;
     }
 
     private final ActivityResultLauncher<Intent> pickImage = registerForActivityResult(
@@ -284,7 +306,8 @@ public class SignUpActivity extends AppCompatActivity {
                         Bitmap bitmap = BitmapFactory.decodeStream(inputStream);
                         binding.imageProfile.setImageBitmap(bitmap);
                         binding.txtAddImage.setVisibility(View.GONE);
-                        encodedImage = encodeImage(bitmap);
+                        imageBytes = compressImage(bitmap);
+                        imageHash = AvatarStore.hashOf(imageBytes);
                     } catch (FileNotFoundException e) {
                         e.printStackTrace();
                         showToast("Không thể tải ảnh, vui lòng thử lại");
@@ -296,7 +319,7 @@ public class SignUpActivity extends AppCompatActivity {
     );
 
     private boolean isValidSignUpDetails() {
-        if (encodedImage == null) {
+        if (imageBytes == null) {
             showToast("Vui lòng chọn ảnh đại diện");
             binding.imageProfile.setBackgroundResource(R.drawable.image_error_background);
             return false;
@@ -2,40 +2,85 @@ package com.androids.javachat.activities;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import android.util.Log;
 import android.view.View;
 
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Transformations;
+import androidx.paging.LoadState;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+
 import com.androids.javachat.adapter.UsersAdapter;
 import com.androids.javachat.databinding.ActivityUsersBinding;
+import com.androids.javachat.firebase.FirestoreUserPagingSource;
 import com.androids.javachat.listener.Userlistener;
 import com.androids.javachat.models.User;
 import com.androids.javachat.utilities.Constant;
-import com.androids.javachat.utilities.PreferenceManager;
 import com.androids.javachat.utilities.SpaceItemDecoration;
+import com.androids.javachat.utilities.UserRepository;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.DocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import kotlin.Unit;
+
 public class UsersActivity extends BaseActivity implements Userlistener {
 
+    private static final int PAGE_SIZE = 20;
+    private static final int LOCAL_RESULT_LIMIT = 50;
+    private static final long SEARCH_DEBOUNCE_MS = 300;
+
     private ActivityUsersBinding binding;
-    private PreferenceManager preferenceManager;
+    private UserRepository userRepository;
+    private UsersAdapter usersAdapter;
+    private String currentUserId;
+    // Truy vấn mạng hiện tại; mỗi giá trị mới thay Pager cũ bằng Pager mới
+    private final MutableLiveData<String> remoteQuery = new MutableLiveData<>();
+    // false khi đang hiện kết quả cục bộ, để trang mạng của truy vấn cũ không ghi đè
+    private boolean showingRemote;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private final Runnable remoteSearch = () -> searchRemote(currentQuery());
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        // BaseActivity đã chuyển sang màn hình đăng nhập
+        if (isFinishing()) {
+            return;
+        }
         binding = ActivityUsersBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
-        preferenceManager = new PreferenceManager(getApplicationContext());
+        userRepository = UserRepository.getInstance(getApplicationContext());
         setListeners();
         getUser();
     }
 
     private void setListeners() {
         binding.imgBack.setOnClickListener(v -> onBackPressed());
+        binding.inputSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                onQueryChanged(s.toString());
+            }
+        });
     }
 
     private void getUser() {
@@ -45,63 +90,110 @@ public class UsersActivity extends BaseActivity implements Userlistener {
             showErrorMessage("Vui lòng đăng nhập lại");
             return;
         }
-        String currentUserId = auth.getCurrentUser().getUid();
+        currentUserId = auth.getCurrentUser().getUid();
         Log.d("UsersActivity", "Current user ID: " + currentUserId);
-        Log.d("UsersActivity", "Auth state: Authenticated, UID: " + currentUserId);
+
+        int spacingInPixels = (int) (16 * getResources().getDisplayMetrics().density);
+        binding.userRecyclerview.addItemDecoration(new SpaceItemDecoration(spacingInPixels));
+        usersAdapter = new UsersAdapter(this);
+        usersAdapter.addLoadStateListener(loadStates -> {
+            onLoadStateChanged(loadStates.getRefresh());
+            return Unit.INSTANCE;
+        });
+        binding.userRecyclerview.setAdapter(usersAdapter);
+        observeRemote();
 
         loading(true);
-        FirebaseFirestore db = FirebaseFirestore.getInstance();
-        db.collection(Constant.KEY_COLLECTION_USERS)
-                .whereEqualTo("isEmailVerified", true)
-                .limit(50)
-                .get()
-                .addOnCompleteListener(task -> {
-                    loading(false);
-                    if (task.isSuccessful() && task.getResult() != null) {
-                        Log.d("UsersActivity", "Found " + task.getResult().size() + " profiles");
-                        List<User> users = new ArrayList<>();
-                        for (QueryDocumentSnapshot queryDocumentSnapshot : task.getResult()) {
-                            String documentId = queryDocumentSnapshot.getId();
-                            if (documentId.equals(currentUserId)) {
-                                Log.d("UsersActivity", "Skipping current user: " + documentId);
-                                continue;
-                            }
-                            String name = queryDocumentSnapshot.getString(Constant.KEY_NAME);
-                            if (name == null || name.isEmpty()) {
-                                Log.w("UsersActivity", "Missing name for user: " + documentId);
-                                continue;
-                            }
-                            Log.d("UsersActivity", "Profile: ID=" + documentId +
-                                    ", Name=" + name +
-                                    ", Email=" + queryDocumentSnapshot.getString(Constant.KEY_EMAIL) +
-                                    ", isEmailVerified=" + queryDocumentSnapshot.getBoolean("isEmailVerified"));
-                            User user = new User();
-                            user.id = documentId;
-                            user.name = name;
-                            user.email = queryDocumentSnapshot.getString(Constant.KEY_EMAIL);
-                            user.image = queryDocumentSnapshot.getString(Constant.KEY_IMAGE);
-                            user.token = queryDocumentSnapshot.getString(Constant.KEY_FCM_TOKEN);
-                            user.isEmailVerified = queryDocumentSnapshot.getBoolean("isEmailVerified");
-                            users.add(user);
-                        }
-                        if (!users.isEmpty()) {
-                            Log.d("UsersActivity", "Displaying " + users.size() + " users");
-                            int spacingInPixels = (int) (16 * getResources().getDisplayMetrics().density);
-                            binding.userRecyclerview.addItemDecoration(new SpaceItemDecoration(spacingInPixels));
-                            UsersAdapter usersAdapter = new UsersAdapter(users, this);
-                            binding.userRecyclerview.setAdapter(usersAdapter);
-                            binding.userRecyclerview.setVisibility(View.VISIBLE);
-                            binding.txtErrorMessage.setVisibility(View.GONE);
-                        } else {
-                            Log.w("UsersActivity", "No verified users found");
-                            showErrorMessage("Không tìm thấy người dùng đã xác minh. Hãy mời bạn bè tham gia!");
-                        }
-                    } else {
-                        String errorMsg = task.getException() != null ? task.getException().getMessage() : "Unknown error";
-                        Log.e("UsersActivity", "Query failed: " + errorMsg);
-                        showErrorMessage("Lỗi kết nối: " + errorMsg);
-                    }
-                });
+        // Người dùng đã lưu trên máy hiện ngay; danh sách cũ được giữ tới khi trang đầu từ Firestore về
+        userRepository.loadIndex(() -> {
+            if (isDestroyed() || showingRemote) {
+                return;
+            }
+            showLocalResults(currentQuery());
+            if (!searchHandler.hasCallbacks(remoteSearch)) {
+                searchRemote(currentQuery());
+            }
+        });
+    }
+
+    // Mỗi lần gõ: hiện ngay kết quả từ trie, truy vấn Firestore chỉ chạy khi ngừng gõ SEARCH_DEBOUNCE_MS
+    private void onQueryChanged(String query) {
+        if (usersAdapter == null) {
+            return;
+        }
+        searchHandler.removeCallbacks(remoteSearch);
+        // Bỏ kết quả mạng của truy vấn cũ để nó không ghi đè kết quả cục bộ mới
+        showingRemote = false;
+        showLocalResults(query);
+        searchHandler.postDelayed(remoteSearch, SEARCH_DEBOUNCE_MS);
+    }
+
+    private String currentQuery() {
+        return binding.inputSearch.getText().toString();
+    }
+
+    private void showLocalResults(String query) {
+        List<User> users = new ArrayList<>();
+        for (User user : userRepository.searchCached(query, LOCAL_RESULT_LIMIT)) {
+            if (!user.id.equals(currentUserId)) {
+                users.add(user);
+            }
+        }
+        usersAdapter.submitData(getLifecycle(), PagingData.from(users));
+    }
+
+    // Quan sát một lần: switchMap bỏ Pager của truy vấn cũ, cachedIn chỉ giữ trang của truy vấn hiện tại
+    private void observeRemote() {
+        LiveData<PagingData<User>> remoteResults = PagingLiveData.cachedIn(
+                Transformations.switchMap(remoteQuery, this::remotePages), getLifecycle());
+        remoteResults.observe(this, pagingData -> {
+            if (showingRemote) {
+                usersAdapter.submitData(getLifecycle(), pagingData);
+            }
+        });
+    }
+
+    private LiveData<PagingData<User>> remotePages(String query) {
+        Pager<DocumentSnapshot, User> pager = new Pager<>(new PagingConfig(PAGE_SIZE),
+                () -> new FirestoreUserPagingSource(query, currentUserId, userRepository::putAll));
+        return PagingLiveData.getLiveData(pager);
+    }
+
+    private void searchRemote(String query) {
+        showingRemote = true;
+        remoteQuery.setValue(query);
+    }
+
+    private void onLoadStateChanged(LoadState refresh) {
+        if (!showingRemote) {
+            // Đang hiển thị kết quả cục bộ, chờ truy vấn mạng
+            if (usersAdapter.getItemCount() > 0) {
+                showUsers();
+            }
+            return;
+        }
+        loading(refresh instanceof LoadState.Loading);
+        if (refresh instanceof LoadState.Error) {
+            String errorMsg = ((LoadState.Error) refresh).getError().getMessage();
+            Log.e("UsersActivity", "Query failed: " + errorMsg);
+            if (usersAdapter.getItemCount() == 0) {
+                showErrorMessage("Lỗi kết nối: " + errorMsg);
+            }
+        } else if (refresh instanceof LoadState.NotLoading) {
+            if (usersAdapter.getItemCount() > 0) {
+                showUsers();
+            } else if (currentQuery().trim().isEmpty()) {
+                Log.w("UsersActivity", "No verified users found");
+                showErrorMessage("Không tìm thấy người dùng đã xác minh. Hãy mời bạn bè tham gia!");
+            } else {
+                showErrorMessage("Không tìm thấy người dùng phù hợp");
+            }
+        }
+    }
+
+    private void showUsers() {
+        binding.userRecyclerview.setVisibility(View.VISIBLE);
+        binding.txtErrorMessage.setVisibility(View.GONE);
     }
 
     private void showErrorMessage(String message) {
@@ -118,6 +210,12 @@ public class UsersActivity extends BaseActivity implements Userlistener {
         }
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        searchHandler.removeCallbacks(remoteSearch);
+    }
+
     @Override
     public void onUserClicked(User user) {
         Log.d("UsersActivity", "User clicked: ID=" + user.id + ", Name=" + user.name);
@@ -126,4 +224,4 @@ public class UsersActivity extends BaseActivity implements Userlistener {
         startActivity(intent);
         finish();
     }
-}
\ No newline at end of file
+}
@@ -5,25 +5,47 @@ import android.view.LayoutInflater;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.androids.javachat.R;
 import com.androids.javachat.databinding.ItemContainerReceivedMessageBinding;
 import com.androids.javachat.databinding.ItemContainerSentMessageBinding;
 import com.androids.javachat.models.ChatMessage;
 
-import java.util.List;
+import java.util.Objects;
 
-public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+// ListAdapter tính diff trên background thread (AsyncListDiffer), chỉ bind lại các item thay đổi
+public class ChatAdapter extends ListAdapter<ChatMessage, RecyclerView.ViewHolder> {
 
-    private final List<ChatMessage> chatMessageList;
     private Bitmap receiverProfileImage;
     private final String senderId;
 
     public static final int VIEW_TYPE_SENT = 1;
     public static final int VIEW_TYPE_RECEIVED = 2;
 
-    public ChatAdapter(List<ChatMessage> chatMessageList, Bitmap receiverProfileImage, String senderId) {
-        this.chatMessageList = chatMessageList;
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            if (oldItem.messageId == null || newItem.messageId == null) {
+                return oldItem == newItem;
+            }
+            return oldItem.messageId.equals(newItem.messageId);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return Objects.equals(oldItem.message, newItem.message)
+                    && Objects.equals(oldItem.dateTime, newItem.dateTime)
+                    && Objects.equals(oldItem.senderId, newItem.senderId)
+                    && oldItem.pending == newItem.pending
+                    && oldItem.failed == newItem.failed;
+        }
+    };
+
+    public ChatAdapter(Bitmap receiverProfileImage, String senderId) {
+        super(DIFF_CALLBACK);
         this.receiverProfileImage = receiverProfileImage;
         this.senderId = senderId;
     }
@@ -57,35 +79,21 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
         if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder) holder).setData(chatMessageList.get(position));
+            ((SentMessageViewHolder) holder).setData(getItem(position));
         } else {
-            ((ReceivedMessageViewHolder) holder).setData(chatMessageList.get(position), receiverProfileImage);
+            ((ReceivedMessageViewHolder) holder).setData(getItem(position), receiverProfileImage);
         }
     }
 
-    @Override
-    public int getItemCount() {
-        return chatMessageList.size();
-    }
-
     @Override
     public int getItemViewType(int position) {
-        if (chatMessageList.get(position).senderId.equals(senderId)) {
+        if (getItem(position).senderId.equals(senderId)) {
             return VIEW_TYPE_SENT;
         } else {
             return VIEW_TYPE_RECEIVED;
         }
     }
 
-    private static String decodeMessage(String message) {
-        if (message == null) return "";
-        return message
-                .replace("\\u003C", "<") // \u003C → <
-                .replace("\\u003E", ">") // \u003E → >
-                .replace("\\u0022", "\"") // \u0022 → "
-                .replace("\\u0027", "'"); // \u0027 → '
-    }
-
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
 
         private final ItemContainerSentMessageBinding binding;
@@ -96,8 +104,16 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
         void setData(ChatMessage chatMessage) {
-            binding.txtMessage.setText(decodeMessage(chatMessage.message));
-            binding.txtDateTime.setText(chatMessage.dateTime);
+            binding.txtMessage.setText(chatMessage.message);
+            // Tin nhắn còn trong outbox hiển thị mờ kèm trạng thái đang gửi hoặc gửi lỗi
+            if (chatMessage.failed) {
+                binding.txtDateTime.setText(R.string.message_send_failed);
+            } else if (chatMessage.pending) {
+                binding.txtDateTime.setText(R.string.message_sending);
+            } else {
+                binding.txtDateTime.setText(chatMessage.dateTime);
+            }
+            binding.txtMessage.setAlpha(chatMessage.pending ? 0.6f : 1f);
         }
     }
 
@@ -111,11 +127,11 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         }
 
         void setData(ChatMessage chatMessage, Bitmap receiverProfileImage) {
-            binding.txtMessage.setText(decodeMessage(chatMessage.message));
+            binding.txtMessage.setText(chatMessage.message);
             binding.txtDateTime.setText(chatMessage.dateTime);
             if (receiverProfileImage != null) {
                 binding.imgProfile.setImageBitmap(receiverProfileImage);
             }
         }
     }
-}
\ No newline at end of file
+}
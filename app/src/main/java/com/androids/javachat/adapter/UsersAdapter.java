@@ -1,28 +1,42 @@
 package com.androids.javachat.adapter;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.androids.javachat.databinding.ItemContainerUserBinding;
 import com.androids.javachat.listener.Userlistener;
 import com.androids.javachat.models.User;
+import com.androids.javachat.utilities.AvatarCache;
 
-import java.util.List;
+import java.util.Objects;
 
-public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHolder> {
+// Nhận dữ liệu theo trang từ Paging 3; kết quả tìm cục bộ được đưa vào qua PagingData.from
+public class UsersAdapter extends PagingDataAdapter<User, UsersAdapter.UserViewHolder> {
+
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return Objects.equals(oldItem.id, newItem.id);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldItem, @NonNull User newItem) {
+            return Objects.equals(oldItem.name, newItem.name)
+                    && Objects.equals(oldItem.imageHash, newItem.imageHash)
+                    && Objects.equals(oldItem.image, newItem.image);
+        }
+    };
 
-    private final List<User> users;
     private final Userlistener userListener;
 
-    public UsersAdapter(List<User> users, Userlistener userListener) {
-        this.users = users;
+    public UsersAdapter(Userlistener userListener) {
+        super(DIFF_CALLBACK);
         this.userListener = userListener;
     }
 
@@ -39,12 +53,10 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
 
     @Override
     public void onBindViewHolder(@NonNull UserViewHolder holder, int position) {
-        holder.setUserData(users.get(position));
-    }
-
-    @Override
-    public int getItemCount() {
-        return users.size();
+        User user = getItem(position);
+        if (user != null) {
+            holder.setUserData(user);
+        }
     }
 
     class UserViewHolder extends RecyclerView.ViewHolder {
@@ -58,13 +70,8 @@ public class UsersAdapter extends RecyclerView.Adapter<UsersAdapter.UserViewHold
         void setUserData(User user) {
             binding.txtName.setText(user.name);
             binding.txtEmail.setVisibility(View.GONE);
-            binding.imgProfile.setImageBitmap(getUserImage(user.image));
+            AvatarCache.getInstance(binding.getRoot().getContext()).load(user.id, user.imageHash, user.image, binding.imgProfile);
             binding.getRoot().setOnClickListener(v -> userListener.onUserClicked(user));
         }
     }
-
-    private Bitmap getUserImage(String encodedImage) {
-        byte[] bytes = Base64.decode(encodedImage, Base64.DEFAULT);
-        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,96 @@
+package com.androids.javachat.database;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.room.Database;
+import androidx.room.Room;
+import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
+
+import com.androids.javachat.models.CachedUser;
+import com.androids.javachat.models.EncryptedMessage;
+import com.androids.javachat.models.LogEvent;
+import com.androids.javachat.models.OutboxMessage;
+
+// Store cục bộ cho tin nhắn: chỉ lưu bản mã hóa, khóa theo hội thoại và sắp theo timestamp
+// Kèm hàng đợi sự kiện analytics chờ ghi theo lô lên Firestore, hàng đợi tin nhắn chờ gửi (outbox)
+// và cache hồ sơ người dùng của UserRepository
+@Database(entities = {EncryptedMessage.class, LogEvent.class, OutboxMessage.class, CachedUser.class}, version = 6, exportSchema = false)
+public abstract class ChatDatabase extends RoomDatabase {
+
+    private static final String DATABASE_NAME = "javachat.db";
+    private static volatile ChatDatabase instance;
+
+    // Bản 2 thêm bảng hàng đợi log, giữ nguyên tin nhắn đã lưu
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `log_events` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`eventId` TEXT, `userId` TEXT, `action` TEXT, `receiverId` TEXT, `deviceInfo` TEXT, "
+                    + "`timestamp` INTEGER NOT NULL)");
+        }
+    };
+
+    // Bản 3 thêm outbox cho tin nhắn gửi chưa thành công
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `outbox` (`clientId` TEXT NOT NULL, `conversationKey` TEXT, "
+                    + "`senderId` TEXT, `senderName` TEXT, `senderImageHash` TEXT, `senderImage` TEXT, "
+                    + "`receiverId` TEXT, `receiverName` TEXT, `receiverImageHash` TEXT, `receiverImage` TEXT, "
+                    + "`message` TEXT, `timestamp` INTEGER NOT NULL, `attempts` INTEGER NOT NULL, PRIMARY KEY(`clientId`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_outbox_conversationKey_timestamp` "
+                    + "ON `outbox` (`conversationKey`, `timestamp`)");
+        }
+    };
+
+    // Bản 4 thêm cache hồ sơ người dùng
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `users` (`id` TEXT NOT NULL, `name` TEXT, `email` TEXT, "
+                    + "`image` TEXT, `imageHash` TEXT, `imageUrl` TEXT, `token` TEXT, "
+                    + "`isEmailVerified` INTEGER NOT NULL, `fetchedAt` INTEGER NOT NULL, PRIMARY KEY(`id`))");
+        }
+    };
+
+    // Bản 5 thêm cột payload (MessageEnvelope nhị phân) cho tin nhắn và outbox
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `messages` ADD COLUMN `payload` BLOB");
+            database.execSQL("ALTER TABLE `outbox` ADD COLUMN `payload` BLOB");
+        }
+    };
+
+    // Bản 6 đánh dấu tin outbox gửi lỗi vĩnh viễn để không chặn các tin sau
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `outbox` ADD COLUMN `failed` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    public abstract MessageDao messageDao();
+
+    public abstract LogEventDao logEventDao();
+
+    public abstract OutboxDao outboxDao();
+
+    public abstract UserDao userDao();
+
+    public static ChatDatabase getInstance(Context context) {
+        if (instance == null) {
+            synchronized (ChatDatabase.class) {
+                if (instance == null) {
+                    instance = Room.databaseBuilder(context.getApplicationContext(), ChatDatabase.class, DATABASE_NAME)
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6)
+                            .build();
+                }
+            }
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,25 @@
+package com.androids.javachat.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import com.androids.javachat.models.LogEvent;
+
+import java.util.List;
+
+@Dao
+public interface LogEventDao {
+
+    @Insert
+    void insert(LogEvent event);
+
+    @Query("SELECT COUNT(*) FROM log_events")
+    int count();
+
+    @Query("SELECT * FROM log_events ORDER BY id ASC LIMIT :limit")
+    List<LogEvent> getOldest(int limit);
+
+    @Query("DELETE FROM log_events WHERE id <= :maxId")
+    void deleteUpTo(long maxId);
+}
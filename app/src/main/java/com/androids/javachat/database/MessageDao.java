@@ -0,0 +1,35 @@
+package com.androids.javachat.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.androids.javachat.models.EncryptedMessage;
+
+import java.util.List;
+
+@Dao
+public interface MessageDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<EncryptedMessage> messages);
+
+    @Query("SELECT * FROM (SELECT * FROM messages WHERE conversationKey = :conversationKey "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit) ORDER BY timestamp ASC, id ASC")
+    List<EncryptedMessage> getLatestMessages(String conversationKey, int limit);
+
+    // Con trỏ (timestamp, id) như thứ tự của MessageWindow: tin trùng mili giây không bị bỏ qua giữa hai trang
+    @Query("SELECT * FROM (SELECT * FROM messages WHERE conversationKey = :conversationKey "
+            + "AND (timestamp < :before OR (timestamp = :before AND id < :beforeId)) "
+            + "ORDER BY timestamp DESC, id DESC LIMIT :limit) ORDER BY timestamp ASC, id ASC")
+    List<EncryptedMessage> getMessagesBefore(String conversationKey, long before, String beforeId, int limit);
+
+    @Query("SELECT * FROM messages WHERE conversationKey = :conversationKey "
+            + "AND (timestamp > :after OR (timestamp = :after AND id > :afterId)) "
+            + "ORDER BY timestamp ASC, id ASC LIMIT :limit")
+    List<EncryptedMessage> getMessagesAfter(String conversationKey, long after, String afterId, int limit);
+
+    @Query("SELECT MAX(timestamp) FROM messages WHERE conversationKey = :conversationKey")
+    Long getLatestTimestamp(String conversationKey);
+}
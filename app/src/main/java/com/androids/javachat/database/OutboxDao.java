@@ -0,0 +1,32 @@
+package com.androids.javachat.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.androids.javachat.models.OutboxMessage;
+
+import java.util.List;
+
+@Dao
+public interface OutboxDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(OutboxMessage message);
+
+    @Query("SELECT * FROM outbox WHERE failed = 0 ORDER BY timestamp ASC LIMIT 1")
+    OutboxMessage getOldest();
+
+    @Query("SELECT * FROM outbox WHERE conversationKey = :conversationKey ORDER BY timestamp ASC")
+    List<OutboxMessage> getPending(String conversationKey);
+
+    @Query("UPDATE outbox SET attempts = attempts + 1 WHERE clientId = :clientId")
+    void incrementAttempts(String clientId);
+
+    @Query("UPDATE outbox SET failed = 1, attempts = attempts + 1 WHERE clientId = :clientId")
+    void markFailed(String clientId);
+
+    @Query("DELETE FROM outbox WHERE clientId = :clientId")
+    void delete(String clientId);
+}
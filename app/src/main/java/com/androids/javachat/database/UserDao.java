@@ -0,0 +1,26 @@
+package com.androids.javachat.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import com.androids.javachat.models.CachedUser;
+
+import java.util.List;
+
+@Dao
+public interface UserDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insertAll(List<CachedUser> users);
+
+    @Query("SELECT * FROM users WHERE id = :userId")
+    CachedUser get(String userId);
+
+    @Query("SELECT * FROM users WHERE isEmailVerified = 1 ORDER BY name ASC LIMIT :limit")
+    List<CachedUser> getVerified(int limit);
+
+    @Query("DELETE FROM users WHERE id = :userId")
+    void delete(String userId);
+}
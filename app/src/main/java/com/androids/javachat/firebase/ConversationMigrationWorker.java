@@ -0,0 +1,71 @@
+package com.androids.javachat.firebase;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.ConversationMigration;
+import com.androids.javachat.utilities.PreferenceManager;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// Chạy ConversationMigration ở background khi có mạng; danh sách hội thoại không phải chờ migration xong
+public class ConversationMigrationWorker extends Worker {
+
+    private static final String TAG = "ConversationMigration";
+    private static final String WORK_NAME = "conversation_migration";
+    private static final long INITIAL_BACKOFF_SECONDS = 30;
+    private static final long MIGRATION_TIMEOUT_MINUTES = 5;
+
+    public ConversationMigrationWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    // KEEP: migration đang chạy hoặc đang chờ thử lại thì không tạo thêm
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(ConversationMigrationWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        PreferenceManager preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        String userId = preferenceManager.getString(Constant.KEY_USER_ID);
+        if (userId == null) {
+            return Result.success();
+        }
+        ConversationMigration migration = new ConversationMigration(FirebaseFirestore.getInstance(), preferenceManager);
+        // Callback của Firestore chạy trên main thread, worker thread chỉ chờ
+        CountDownLatch done = new CountDownLatch(1);
+        migration.migrateIfNeeded(userId, done::countDown);
+        try {
+            if (!done.await(MIGRATION_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+                Log.w(TAG, "Migration timed out, retrying with backoff");
+                return Result.retry();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Result.retry();
+        }
+        return migration.isComplete() ? Result.success() : Result.retry();
+    }
+}
@@ -0,0 +1,86 @@
+package com.androids.javachat.firebase;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.androids.javachat.models.LogEvent;
+import com.androids.javachat.utilities.EventLogger;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Ghi hàng đợi sự kiện của EventLogger lên collection "logs" bằng WriteBatch, chỉ chạy khi có mạng
+public class EventFlushWorker extends Worker {
+
+    private static final String TAG = "EventFlushWorker";
+    private static final String WORK_NOW = "event_flush_now";
+    private static final String WORK_DELAYED = "event_flush_delayed";
+    private static final long FLUSH_DELAY_MINUTES = 15;
+    private static final long COMMIT_TIMEOUT_SECONDS = 30;
+
+    public EventFlushWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    // KEEP: nếu đã có lượt ghi đang chờ thì không tạo thêm
+    public static void schedule(Context context, boolean now) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest.Builder request = new OneTimeWorkRequest.Builder(EventFlushWorker.class)
+                .setConstraints(constraints);
+        if (!now) {
+            request.setInitialDelay(FLUSH_DELAY_MINUTES, TimeUnit.MINUTES);
+        }
+        WorkManager.getInstance(context).enqueueUniqueWork(now ? WORK_NOW : WORK_DELAYED,
+                ExistingWorkPolicy.KEEP, request.build());
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        CollectionReference logs = FirebaseFirestore.getInstance().collection("logs");
+        try {
+            int written = EventLogger.getInstance(getApplicationContext()).flush(events -> commit(logs, events));
+            Log.d(TAG, "Flushed " + written + " events");
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to flush events: " + e.getMessage());
+            return Result.retry();
+        }
+    }
+
+    private static void commit(CollectionReference logs, List<LogEvent> events) throws Exception {
+        WriteBatch batch = logs.getFirestore().batch();
+        for (LogEvent event : events) {
+            HashMap<String, Object> log = new HashMap<>();
+            log.put("userId", event.userId);
+            log.put("action", event.action);
+            if (event.receiverId != null) {
+                log.put("receiverId", event.receiverId);
+            }
+            log.put("deviceInfo", event.deviceInfo);
+            // Thời điểm xảy ra sự kiện trên máy, không phải lúc lô được ghi
+            log.put("timestamp", new Date(event.timestamp));
+            batch.set(logs.document(event.eventId), log);
+        }
+        // EventLogger.flush giữ khóa trong lúc chờ: hết thời gian thì ném TimeoutException để WorkManager thử lại,
+        // không giữ khóa mãi; id sự kiện cố định nên ghi lại không tạo bản trùng
+        Tasks.await(batch.commit(), COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,110 @@
+package com.androids.javachat.firebase;
+
+import com.androids.javachat.models.OutboxMessage;
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.ConversationKey;
+import com.androids.javachat.utilities.Outbox;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.HashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+// Ghi tin nhắn và upsert hội thoại trong một WriteBatch; id document tin nhắn là clientId
+// nên gửi lại sau khi mất phản hồi chỉ ghi đè đúng document đó
+// timestamp là giờ server lúc ghi: tin xếp hàng lúc offline hay từ máy lệch giờ vẫn mới hơn mốc nghe lại của người nhận;
+// giờ xếp hàng trên máy chỉ dùng để hiển thị tạm tin đang chờ
+public class FirestoreOutboxTransport implements Outbox.Transport {
+
+    private static final long COMMIT_TIMEOUT_SECONDS = 30;
+
+    @Override
+    public void send(OutboxMessage outboxMessage) throws Exception {
+        FirebaseFirestore db = FirebaseFirestore.getInstance();
+        HashMap<String, Object> message = new HashMap<>();
+        message.put(Constant.KEY_SENDER_ID, outboxMessage.senderId);
+        message.put(Constant.KEY_RECEIVER_ID, outboxMessage.receiverId);
+        putMessage(message, Constant.KEY_PAYLOAD, Constant.KEY_MESSAGE, outboxMessage, false);
+        message.put(Constant.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+        message.put(Constant.KEY_CONVERSATION_ID, outboxMessage.conversationKey);
+        message.put(Constant.KEY_PARTICIPANTS, ConversationKey.participants(outboxMessage.senderId, outboxMessage.receiverId));
+
+        // Hội thoại có id cố định theo cặp người dùng nên luôn upsert được, không cần truy vấn tìm trước
+        HashMap<String, Object> conversion = new HashMap<>();
+        conversion.put(Constant.KEY_SENDER_ID, outboxMessage.senderId);
+        conversion.put(Constant.KEY_SENDER_NAME, outboxMessage.senderName);
+        // Chỉ lưu hash ảnh, ảnh được tải riêng qua AvatarStore
+        putImage(conversion, Constant.KEY_SENDER_IMG_HASH, Constant.KEY_SENDER_IMG,
+                outboxMessage.senderImageHash, outboxMessage.senderImage);
+        conversion.put(Constant.KEY_RECEIVER_ID, outboxMessage.receiverId);
+        conversion.put(Constant.KEY_RECEIVER_NAME, outboxMessage.receiverName);
+        putImage(conversion, Constant.KEY_RECEIVER_IMG_HASH, Constant.KEY_RECEIVER_IMG,
+                outboxMessage.receiverImageHash, outboxMessage.receiverImage);
+        putMessage(conversion, Constant.KEY_LAST_PAYLOAD, Constant.KEY_LAST_MESSAGE, outboxMessage, true);
+        conversion.put(Constant.KEY_TIMESTAMP, FieldValue.serverTimestamp());
+        conversion.put(Constant.KEY_CONVERSATION_ID, outboxMessage.conversationKey);
+        conversion.put(Constant.KEY_PARTICIPANTS, ConversationKey.participants(outboxMessage.senderId, outboxMessage.receiverId));
+
+        // Tin nhắn và hội thoại được ghi cùng một lần commit: hoặc cả hai, hoặc không gì cả
+        WriteBatch batch = db.batch();
+        batch.set(db.collection(Constant.KEY_COLLECTION_CHAT).document(outboxMessage.clientId), message);
+        batch.set(db.collection(Constant.KEY_COLLECTION_CONVERSATIONS).document(outboxMessage.conversationKey),
+                conversion, SetOptions.merge());
+        // Khi offline Firestore giữ commit trong cache và không báo lỗi; hết thời gian thì coi như lỗi để thử lại sau
+        try {
+            Tasks.await(batch.commit(), COMMIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof FirebaseFirestoreException
+                    && isPermanent(((FirebaseFirestoreException) e.getCause()).getCode())) {
+                throw new Outbox.RejectedException(e.getCause());
+            }
+            throw e;
+        }
+    }
+
+    // Server từ chối nội dung hoặc quyền ghi: gửi lại y nguyên cũng không bao giờ thành công
+    private static boolean isPermanent(FirebaseFirestoreException.Code code) {
+        switch (code) {
+            case PERMISSION_DENIED:
+            case INVALID_ARGUMENT:
+            case FAILED_PRECONDITION:
+            case OUT_OF_RANGE:
+            case UNIMPLEMENTED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // Nội dung mã hóa lưu thành Blob; bản ghi outbox cũ vẫn gửi chuỗi Base64 như trước
+    // Document được merge (hội thoại) thì xóa trường của định dạng còn lại để người đọc không gặp tin cũ còn sót
+    private static void putMessage(HashMap<String, Object> document, String payloadKey, String legacyKey,
+                                   OutboxMessage outboxMessage, boolean merged) {
+        if (outboxMessage.payload != null) {
+            document.put(payloadKey, Blob.fromBytes(outboxMessage.payload));
+            if (merged) {
+                document.put(legacyKey, FieldValue.delete());
+            }
+        } else {
+            document.put(legacyKey, outboxMessage.message);
+            if (merged) {
+                document.put(payloadKey, FieldValue.delete());
+            }
+        }
+    }
+
+    // Tài khoản chưa chuyển ảnh sang AvatarStore vẫn dùng chuỗi Base64 cũ
+    private static void putImage(HashMap<String, Object> conversion, String hashKey, String legacyKey, String imageHash, String legacyImage) {
+        if (imageHash != null) {
+            conversion.put(hashKey, imageHash);
+        } else {
+            conversion.put(legacyKey, legacyImage);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.androids.javachat.firebase;
+
+import android.util.Log;
+
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.PresenceService;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.function.Consumer;
+
+// availability và lastSeen nằm trên document user; lastSeen dùng giờ server để mọi client so cùng một mốc
+public class FirestorePresenceStore implements PresenceService.Store {
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private final Consumer<DocumentSnapshot> onUserSnapshot;
+
+    public FirestorePresenceStore(Consumer<DocumentSnapshot> onUserSnapshot) {
+        this.onUserSnapshot = onUserSnapshot;
+    }
+
+    @Override
+    public void write(String userId, boolean online) {
+        HashMap<String, Object> updates = new HashMap<>();
+        updates.put(Constant.KEY_AVAILABILITY, online ? 1 : 0);
+        updates.put(Constant.KEY_LAST_SEEN, FieldValue.serverTimestamp());
+        db.collection(Constant.KEY_COLLECTION_USERS).document(userId).update(updates)
+                .addOnFailureListener(e -> Log.e("PresenceService", "Failed to update presence: " + e.getMessage()));
+    }
+
+    @Override
+    public PresenceService.Registration listen(String userId, PresenceService.SnapshotListener listener) {
+        ListenerRegistration registration = db.collection(Constant.KEY_COLLECTION_USERS).document(userId)
+                .addSnapshotListener((value, error) -> {
+                    if (error != null) {
+                        Log.e("PresenceService", "Presence listener failed: " + error.getMessage());
+                        return;
+                    }
+                    if (value == null || !value.exists()) {
+                        return;
+                    }
+                    onUserSnapshot.accept(value);
+                    Long availability = value.getLong(Constant.KEY_AVAILABILITY);
+                    // Lần ghi của chính máy này chưa lên server thì dùng giờ ước tính thay vì null
+                    Date lastSeen = value.getDate(Constant.KEY_LAST_SEEN, DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+                    listener.onSnapshot(availability != null && availability == 1,
+                            lastSeen != null ? lastSeen.getTime() : 0);
+                });
+        return registration::remove;
+    }
+}
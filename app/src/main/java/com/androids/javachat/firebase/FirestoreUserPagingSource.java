@@ -0,0 +1,86 @@
+package com.androids.javachat.firebase;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.concurrent.futures.CallbackToFutureAdapter;
+import androidx.paging.ListenableFuturePagingSource;
+import androidx.paging.PagingState;
+
+import com.androids.javachat.models.User;
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.UserPrefixIndex;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Danh sách người dùng đã xác minh theo trang; key là document cuối của trang trước (startAfter)
+// Có prefix thì lọc và sắp trên server theo khoảng nameLower từ prefix tới prefix + ký tự Unicode cao nhất
+// Cần composite index (isEmailVerified, nameLower) trên collection users
+// Firestore bỏ document thiếu nameLower khi orderBy: tài khoản cũ chỉ có nameLower sau lần đăng nhập kế tiếp,
+// nên danh bạ không lọc dùng truy vấn không sắp xếp để các tài khoản này vẫn hiện
+public class FirestoreUserPagingSource extends ListenableFuturePagingSource<DocumentSnapshot, User> {
+
+    private final Query query;
+    private final String excludedUserId;
+    private final Consumer<List<User>> onPageLoaded;
+
+    public FirestoreUserPagingSource(String prefix, String excludedUserId, Consumer<List<User>> onPageLoaded) {
+        Query query = FirebaseFirestore.getInstance().collection(Constant.KEY_COLLECTION_USERS)
+                .whereEqualTo("isEmailVerified", true);
+        String normalized = UserPrefixIndex.normalize(prefix);
+        if (!normalized.isEmpty()) {
+            query = query.whereGreaterThanOrEqualTo(Constant.KEY_NAME_LOWER, normalized)
+                    .whereLessThan(Constant.KEY_NAME_LOWER, normalized + "\uf8ff")
+                    .orderBy(Constant.KEY_NAME_LOWER);
+        }
+        this.query = query;
+        this.excludedUserId = excludedUserId;
+        this.onPageLoaded = onPageLoaded;
+    }
+
+    @NonNull
+    @Override
+    public ListenableFuture<LoadResult<DocumentSnapshot, User>> loadFuture(@NonNull LoadParams<DocumentSnapshot> params) {
+        int loadSize = params.getLoadSize();
+        Query page = query.limit(loadSize);
+        if (params.getKey() != null) {
+            page = page.startAfter(params.getKey());
+        }
+        Query pageQuery = page;
+        return CallbackToFutureAdapter.getFuture(completer -> {
+            pageQuery.get().addOnCompleteListener(task -> {
+                if (!task.isSuccessful() || task.getResult() == null) {
+                    completer.set(new LoadResult.Error<>(task.getException() != null ? task.getException()
+                            : new IllegalStateException("User query failed")));
+                    return;
+                }
+                List<DocumentSnapshot> documents = task.getResult().getDocuments();
+                List<User> users = new ArrayList<>(documents.size());
+                for (DocumentSnapshot document : documents) {
+                    User user = FirestoreUserSource.toUser(document);
+                    // Bỏ chính mình ở client: Firestore không cho != kết hợp với khoảng trên nameLower
+                    if (user.id.equals(excludedUserId) || user.name == null || user.name.isEmpty()) {
+                        continue;
+                    }
+                    users.add(user);
+                }
+                onPageLoaded.accept(users);
+                DocumentSnapshot nextKey = documents.size() < loadSize ? null : documents.get(documents.size() - 1);
+                completer.set(new LoadResult.Page<>(users, null, nextKey));
+            });
+            return "FirestoreUserPagingSource.load";
+        });
+    }
+
+    // Làm mới thì tải lại từ đầu danh sách
+    @Nullable
+    @Override
+    public DocumentSnapshot getRefreshKey(@NonNull PagingState<DocumentSnapshot, User> state) {
+        return null;
+    }
+}
@@ -0,0 +1,38 @@
+package com.androids.javachat.firebase;
+
+import com.androids.javachat.models.User;
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.UserRepository;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+// Đọc hồ sơ người dùng từ collection "users" cho UserRepository
+public class FirestoreUserSource implements UserRepository.Source {
+
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+
+    @Override
+    public void fetch(String userId, UserRepository.Callback<User> callback) {
+        db.collection(Constant.KEY_COLLECTION_USERS).document(userId).get().addOnCompleteListener(task -> {
+            if (task.isSuccessful() && task.getResult() != null && task.getResult().exists()) {
+                callback.onSuccess(toUser(task.getResult()));
+            } else {
+                callback.onFailure(task.getException() != null ? task.getException()
+                        : new IllegalStateException("User not found: " + userId));
+            }
+        });
+    }
+
+    public static User toUser(DocumentSnapshot document) {
+        User user = new User();
+        user.id = document.getId();
+        user.name = document.getString(Constant.KEY_NAME);
+        user.email = document.getString(Constant.KEY_EMAIL);
+        user.image = document.getString(Constant.KEY_IMAGE);
+        user.imageHash = document.getString(Constant.KEY_IMAGE_HASH);
+        user.imageUrl = document.getString(Constant.KEY_IMAGE_URL);
+        user.token = document.getString(Constant.KEY_FCM_TOKEN);
+        user.isEmailVerified = Boolean.TRUE.equals(document.getBoolean("isEmailVerified"));
+        return user;
+    }
+}
@@ -7,10 +7,12 @@ import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.service.notification.StatusBarNotification;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.core.app.NotificationCompat;
+import androidx.core.app.Person;
 
 import com.androids.javachat.R;
 import com.androids.javachat.activities.ChatActivity;
@@ -28,6 +30,16 @@ public class MessagingService extends FirebaseMessagingService {
     private FirebaseFirestore db;
     private static final String CHANNEL_ID = "chat_notifications";
     private static final String CHANNEL_NAME = "Chat Notifications";
+    private static final String GROUP_KEY = "com.androids.javachat.MESSAGES";
+    private static final int NOTIFICATION_ID = 1;
+    private static final int SUMMARY_ID = 0;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        preferenceManager = PreferenceManager.getInstance(getApplicationContext());
+        db = FirebaseFirestore.getInstance();
+    }
 
     @Override
     public void onNewToken(@NonNull String token) {
@@ -75,6 +87,7 @@ public class MessagingService extends FirebaseMessagingService {
         showNotification(title, body, sender);
     }
 
+    // Mỗi người gửi một thông báo (tag = senderId) dạng MessagingStyle; đợt mới được nối vào thông báo đang hiển thị
     private void showNotification(String title, String message, User sender) {
         NotificationManager notificationManager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
 
@@ -91,18 +104,47 @@ public class MessagingService extends FirebaseMessagingService {
         intent.putExtra(Constant.KEY_USER, sender);
         intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP);
 
-        PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, intent,
+        // requestCode theo người gửi để mỗi thông báo mở đúng hội thoại
+        PendingIntent pendingIntent = PendingIntent.getActivity(this, sender.id.hashCode(), intent,
                 PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
 
+        Person senderPerson = new Person.Builder()
+                .setKey(sender.id)
+                .setName(sender.name != null ? sender.name : title)
+                .build();
+        NotificationCompat.MessagingStyle style = findActiveStyle(notificationManager, sender.id);
+        if (style == null) {
+            style = new NotificationCompat.MessagingStyle(new Person.Builder().setName("Bạn").build());
+        }
+        style.addMessage(message, System.currentTimeMillis(), senderPerson);
+
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
                 .setSmallIcon(R.drawable.ic_notification)
                 .setContentTitle(title)
                 .setContentText(message)
+                .setStyle(style)
+                .setGroup(GROUP_KEY)
                 .setAutoCancel(true)
                 .setPriority(NotificationCompat.PRIORITY_HIGH)
                 .setContentIntent(pendingIntent);
+        notificationManager.notify(sender.id, NOTIFICATION_ID, builder.build());
 
-        notificationManager.notify((int) System.currentTimeMillis(), builder.build());
+        NotificationCompat.Builder summary = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(title)
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setAutoCancel(true);
+        notificationManager.notify(SUMMARY_ID, summary.build());
+    }
+
+    private NotificationCompat.MessagingStyle findActiveStyle(NotificationManager notificationManager, String senderId) {
+        for (StatusBarNotification active : notificationManager.getActiveNotifications()) {
+            if (active.getId() == NOTIFICATION_ID && senderId.equals(active.getTag())) {
+                return NotificationCompat.MessagingStyle.extractMessagingStyleFromNotification(active.getNotification());
+            }
+        }
+        return null;
     }
 
     private boolean isAppInForeground() {
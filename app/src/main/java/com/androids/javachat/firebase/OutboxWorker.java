@@ -0,0 +1,52 @@
+package com.androids.javachat.firebase;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.androids.javachat.utilities.Outbox;
+
+import java.util.concurrent.TimeUnit;
+
+// Gửi lại các tin nhắn còn trong outbox khi có mạng; lỗi thì WorkManager thử lại với backoff tăng dần
+public class OutboxWorker extends Worker {
+
+    private static final String TAG = "OutboxWorker";
+    private static final String WORK_NAME = "outbox_drain";
+    private static final long INITIAL_BACKOFF_SECONDS = 10;
+
+    public OutboxWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        super(context, workerParams);
+    }
+
+    // KEEP: đã có lượt gửi lại đang chờ (kể cả đang trong thời gian backoff) thì không tạo thêm
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(OutboxWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, INITIAL_BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        if (Outbox.getInstance(getApplicationContext()).drain()) {
+            return Result.success();
+        }
+        Log.w(TAG, "Outbox not empty after attempt " + getRunAttemptCount() + ", retrying with backoff");
+        return Result.retry();
+    }
+}
@@ -0,0 +1,48 @@
+package com.androids.javachat.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// Bản sao trên đĩa của hồ sơ người dùng cho UserRepository; fetchedAt dùng để tính TTL
+@Entity(tableName = "users")
+public class CachedUser {
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+    public String name;
+    public String email;
+    public String image;
+    public String imageHash;
+    public String imageUrl;
+    public String token;
+    public boolean isEmailVerified;
+    public long fetchedAt;
+
+    public static CachedUser from(User user, long fetchedAt) {
+        CachedUser cachedUser = new CachedUser();
+        cachedUser.id = user.id;
+        cachedUser.name = user.name;
+        cachedUser.email = user.email;
+        cachedUser.image = user.image;
+        cachedUser.imageHash = user.imageHash;
+        cachedUser.imageUrl = user.imageUrl;
+        cachedUser.token = user.token;
+        cachedUser.isEmailVerified = user.isEmailVerified;
+        cachedUser.fetchedAt = fetchedAt;
+        return cachedUser;
+    }
+
+    public User toUser() {
+        User user = new User();
+        user.id = id;
+        user.name = name;
+        user.email = email;
+        user.image = image;
+        user.imageHash = imageHash;
+        user.imageUrl = imageUrl;
+        user.token = token;
+        user.isEmailVerified = isEmailVerified;
+        return user;
+    }
+}
@@ -1,17 +1,48 @@
 package com.androids.javachat.models;
 
+import com.androids.javachat.utilities.MessageEnvelope;
+
 import java.util.Date;
 
 public class ChatMessage {
     //message
+    public String messageId;
     public String senderId;
     public String receiverId;
     public String message;
     public String dateTime;
     public Date dateObject;
+    // Đang nằm trong outbox, chưa ghi lên Firestore
+    public boolean pending;
+    // Outbox đã bỏ cuộc gửi tin này
+    public boolean failed;
 
     //Conversion
     public String conversionId;
     public String conversionName;
     public String conversionImg;
+    public String conversionImgHash;
+    // Bản mã hóa của tin cuối trong hội thoại, để giải mã lại khi có khóa
+    public MessageEnvelope envelope;
+    // false: message chỉ là chữ thay thế, envelope chờ khóa để giải mã lại
+    public boolean decrypted;
+
+    public ChatMessage copy() {
+        ChatMessage copy = new ChatMessage();
+        copy.messageId = messageId;
+        copy.senderId = senderId;
+        copy.receiverId = receiverId;
+        copy.message = message;
+        copy.dateTime = dateTime;
+        copy.dateObject = dateObject;
+        copy.pending = pending;
+        copy.failed = failed;
+        copy.conversionId = conversionId;
+        copy.conversionName = conversionName;
+        copy.conversionImg = conversionImg;
+        copy.conversionImgHash = conversionImgHash;
+        copy.envelope = envelope;
+        copy.decrypted = decrypted;
+        return copy;
+    }
 }
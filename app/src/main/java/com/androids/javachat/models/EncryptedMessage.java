@@ -0,0 +1,59 @@
+package com.androids.javachat.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Ignore;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import com.androids.javachat.utilities.Constant;
+import com.androids.javachat.utilities.ConversationKey;
+import com.androids.javachat.utilities.MessageEnvelope;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Date;
+
+// Tin nhắn ở dạng thô (chưa giải mã) như lưu trên Firestore, đồng thời là bản ghi trong store cục bộ
+@Entity(tableName = "messages", indices = {@Index(value = {"conversationKey", "timestamp"})})
+public class EncryptedMessage {
+    @PrimaryKey
+    @NonNull
+    public String id = "";
+    public String conversationKey;
+    public String senderId;
+    public String receiverId;
+    // Chuỗi Base64 của tin nhắn cũ; tin nhắn mới chỉ có payload
+    public String message;
+    public byte[] payload;
+    public long timestamp;
+    // Bản ghi cục bộ của Firestore chưa được server xác nhận; không lưu xuống store
+    @Ignore
+    public boolean pending;
+
+    public static EncryptedMessage fromDocument(DocumentSnapshot document) {
+        EncryptedMessage encryptedMessage = new EncryptedMessage();
+        encryptedMessage.id = document.getId();
+        encryptedMessage.senderId = document.getString(Constant.KEY_SENDER_ID);
+        encryptedMessage.receiverId = document.getString(Constant.KEY_RECEIVER_ID);
+        encryptedMessage.conversationKey = document.getString(Constant.KEY_CONVERSATION_ID);
+        if (encryptedMessage.conversationKey == null && encryptedMessage.senderId != null && encryptedMessage.receiverId != null) {
+            encryptedMessage.conversationKey = ConversationKey.of(encryptedMessage.senderId, encryptedMessage.receiverId);
+        }
+        Blob payload = document.getBlob(Constant.KEY_PAYLOAD);
+        if (payload != null) {
+            encryptedMessage.payload = payload.toBytes();
+        } else {
+            encryptedMessage.message = document.getString(Constant.KEY_MESSAGE);
+        }
+        // Bản ghi cục bộ chưa có giờ server: dùng giờ ước lượng để xếp chỗ tạm
+        Date date = document.getDate(Constant.KEY_TIMESTAMP, DocumentSnapshot.ServerTimestampBehavior.ESTIMATE);
+        encryptedMessage.timestamp = date != null ? date.getTime() : System.currentTimeMillis();
+        encryptedMessage.pending = document.getMetadata().hasPendingWrites();
+        return encryptedMessage;
+    }
+
+    public MessageEnvelope envelope() {
+        return MessageEnvelope.read(payload, message);
+    }
+}
@@ -0,0 +1,17 @@
+package com.androids.javachat.models;
+
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+// Sự kiện analytics chờ ghi lên collection "logs"; id tăng dần giữ đúng thứ tự, eventId dùng làm id document
+@Entity(tableName = "log_events")
+public class LogEvent {
+    @PrimaryKey(autoGenerate = true)
+    public long id;
+    public String eventId;
+    public String userId;
+    public String action;
+    public String receiverId;
+    public String deviceInfo;
+    public long timestamp;
+}
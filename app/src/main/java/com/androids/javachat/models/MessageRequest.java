@@ -27,6 +27,9 @@ public class MessageRequest {
         @SerializedName("data")
         private HashMap<String, String> data;
 
+        @SerializedName("android")
+        private AndroidConfig android;
+
         public Message(String token, Notification notification, HashMap<String, String> data) {
             this.token = token;
             this.notification = notification;
@@ -39,6 +42,12 @@ public class MessageRequest {
             this.notification = null;
         }
 
+        public Message(String token, HashMap<String, String> data, AndroidConfig android) {
+            this.token = token;
+            this.data = data;
+            this.android = android;
+        }
+
         public String getToken() {
             return token;
         }
@@ -62,6 +71,32 @@ public class MessageRequest {
         public void setData(HashMap<String, String> data) {
             this.data = data;
         }
+
+        public AndroidConfig getAndroid() {
+            return android;
+        }
+    }
+
+    // Khi máy nhận offline, FCM chỉ giữ lại tin mới nhất trong cùng collapse_key
+    public static class AndroidConfig {
+        @SerializedName("collapse_key")
+        private String collapseKey;
+
+        @SerializedName("priority")
+        private String priority;
+
+        public AndroidConfig(String collapseKey, String priority) {
+            this.collapseKey = collapseKey;
+            this.priority = priority;
+        }
+
+        public String getCollapseKey() {
+            return collapseKey;
+        }
+
+        public String getPriority() {
+            return priority;
+        }
     }
 
     public static class Notification {
@@ -0,0 +1,43 @@
+package com.androids.javachat.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+// Tin nhắn đã mã hóa đang chờ gửi lên Firestore; clientId được dùng luôn làm id document nên gửi lại không tạo bản trùng
+// Kèm thông tin người gửi/người nhận để upsert hội thoại cùng lúc với tin nhắn
+@Entity(tableName = "outbox", indices = {@Index(value = {"conversationKey", "timestamp"})})
+public class OutboxMessage {
+    @PrimaryKey
+    @NonNull
+    public String clientId = "";
+    public String conversationKey;
+    public String senderId;
+    public String senderName;
+    public String senderImageHash;
+    public String senderImage;
+    public String receiverId;
+    public String receiverName;
+    public String receiverImageHash;
+    public String receiverImage;
+    // Bản ghi tạo trước khi có MessageEnvelope chỉ có message (Base64), bản mới chỉ có payload
+    public String message;
+    public byte[] payload;
+    public long timestamp;
+    public int attempts;
+    // Bị từ chối vĩnh viễn hoặc quá số lần thử: không gửi nữa, hiển thị là gửi lỗi
+    public boolean failed;
+
+    public EncryptedMessage toEncryptedMessage() {
+        EncryptedMessage encryptedMessage = new EncryptedMessage();
+        encryptedMessage.id = clientId;
+        encryptedMessage.conversationKey = conversationKey;
+        encryptedMessage.senderId = senderId;
+        encryptedMessage.receiverId = receiverId;
+        encryptedMessage.message = message;
+        encryptedMessage.payload = payload;
+        encryptedMessage.timestamp = timestamp;
+        return encryptedMessage;
+    }
+}
@@ -7,6 +7,8 @@ public class User implements Serializable {
     public String name;
     public String email;
     public String image;
+    public String imageHash;
+    public String imageUrl;
     public String token;
     public boolean isEmailVerified;
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+package com.androids.javachat.storage;
+
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// Ảnh đại diện lưu một lần theo SHA-256 của nội dung; client giữ bản sao trên đĩa theo hash
+// Document Firestore chỉ còn lưu hash (và URL), không còn chuỗi Base64
+public class AvatarStore {
+
+    private static AvatarStore instance;
+
+    private final BlobStore blobStore;
+    private final File cacheDirectory;
+    private final Executor ioExecutor;
+
+    public AvatarStore(BlobStore blobStore, File cacheDirectory, Executor ioExecutor) {
+        this.blobStore = blobStore;
+        this.cacheDirectory = cacheDirectory;
+        this.ioExecutor = ioExecutor;
+    }
+
+    public static synchronized AvatarStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarStore(new FirebaseBlobStore(),
+                    new File(context.getApplicationContext().getCacheDir(), "avatars"),
+                    Executors.newSingleThreadExecutor());
+        }
+        return instance;
+    }
+
+    public static String hashOf(byte[] data) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Upload ảnh (bỏ qua nếu blob đã có), trả về URL; đồng thời ghi sẵn vào cache đĩa
+    public void upload(String hash, byte[] data, BlobStore.Callback<String> callback) {
+        ioExecutor.execute(() -> {
+            writeCache(hash, data);
+            blobStore.put(hash, data, callback);
+        });
+    }
+
+    // Đọc ảnh theo hash: ưu tiên cache đĩa, chỉ tải từ blob store khi chưa có. Callback chạy trên background thread
+    public void fetch(String hash, BlobStore.Callback<byte[]> callback) {
+        ioExecutor.execute(() -> {
+            File file = cacheFile(hash);
+            if (file.exists()) {
+                try {
+                    callback.onSuccess(Files.readAllBytes(file.toPath()));
+                    return;
+                } catch (IOException e) {
+                    file.delete();
+                }
+            }
+            blobStore.get(hash, new BlobStore.Callback<byte[]>() {
+                @Override
+                public void onSuccess(byte[] data) {
+                    if (!hash.equals(hashOf(data))) {
+                        callback.onFailure(new IOException("Avatar content does not match hash " + hash));
+                        return;
+                    }
+                    ioExecutor.execute(() -> writeCache(hash, data));
+                    callback.onSuccess(data);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    callback.onFailure(e);
+                }
+            });
+        });
+    }
+
+    private void writeCache(String hash, byte[] data) {
+        File file = cacheFile(hash);
+        if (file.exists()) {
+            return;
+        }
+        try {
+            cacheDirectory.mkdirs();
+            File temp = new File(cacheDirectory, hash + ".tmp");
+            Files.write(temp.toPath(), data);
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            // Cache đĩa chỉ là tối ưu, lần sau sẽ tải lại từ blob store
+        }
+    }
+
+    private File cacheFile(String hash) {
+        return new File(cacheDirectory, hash);
+    }
+}
@@ -0,0 +1,16 @@
+package com.androids.javachat.storage;
+
+// Kho lưu trữ nội dung nhị phân theo hash (content-addressed): cùng nội dung thì chỉ lưu một lần
+public interface BlobStore {
+
+    interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Exception e);
+    }
+
+    // Lưu nội dung dưới hash đã cho, trả về URL tải xuống
+    void put(String hash, byte[] data, Callback<String> callback);
+
+    void get(String hash, Callback<byte[]> callback);
+}
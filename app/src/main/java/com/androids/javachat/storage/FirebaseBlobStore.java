@@ -0,0 +1,36 @@
+package com.androids.javachat.storage;
+
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageReference;
+
+// BlobStore trên Firebase Storage, mỗi blob nằm ở avatars/<hash>
+public class FirebaseBlobStore implements BlobStore {
+
+    private static final long MAX_BLOB_SIZE = 1024 * 1024;
+
+    private final StorageReference root = FirebaseStorage.getInstance().getReference("avatars");
+
+    @Override
+    public void put(String hash, byte[] data, Callback<String> callback) {
+        StorageReference reference = root.child(hash);
+        // Nội dung đã tồn tại thì không cần upload lại
+        reference.getDownloadUrl()
+                .addOnSuccessListener(uri -> callback.onSuccess(uri.toString()))
+                .addOnFailureListener(e -> reference.putBytes(data)
+                        .continueWithTask(task -> {
+                            if (!task.isSuccessful()) {
+                                throw task.getException();
+                            }
+                            return reference.getDownloadUrl();
+                        })
+                        .addOnSuccessListener(uri -> callback.onSuccess(uri.toString()))
+                        .addOnFailureListener(callback::onFailure));
+    }
+
+    @Override
+    public void get(String hash, Callback<byte[]> callback) {
+        root.child(hash).getBytes(MAX_BLOB_SIZE)
+                .addOnSuccessListener(callback::onSuccess)
+                .addOnFailureListener(callback::onFailure);
+    }
+}
@@ -0,0 +1,38 @@
+package com.androids.javachat.storage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+// BlobStore lưu trên file cục bộ, dùng thay Firebase Storage khi test
+public class LocalBlobStore implements BlobStore {
+
+    private final File directory;
+
+    public LocalBlobStore(File directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public void put(String hash, byte[] data, Callback<String> callback) {
+        File file = new File(directory, hash);
+        try {
+            if (!file.exists()) {
+                directory.mkdirs();
+                Files.write(file.toPath(), data);
+            }
+            callback.onSuccess(file.toURI().toString());
+        } catch (IOException e) {
+            callback.onFailure(e);
+        }
+    }
+
+    @Override
+    public void get(String hash, Callback<byte[]> callback) {
+        try {
+            callback.onSuccess(Files.readAllBytes(new File(directory, hash).toPath()));
+        } catch (IOException e) {
+            callback.onFailure(e);
+        }
+    }
+}
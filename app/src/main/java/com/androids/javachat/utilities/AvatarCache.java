@@ -0,0 +1,158 @@
+package com.androids.javachat.utilities;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Base64;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import com.androids.javachat.storage.AvatarStore;
+import com.androids.javachat.storage.BlobStore;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Cache ảnh đại diện đã decode, dùng chung cho mọi adapter/activity
+// Key = userId + hash nội dung ảnh, nên khi người dùng đổi ảnh sẽ tự decode lại
+// Ảnh mới được tải qua AvatarStore theo imageHash; legacyImage là chuỗi Base64 của các tài khoản chưa chuyển đổi
+public class AvatarCache implements ComponentCallbacks2 {
+
+    private static AvatarCache instance;
+
+    private final AvatarStore avatarStore;
+    private final LruCache<String, Bitmap> bitmaps;
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private AvatarCache(AvatarStore avatarStore) {
+        this.avatarStore = avatarStore;
+        // Giới hạn theo số byte của bitmap: 1/8 bộ nhớ tối đa của app
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        bitmaps = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    public static synchronized AvatarCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new AvatarCache(AvatarStore.getInstance(context));
+            context.getApplicationContext().registerComponentCallbacks(instance);
+        }
+        return instance;
+    }
+
+    // Gắn ảnh vào ImageView: có sẵn trong cache thì gán ngay, nếu không thì để trống và decode ở background
+    public void load(String userId, String imageHash, String legacyImage, ImageView imageView) {
+        String key = key(userId, imageHash, legacyImage);
+        imageView.setTag(key);
+        if (key == null) {
+            imageView.setImageDrawable(null);
+            return;
+        }
+        Bitmap cached = bitmaps.get(key);
+        if (cached != null) {
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        decode(key, imageHash, legacyImage, bitmap -> {
+            // ViewHolder có thể đã được tái sử dụng cho người dùng khác
+            if (bitmap != null && key.equals(imageView.getTag())) {
+                imageView.setImageBitmap(bitmap);
+            }
+        });
+    }
+
+    // Lấy bitmap bất đồng bộ, callback chạy trên main thread (null nếu không decode được)
+    public void get(String userId, String imageHash, String legacyImage, Consumer<Bitmap> callback) {
+        String key = key(userId, imageHash, legacyImage);
+        if (key == null) {
+            callback.accept(null);
+            return;
+        }
+        Bitmap cached = bitmaps.get(key);
+        if (cached != null) {
+            callback.accept(cached);
+            return;
+        }
+        decode(key, imageHash, legacyImage, callback);
+    }
+
+    private void decode(String key, String imageHash, String legacyImage, Consumer<Bitmap> callback) {
+        if (imageHash == null || imageHash.isEmpty()) {
+            decodeExecutor.execute(() -> {
+                try {
+                    decodeAndPost(key, Base64.decode(legacyImage, Base64.DEFAULT), callback);
+                } catch (IllegalArgumentException e) {
+                    Log.e("AvatarCache", "Invalid avatar image: " + e.getMessage());
+                    mainHandler.post(() -> callback.accept(null));
+                }
+            });
+            return;
+        }
+        avatarStore.fetch(imageHash, new BlobStore.Callback<byte[]>() {
+            @Override
+            public void onSuccess(byte[] data) {
+                decodeExecutor.execute(() -> decodeAndPost(key, data, callback));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                Log.e("AvatarCache", "Failed to fetch avatar " + imageHash + ": " + e.getMessage());
+                mainHandler.post(() -> callback.accept(null));
+            }
+        });
+    }
+
+    private void decodeAndPost(String key, byte[] data, Consumer<Bitmap> callback) {
+        Bitmap bitmap = bitmaps.get(key);
+        if (bitmap == null) {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+            if (bitmap != null) {
+                bitmaps.put(key, bitmap);
+            }
+        }
+        Bitmap result = bitmap;
+        mainHandler.post(() -> callback.accept(result));
+    }
+
+    private static String key(String userId, String imageHash, String legacyImage) {
+        if (imageHash != null && !imageHash.isEmpty()) {
+            return userId + ":" + imageHash;
+        }
+        if (legacyImage == null || legacyImage.isEmpty()) {
+            return null;
+        }
+        return userId + ":" + legacyImage.length() + ":" + legacyImage.hashCode();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= TRIM_MEMORY_MODERATE) {
+            bitmaps.evictAll();
+        } else if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            bitmaps.trimToSize(bitmaps.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        bitmaps.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
@@ -0,0 +1,154 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.database.MessageDao;
+import com.androids.javachat.models.ChatMessage;
+import com.androids.javachat.models.EncryptedMessage;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.security.GeneralSecurityException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+// Giải mã, decode và format ngày cho tin nhắn trên worker thread, rồi trả cả lô về main thread một lần
+public class ChatMessagePipeline {
+
+    public interface Callback {
+        void onMessagesReady(List<ChatMessage> chatMessages, int failedCount);
+    }
+
+    private final MessageCrypto messageCrypto;
+    private final MessageDao messageDao;
+    // Chữ thay thế khi không giải mã được, lấy từ R.string.decryption_failed
+    private final String decryptionFailedText;
+    private final Executor workerExecutor;
+    private final Executor mainExecutor;
+    private final ThreadLocal<SimpleDateFormat> dateFormat = new ThreadLocal<>();
+
+    // messageDao có thể null nếu không cần lưu tin nhắn xuống store cục bộ
+    public ChatMessagePipeline(MessageCrypto messageCrypto, MessageDao messageDao, String decryptionFailedText,
+                               Executor workerExecutor, Executor mainExecutor) {
+        this.messageCrypto = messageCrypto;
+        this.messageDao = messageDao;
+        this.decryptionFailedText = decryptionFailedText;
+        this.workerExecutor = workerExecutor;
+        this.mainExecutor = mainExecutor;
+    }
+
+    public void submit(List<DocumentSnapshot> documents, Callback callback) {
+        workerExecutor.execute(() -> {
+            List<EncryptedMessage> encryptedMessages = new ArrayList<>(documents.size());
+            for (DocumentSnapshot document : documents) {
+                encryptedMessages.add(EncryptedMessage.fromDocument(document));
+            }
+            storeAndProcess(encryptedMessages, callback);
+        });
+    }
+
+    // Tin còn chờ server xác nhận chỉ hiển thị, không ghi xuống store; bản đã xác nhận về sau sẽ được lưu
+    void storeAndProcess(List<EncryptedMessage> encryptedMessages, Callback callback) {
+        if (messageDao != null) {
+            List<EncryptedMessage> confirmed = new ArrayList<>(encryptedMessages.size());
+            for (EncryptedMessage encryptedMessage : encryptedMessages) {
+                if (!encryptedMessage.pending) {
+                    confirmed.add(encryptedMessage);
+                }
+            }
+            if (!confirmed.isEmpty()) {
+                messageDao.insertAll(confirmed);
+            }
+        }
+        process(encryptedMessages, callback);
+    }
+
+    // Trang mới nhất của hội thoại trong store cục bộ, dùng để hiển thị ngay khi mở màn hình chat
+    public void loadLatest(String conversationKey, int limit, Callback callback) {
+        load(() -> messageDao.getLatestMessages(conversationKey, limit), callback);
+    }
+
+    // Con trỏ là tin cũ nhất/mới nhất đang hiển thị; id null được xếp trước mọi id như trong MessageWindow
+    public void loadBefore(String conversationKey, ChatMessage oldest, int limit, Callback callback) {
+        long before = oldest.dateObject.getTime();
+        String beforeId = oldest.messageId != null ? oldest.messageId : "";
+        load(() -> messageDao.getMessagesBefore(conversationKey, before, beforeId, limit), callback);
+    }
+
+    public void loadAfter(String conversationKey, ChatMessage newest, int limit, Callback callback) {
+        long after = newest.dateObject.getTime();
+        String afterId = newest.messageId != null ? newest.messageId : "";
+        load(() -> messageDao.getMessagesAfter(conversationKey, after, afterId, limit), callback);
+    }
+
+    private void load(Supplier<List<EncryptedMessage>> query, Callback callback) {
+        workerExecutor.execute(() -> {
+            List<EncryptedMessage> encryptedMessages = messageDao != null ? query.get() : new ArrayList<>();
+            process(encryptedMessages, callback);
+        });
+    }
+
+    public void submitMessages(List<EncryptedMessage> encryptedMessages, Callback callback) {
+        workerExecutor.execute(() -> process(encryptedMessages, callback));
+    }
+
+    private void process(List<EncryptedMessage> encryptedMessages, Callback callback) {
+        List<MessageEnvelope> envelopes = new ArrayList<>(encryptedMessages.size());
+        List<String> conversationKeys = new ArrayList<>(encryptedMessages.size());
+        for (EncryptedMessage encryptedMessage : encryptedMessages) {
+            envelopes.add(encryptedMessage.envelope());
+            conversationKeys.add(encryptedMessage.conversationKey);
+        }
+        List<String> plaintexts;
+        int failedCount = 0;
+        try {
+            plaintexts = messageCrypto.decryptAll(conversationKeys, envelopes);
+        } catch (GeneralSecurityException e) {
+            // Chưa có khóa: mọi tin hiện chữ thay thế, không bao giờ hiện ciphertext
+            plaintexts = Collections.nCopies(encryptedMessages.size(), null);
+        }
+
+        List<ChatMessage> chatMessages = new ArrayList<>(encryptedMessages.size());
+        for (int i = 0; i < encryptedMessages.size(); i++) {
+            EncryptedMessage encryptedMessage = encryptedMessages.get(i);
+            String plaintext = plaintexts.get(i);
+            if (plaintext == null) {
+                failedCount++;
+            }
+            ChatMessage chatMessage = new ChatMessage();
+            chatMessage.messageId = encryptedMessage.id;
+            chatMessage.senderId = encryptedMessage.senderId;
+            chatMessage.receiverId = encryptedMessage.receiverId;
+            chatMessage.message = plaintext != null ? decodeMessage(plaintext) : decryptionFailedText;
+            chatMessage.dateObject = new Date(encryptedMessage.timestamp);
+            chatMessage.dateTime = getReadDateTime(chatMessage.dateObject);
+            chatMessage.pending = encryptedMessage.pending;
+            chatMessages.add(chatMessage);
+        }
+        Collections.sort(chatMessages, (obj1, obj2) -> obj1.dateObject.compareTo(obj2.dateObject));
+
+        int failed = failedCount;
+        mainExecutor.execute(() -> callback.onMessagesReady(chatMessages, failed));
+    }
+
+    private String getReadDateTime(Date date) {
+        SimpleDateFormat format = dateFormat.get();
+        if (format == null) {
+            format = new SimpleDateFormat("dd MMMM, yyyy - hh:mm a", Locale.getDefault());
+            dateFormat.set(format);
+        }
+        return format.format(date);
+    }
+
+    static String decodeMessage(String message) {
+        if (message == null) return "";
+        return message
+                .replace("\\u003C", "<")
+                .replace("\\u003E", ">")
+                .replace("\\u0022", "\"")
+                .replace("\\u0027", "'");
+    }
+}
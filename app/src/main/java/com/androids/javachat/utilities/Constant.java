@@ -4,11 +4,15 @@ public class Constant {
     //Firebase collection
     public static final String KEY_COLLECTION_USERS = "users";
     public static final String KEY_NAME = "name";
+    // Tên đã chuẩn hóa (chữ thường, bỏ dấu) cho truy vấn tìm theo tiền tố
+    public static final String KEY_NAME_LOWER = "nameLower";
     public static final String KEY_EMAIL = "email";
     public static final String KEY_PREFERENCE_NAME = "chatAppPreference";
     public static final String KEY_SIGNED_IN = "isSignedIn";
     public static final String KEY_USER_ID = "userID";
     public static final String KEY_IMAGE = "image";
+    public static final String KEY_IMAGE_HASH = "imageHash";
+    public static final String KEY_IMAGE_URL = "imageUrl";
 
     //FCM
     public static final String KEY_FCM_TOKEN = "fcmtoken";
@@ -20,7 +24,11 @@ public class Constant {
     public static final String KEY_SENDER_ID = "senderId";
     public static final String KEY_RECEIVER_ID = "receiverId";
     public static final String KEY_MESSAGE = "message";
+    // MessageEnvelope dạng Blob; tin nhắn cũ chỉ có chuỗi Base64 trong KEY_MESSAGE
+    public static final String KEY_PAYLOAD = "payload";
     public static final String KEY_TIMESTAMP = "timestamp";
+    public static final String KEY_CONVERSATION_ID = "conversationId";
+    public static final String KEY_PARTICIPANTS = "participants";
 
     //Conversation
     public static final String KEY_COLLECTION_CONVERSATIONS = "conversations";
@@ -28,19 +36,27 @@ public class Constant {
     public static final String KEY_RECEIVER_NAME = "receiverName";
     public static final String KEY_SENDER_IMG = "senderImg";
     public static final String KEY_RECEIVER_IMG = "receiverImg";
+    public static final String KEY_SENDER_IMG_HASH = "senderImgHash";
+    public static final String KEY_RECEIVER_IMG_HASH = "receiverImgHash";
     public static final String KEY_LAST_MESSAGE = "lastMessage";
+    public static final String KEY_LAST_PAYLOAD = "lastPayload";
     public static final String KEY_AVAILABILITY = "availability";
+    // Heartbeat presence, giờ server; quá PresenceService.ONLINE_TTL_MILLIS thì coi là offline
+    public static final String KEY_LAST_SEEN = "lastSeen";
+    public static final String KEY_CONVERSATION_MIGRATED = "conversation_migrated";
+    public static final String KEY_CONVERSATION_REKEYED = "conversation_rekeyed";
 
     //Rate limiting
-    public static final String KEY_MESSAGE_COUNT = "message_count";
-    public static final String KEY_MESSAGE_TIMESTAMP = "message_timestamp";
+    public static final String KEY_MESSAGE_RATE_LIMIT = "message_rate_limit";
     public static final int MAX_MESSAGES_PER_MINUTE = 10;
     public static final long RATE_LIMIT_WINDOW = 60 * 1000; // 1 minute
 
     //Session management
-    public static final String KEY_LOGIN_ATTEMPTS = "login_attempts";
-    public static final String KEY_ATTEMPT_TIMESTAMP = "attempt_timestamp";
+    public static final String KEY_LOGIN_RATE_LIMIT = "login_rate_limit";
     public static final int MAX_LOGIN_ATTEMPTS = 5;
     public static final long ATTEMPT_WINDOW = 5 * 60 * 1000; // 5 minutes
     public static final String KEY_SESSION_TOKEN = "sessionToken";
+
+    //Encryption
+    public static final String KEY_AES_KEY = "AES_KEY";
 }
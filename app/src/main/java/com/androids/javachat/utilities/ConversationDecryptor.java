@@ -0,0 +1,102 @@
+package com.androids.javachat.utilities;
+
+import android.util.Log;
+
+import com.androids.javachat.models.ChatMessage;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Giải mã lại danh sách hội thoại khi khóa AES về muộn: chỉ những hội thoại chưa giải mã được,
+// chia thành nhiều phần chạy song song trên worker, rồi trả kết quả về main thread một lần
+public class ConversationDecryptor {
+
+    public interface Callback {
+        // Chỉ gồm hội thoại giải mã thành công, mỗi phần tử là bản sao mới của hội thoại tương ứng
+        void onDecrypted(List<ChatMessage> decrypted);
+    }
+
+    static final int CHUNK_SIZE = 64;
+
+    private final MessageCrypto messageCrypto;
+    private final Executor workerExecutor;
+    private final Executor mainExecutor;
+
+    // workerExecutor nên có nhiều thread để các phần chạy song song
+    public ConversationDecryptor(MessageCrypto messageCrypto, Executor workerExecutor, Executor mainExecutor) {
+        this.messageCrypto = messageCrypto;
+        this.workerExecutor = workerExecutor;
+        this.mainExecutor = mainExecutor;
+    }
+
+    // Không có hội thoại nào cần giải mã thì không gọi callback
+    public void decryptPending(List<ChatMessage> conversations, Callback callback) {
+        List<ChatMessage> pending = new ArrayList<>();
+        for (ChatMessage conversation : conversations) {
+            if (!conversation.decrypted && conversation.envelope != null) {
+                pending.add(conversation);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        ChatMessage[] results = new ChatMessage[pending.size()];
+        AtomicInteger remaining = new AtomicInteger((pending.size() + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        for (int start = 0; start < pending.size(); start += CHUNK_SIZE) {
+            int offset = start;
+            List<ChatMessage> chunk = pending.subList(start, Math.min(start + CHUNK_SIZE, pending.size()));
+            workerExecutor.execute(() -> {
+                try {
+                    decryptChunk(chunk, results, offset);
+                } catch (RuntimeException e) {
+                    // Phần lỗi giữ nguyên trạng thái chưa giải mã, các phần khác vẫn được trả về
+                    Log.e("ConversationDecryptor", "Failed to decrypt chunk at " + offset, e);
+                } finally {
+                    // Phần cuối cùng xong mới gom kết quả, để adapter chỉ nhận một lượt cập nhật
+                    if (remaining.decrementAndGet() == 0) {
+                        deliver(results, callback);
+                    }
+                }
+            });
+        }
+    }
+
+    private void deliver(ChatMessage[] results, Callback callback) {
+        List<ChatMessage> decrypted = new ArrayList<>(results.length);
+        for (ChatMessage result : results) {
+            if (result != null) {
+                decrypted.add(result);
+            }
+        }
+        mainExecutor.execute(() -> callback.onDecrypted(decrypted));
+    }
+
+    private void decryptChunk(List<ChatMessage> chunk, ChatMessage[] results, int offset) {
+        List<String> conversationKeys = new ArrayList<>(chunk.size());
+        List<MessageEnvelope> envelopes = new ArrayList<>(chunk.size());
+        for (ChatMessage conversation : chunk) {
+            conversationKeys.add(ConversationKey.ofNullable(conversation.senderId, conversation.receiverId));
+            envelopes.add(conversation.envelope);
+        }
+        List<String> plaintexts;
+        try {
+            plaintexts = messageCrypto.decryptAll(conversationKeys, envelopes);
+        } catch (GeneralSecurityException e) {
+            // Khóa lại bị xóa (đăng xuất) trong lúc chờ: giữ nguyên trạng thái chưa giải mã
+            return;
+        }
+        for (int i = 0; i < chunk.size(); i++) {
+            String plaintext = plaintexts.get(i);
+            if (plaintext == null) {
+                continue;
+            }
+            ChatMessage copy = chunk.get(i).copy();
+            copy.message = ChatMessagePipeline.decodeMessage(plaintext);
+            copy.decrypted = true;
+            results[offset + i] = copy;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.androids.javachat.utilities;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Khóa hội thoại cố định cho một cặp người dùng, không phụ thuộc chiều gửi/nhận.
+// Được lưu vào trường conversationId của tin nhắn và hội thoại trên Firestore
+public class ConversationKey {
+
+    private ConversationKey() {
+    }
+
+    public static String of(String userId, String otherUserId) {
+        if (userId.compareTo(otherUserId) <= 0) {
+            return userId + "_" + otherUserId;
+        }
+        return otherUserId + "_" + userId;
+    }
+
+    // null nếu thiếu một bên, ví dụ document cũ bị thiếu trường người gửi/nhận
+    public static String ofNullable(String userId, String otherUserId) {
+        if (userId == null || otherUserId == null) {
+            return null;
+        }
+        return of(userId, otherUserId);
+    }
+
+    public static List<String> participants(String userId, String otherUserId) {
+        return Arrays.asList(userId, otherUserId);
+    }
+}
@@ -0,0 +1,95 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.ChatMessage;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Danh sách hội thoại gần đây: HashMap conversionId -> item để tra trực tiếp, OrderedList để giữ thứ tự
+// Map giữ item thay vì index: vị trí tìm bằng binary search nên di chuyển một item không phải đánh lại index cả danh sách
+// Mỗi thay đổi báo cho adapter đúng thao tác cần thiết (insert, move + change, remove) thay vì diff cả danh sách
+// Item đã thêm không được sửa tại chỗ: muốn cập nhật thì upsert một bản sao mới
+public class ConversationList {
+
+    public interface Listener {
+        void onInserted(int position);
+
+        void onMoved(int fromPosition, int toPosition);
+
+        void onChanged(int position);
+
+        void onRemoved(int position);
+    }
+
+    private final OrderedList<ChatMessage> items;
+    private final Map<String, ChatMessage> byId = new HashMap<>();
+    private Listener listener;
+
+    public ConversationList(Comparator<ChatMessage> comparator) {
+        this.items = new OrderedList<>(comparator);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public ChatMessage get(int position) {
+        return items.get(position);
+    }
+
+    public ChatMessage find(String conversionId) {
+        return byId.get(conversionId);
+    }
+
+    // Thêm mới hoặc thay bản cũ cùng conversionId, trả về vị trí mới
+    public int upsert(ChatMessage conversation) {
+        ChatMessage existing = byId.put(conversation.conversionId, conversation);
+        if (existing == null) {
+            int position = items.add(conversation);
+            if (listener != null) {
+                listener.onInserted(position);
+            }
+            return position;
+        }
+        int from = items.remove(existing);
+        int to = items.add(conversation);
+        if (listener != null) {
+            if (from < 0) {
+                listener.onInserted(to);
+                return to;
+            }
+            if (from != to) {
+                listener.onMoved(from, to);
+            }
+            listener.onChanged(to);
+        }
+        return to;
+    }
+
+    // Trả về vị trí đã xóa, -1 nếu không có
+    public int remove(String conversionId) {
+        ChatMessage existing = byId.remove(conversionId);
+        if (existing == null) {
+            return -1;
+        }
+        int position = items.remove(existing);
+        if (position >= 0 && listener != null) {
+            listener.onRemoved(position);
+        }
+        return position;
+    }
+
+    public List<ChatMessage> snapshot() {
+        return items.snapshot();
+    }
+}
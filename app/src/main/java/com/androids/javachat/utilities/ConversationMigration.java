@@ -0,0 +1,202 @@
+package com.androids.javachat.utilities;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bổ sung conversationId/participants cho các tin nhắn và hội thoại cũ của người dùng (chạy một lần),
+// sau đó chuyển các hội thoại cũ có id ngẫu nhiên sang id cố định theo cặp người dùng
+public class ConversationMigration {
+
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private final FirebaseFirestore db;
+    private final PreferenceManager preferenceManager;
+
+    public ConversationMigration(FirebaseFirestore db, PreferenceManager preferenceManager) {
+        this.db = db;
+        this.preferenceManager = preferenceManager;
+    }
+
+    public boolean isComplete() {
+        return preferenceManager.getBoolean(Constant.KEY_CONVERSATION_MIGRATED)
+                && preferenceManager.getBoolean(Constant.KEY_CONVERSATION_REKEYED);
+    }
+
+    // onComplete được gọi cả khi migration chưa xong (lỗi mạng); kiểm tra lại bằng isComplete
+    public void migrateIfNeeded(String userId, Runnable onComplete) {
+        backfillIfNeeded(userId, () -> rekeyIfNeeded(userId, onComplete));
+    }
+
+    private void backfillIfNeeded(String userId, Runnable onComplete) {
+        if (preferenceManager.getBoolean(Constant.KEY_CONVERSATION_MIGRATED)) {
+            onComplete.run();
+            return;
+        }
+        List<Task<QuerySnapshot>> queries = new ArrayList<>();
+        for (String collection : new String[]{Constant.KEY_COLLECTION_CHAT, Constant.KEY_COLLECTION_CONVERSATIONS}) {
+            queries.add(db.collection(collection).whereEqualTo(Constant.KEY_SENDER_ID, userId).get());
+            queries.add(db.collection(collection).whereEqualTo(Constant.KEY_RECEIVER_ID, userId).get());
+        }
+        Tasks.whenAllComplete(queries).addOnCompleteListener(task -> {
+            List<DocumentSnapshot> legacyDocuments = new ArrayList<>();
+            boolean allLoaded = true;
+            for (Task<QuerySnapshot> query : queries) {
+                if (!query.isSuccessful() || query.getResult() == null) {
+                    allLoaded = false;
+                    continue;
+                }
+                for (DocumentSnapshot document : query.getResult().getDocuments()) {
+                    if (document.getString(Constant.KEY_CONVERSATION_ID) == null) {
+                        legacyDocuments.add(document);
+                    }
+                }
+            }
+            List<Task<Void>> commits = commitInBatches(legacyDocuments);
+            boolean markDone = allLoaded;
+            Tasks.whenAllComplete(commits).addOnCompleteListener(commitTask -> {
+                boolean committed = true;
+                for (Task<Void> commit : commits) {
+                    committed &= commit.isSuccessful();
+                }
+                if (markDone && committed) {
+                    preferenceManager.putBoolean(Constant.KEY_CONVERSATION_MIGRATED, true);
+                    Log.d("ConversationMigration", "Migrated " + legacyDocuments.size() + " documents");
+                } else {
+                    Log.e("ConversationMigration", "Migration incomplete, will retry on next start");
+                }
+                onComplete.run();
+            });
+        });
+    }
+
+    // Hội thoại mới dùng ConversationKey làm id document; hội thoại cũ (id ngẫu nhiên, có thể trùng nhau)
+    // được gộp vào document đó: giữ bản mới nhất rồi xóa bản cũ
+    private void rekeyIfNeeded(String userId, Runnable onComplete) {
+        if (preferenceManager.getBoolean(Constant.KEY_CONVERSATION_REKEYED)) {
+            onComplete.run();
+            return;
+        }
+        db.collection(Constant.KEY_COLLECTION_CONVERSATIONS)
+                .whereArrayContains(Constant.KEY_PARTICIPANTS, userId)
+                .get()
+                .addOnCompleteListener(task -> {
+                    if (!task.isSuccessful() || task.getResult() == null) {
+                        Log.e("ConversationMigration", "Rekey query failed, will retry on next start");
+                        onComplete.run();
+                        return;
+                    }
+                    Map<String, List<DocumentSnapshot>> legacyByKey = new HashMap<>();
+                    for (DocumentSnapshot document : task.getResult().getDocuments()) {
+                        String key = document.getString(Constant.KEY_CONVERSATION_ID);
+                        if (key != null && !key.equals(document.getId())) {
+                            legacyByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(document);
+                        }
+                    }
+                    List<String> keys = new ArrayList<>(legacyByKey.keySet());
+                    List<Task<DocumentSnapshot>> targets = new ArrayList<>();
+                    for (String key : keys) {
+                        targets.add(db.collection(Constant.KEY_COLLECTION_CONVERSATIONS).document(key).get());
+                    }
+                    Tasks.whenAllComplete(targets).addOnCompleteListener(targetTask -> {
+                        boolean allLoaded = true;
+                        WriteBatch batch = db.batch();
+                        List<Task<Void>> commits = new ArrayList<>();
+                        int batchSize = 0;
+                        for (int i = 0; i < keys.size(); i++) {
+                            Task<DocumentSnapshot> target = targets.get(i);
+                            if (!target.isSuccessful() || target.getResult() == null) {
+                                allLoaded = false;
+                                continue;
+                            }
+                            List<DocumentSnapshot> legacyDocuments = legacyByKey.get(keys.get(i));
+                            DocumentSnapshot newest = newest(legacyDocuments);
+                            // Mỗi hội thoại cần tối đa 1 + số bản cũ thao tác, không tách qua hai batch
+                            int needed = 1 + legacyDocuments.size();
+                            if (batchSize + needed > MAX_BATCH_SIZE) {
+                                commits.add(batch.commit());
+                                batch = db.batch();
+                                batchSize = 0;
+                            }
+                            if (!target.getResult().exists() || isNewer(newest, target.getResult())) {
+                                batch.set(target.getResult().getReference(), newest.getData());
+                                batchSize++;
+                            }
+                            for (DocumentSnapshot legacy : legacyDocuments) {
+                                batch.delete(legacy.getReference());
+                                batchSize++;
+                            }
+                        }
+                        if (batchSize > 0) {
+                            commits.add(batch.commit());
+                        }
+                        boolean markDone = allLoaded;
+                        Tasks.whenAllComplete(commits).addOnCompleteListener(commitTask -> {
+                            boolean committed = true;
+                            for (Task<Void> commit : commits) {
+                                committed &= commit.isSuccessful();
+                            }
+                            if (markDone && committed) {
+                                preferenceManager.putBoolean(Constant.KEY_CONVERSATION_REKEYED, true);
+                                Log.d("ConversationMigration", "Rekeyed " + keys.size() + " conversations");
+                            } else {
+                                Log.e("ConversationMigration", "Rekey incomplete, will retry on next start");
+                            }
+                            onComplete.run();
+                        });
+                    });
+                });
+    }
+
+    private static DocumentSnapshot newest(List<DocumentSnapshot> documents) {
+        DocumentSnapshot newest = documents.get(0);
+        for (DocumentSnapshot document : documents) {
+            if (isNewer(document, newest)) {
+                newest = document;
+            }
+        }
+        return newest;
+    }
+
+    private static boolean isNewer(DocumentSnapshot document, DocumentSnapshot other) {
+        Date date = document.getDate(Constant.KEY_TIMESTAMP);
+        Date otherDate = other.getDate(Constant.KEY_TIMESTAMP);
+        return date != null && (otherDate == null || date.after(otherDate));
+    }
+
+    private List<Task<Void>> commitInBatches(List<DocumentSnapshot> documents) {
+        List<Task<Void>> commits = new ArrayList<>();
+        WriteBatch batch = db.batch();
+        int batchSize = 0;
+        for (DocumentSnapshot document : documents) {
+            String senderId = document.getString(Constant.KEY_SENDER_ID);
+            String receiverId = document.getString(Constant.KEY_RECEIVER_ID);
+            if (senderId == null || receiverId == null) {
+                continue;
+            }
+            batch.update(document.getReference(),
+                    Constant.KEY_CONVERSATION_ID, ConversationKey.of(senderId, receiverId),
+                    Constant.KEY_PARTICIPANTS, ConversationKey.participants(senderId, receiverId));
+            if (++batchSize == MAX_BATCH_SIZE) {
+                commits.add(batch.commit());
+                batch = db.batch();
+                batchSize = 0;
+            }
+        }
+        if (batchSize > 0) {
+            commits.add(batch.commit());
+        }
+        return commits;
+    }
+}
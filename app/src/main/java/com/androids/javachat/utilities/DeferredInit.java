@@ -0,0 +1,106 @@
+package com.androids.javachat.utilities;
+
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.tracing.Trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+// Hoãn các việc khởi động không cần cho frame đầu tiên (FCM token, kiểm tra phiên, tải khóa AES...)
+// tới sau khi màn hình đã vẽ xong; mỗi việc chạy một lượt riêng trên main thread để không dồn thành một frame dài
+// Chỉ dùng trên main thread
+public class DeferredInit {
+
+    public interface FirstFrame {
+        void await(Runnable onFirstFrame);
+    }
+
+    private final Executor mainExecutor;
+    private final List<Step> steps = new ArrayList<>();
+    private boolean released = false;
+    private boolean cleared = false;
+
+    DeferredInit(FirstFrame firstFrame, Executor mainExecutor) {
+        this.mainExecutor = mainExecutor;
+        firstFrame.await(this::release);
+    }
+
+    public static DeferredInit afterFirstDraw(View view) {
+        return new DeferredInit(onFirstFrame -> view.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn = false;
+
+            @Override
+            public void onDraw() {
+                if (drawn) {
+                    return;
+                }
+                drawn = true;
+                // Không gỡ listener được trong lúc đang vẽ; post để chạy sau khi frame này hoàn tất
+                view.post(() -> {
+                    view.getViewTreeObserver().removeOnDrawListener(this);
+                    onFirstFrame.run();
+                });
+            }
+        }), view::post);
+    }
+
+    // Thêm sau frame đầu thì việc chạy ở lượt kế tiếp của main thread
+    public void add(String name, Runnable step) {
+        if (cleared) {
+            return;
+        }
+        if (released) {
+            post(new Step(name, step));
+        } else {
+            steps.add(new Step(name, step));
+        }
+    }
+
+    // Gọi trong onDestroy: việc chưa chạy bị bỏ, không giữ activity đã hủy
+    public void clear() {
+        cleared = true;
+        steps.clear();
+    }
+
+    int pendingCount() {
+        return steps.size();
+    }
+
+    private void release() {
+        if (cleared || released) {
+            return;
+        }
+        released = true;
+        for (Step step : steps) {
+            post(step);
+        }
+        steps.clear();
+    }
+
+    private void post(Step step) {
+        mainExecutor.execute(() -> {
+            if (cleared) {
+                return;
+            }
+            Trace.beginSection("DeferredInit." + step.name);
+            try {
+                step.task.run();
+            } finally {
+                Trace.endSection();
+            }
+        });
+    }
+
+    private static final class Step {
+        final String name;
+        final Runnable task;
+
+        Step(String name, Runnable task) {
+            this.name = name;
+            this.task = task;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+import android.os.Build;
+
+import com.androids.javachat.database.ChatDatabase;
+import com.androids.javachat.database.LogEventDao;
+import com.androids.javachat.firebase.EventFlushWorker;
+import com.androids.javachat.models.LogEvent;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+// Ghi sự kiện vào hàng đợi trên đĩa thay vì add() từng document lên collection "logs";
+// EventFlushWorker ghi hàng đợi lên Firestore theo lô khi đủ số lượng hoặc sau một khoảng thời gian
+public class EventLogger {
+
+    public interface FlushScheduler {
+        // now = true: hàng đợi đã đủ lớn, ghi ngay khi có mạng; false: hẹn giờ ghi
+        void scheduleFlush(boolean now);
+    }
+
+    public interface EventSink {
+        // Ghi cả lô trong một lần, chỉ trả về khi đã ghi xong
+        void write(List<LogEvent> events) throws Exception;
+    }
+
+    // Giới hạn số thao tác của một WriteBatch
+    static final int MAX_BATCH_SIZE = 500;
+    static final int FLUSH_THRESHOLD = 50;
+    // Quá ngưỡng này thì chỉ giữ 1/SAMPLE_RATE sự kiện thành công lặp lại nhiều
+    static final int SAMPLING_THRESHOLD = 1000;
+    static final int SAMPLE_RATE = 10;
+    // Quá ngưỡng này thì bỏ sự kiện mới (khi offline lâu)
+    static final int MAX_QUEUED_EVENTS = 5000;
+    private static final Set<String> SAMPLED_ACTIONS = new HashSet<>(Arrays.asList("message_sent", "fcm_sent"));
+
+    private static EventLogger instance;
+
+    private final LogEventDao logEventDao;
+    private final Executor ioExecutor;
+    private final FlushScheduler flushScheduler;
+    private final String deviceInfo;
+    private final LongSupplier clock;
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+    private final AtomicInteger droppedCount = new AtomicInteger();
+
+    EventLogger(LogEventDao logEventDao, Executor ioExecutor, FlushScheduler flushScheduler, String deviceInfo, LongSupplier clock) {
+        this.logEventDao = logEventDao;
+        this.ioExecutor = ioExecutor;
+        this.flushScheduler = flushScheduler;
+        this.deviceInfo = deviceInfo;
+        this.clock = clock;
+    }
+
+    public static synchronized EventLogger getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new EventLogger(ChatDatabase.getInstance(appContext).logEventDao(),
+                    Executors.newSingleThreadExecutor(),
+                    now -> EventFlushWorker.schedule(appContext, now),
+                    Build.MODEL + " (Android " + Build.VERSION.RELEASE + ")",
+                    System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    public void log(String userId, String action) {
+        log(userId, action, null);
+    }
+
+    public void log(String userId, String action, String receiverId) {
+        LogEvent event = new LogEvent();
+        event.eventId = UUID.randomUUID().toString();
+        event.userId = userId != null ? userId : "unknown";
+        event.action = action;
+        event.receiverId = receiverId;
+        event.deviceInfo = deviceInfo;
+        event.timestamp = clock.getAsLong();
+        ioExecutor.execute(() -> enqueue(event));
+    }
+
+    private void enqueue(LogEvent event) {
+        int queued = logEventDao.count();
+        if (queued >= MAX_QUEUED_EVENTS) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        if (queued >= SAMPLING_THRESHOLD && SAMPLED_ACTIONS.contains(event.action)
+                && sampleCounter.getAndIncrement() % SAMPLE_RATE != 0) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        logEventDao.insert(event);
+        queued++;
+        if (queued % FLUSH_THRESHOLD == 0) {
+            flushScheduler.scheduleFlush(true);
+        } else if (queued == 1) {
+            flushScheduler.scheduleFlush(false);
+        }
+    }
+
+    // Ghi toàn bộ hàng đợi theo lô tối đa MAX_BATCH_SIZE; lô nào lỗi thì giữ lại để lần sau ghi tiếp
+    // Document dùng eventId làm id nên ghi lại một lô đã thành công cũng không tạo bản trùng
+    public synchronized int flush(EventSink sink) throws Exception {
+        int written = 0;
+        while (true) {
+            List<LogEvent> batch = logEventDao.getOldest(MAX_BATCH_SIZE);
+            if (batch.isEmpty()) {
+                return written;
+            }
+            sink.write(batch);
+            logEventDao.deleteUpTo(batch.get(batch.size() - 1).id);
+            written += batch.size();
+        }
+    }
+
+    public int getDroppedCount() {
+        return droppedCount.get();
+    }
+}
@@ -0,0 +1,120 @@
+package com.androids.javachat.utilities;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Snapshot listener gắn với vòng đời activity: gỡ hết khi onStop, gắn lại khi onStart, bỏ hẳn khi onDestroy
+// Factory được gọi lại mỗi lần gắn nên đọc resume token (mốc dữ liệu mới nhất đã nhận) ngay lúc đó,
+// nhờ vậy lần gắn lại chỉ tải phần thay đổi trong lúc app ở background
+// Chỉ dùng trên main thread
+public class ListenerRegistry {
+
+    public interface Registration {
+        void remove();
+    }
+
+    public interface Factory {
+        Registration attach();
+    }
+
+    // Tổng số listener đang mở trên toàn app, để đo rò rỉ
+    private static final AtomicInteger liveListeners = new AtomicInteger();
+
+    private final Map<String, Factory> factories = new LinkedHashMap<>();
+    private final Map<String, Registration> attached = new LinkedHashMap<>();
+    private boolean started = false;
+    private boolean destroyed = false;
+
+    ListenerRegistry() {
+    }
+
+    // Gọi trong onCreate; listener được gắn khi activity tới onStart
+    public static ListenerRegistry bind(LifecycleOwner owner) {
+        ListenerRegistry registry = new ListenerRegistry();
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner owner) {
+                registry.start();
+            }
+
+            @Override
+            public void onStop(@NonNull LifecycleOwner owner) {
+                registry.stop();
+            }
+
+            @Override
+            public void onDestroy(@NonNull LifecycleOwner owner) {
+                registry.clear();
+            }
+        });
+        return registry;
+    }
+
+    public static int liveListenerCount() {
+        return liveListeners.get();
+    }
+
+    // Cùng key thì thay listener cũ; đang started thì gắn ngay, không thì chờ onStart
+    public void add(String key, Factory factory) {
+        if (destroyed) {
+            return;
+        }
+        detach(key);
+        factories.put(key, factory);
+        if (started) {
+            attach(key, factory);
+        }
+    }
+
+    public void remove(String key) {
+        factories.remove(key);
+        detach(key);
+    }
+
+    int liveCount() {
+        return attached.size();
+    }
+
+    void start() {
+        started = true;
+        for (Map.Entry<String, Factory> entry : factories.entrySet()) {
+            if (!attached.containsKey(entry.getKey())) {
+                attach(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    void stop() {
+        started = false;
+        for (String key : attached.keySet().toArray(new String[0])) {
+            detach(key);
+        }
+    }
+
+    void clear() {
+        stop();
+        factories.clear();
+        destroyed = true;
+    }
+
+    private void attach(String key, Factory factory) {
+        Registration registration = factory.attach();
+        if (registration != null) {
+            attached.put(key, registration);
+            liveListeners.incrementAndGet();
+        }
+    }
+
+    private void detach(String key) {
+        Registration registration = attached.remove(key);
+        if (registration != null) {
+            registration.remove();
+            liveListeners.decrementAndGet();
+        }
+    }
+}
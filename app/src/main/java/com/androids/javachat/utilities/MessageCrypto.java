@@ -0,0 +1,247 @@
+package com.androids.javachat.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+// Mã hóa / giải mã tin nhắn dùng chung: khóa AES chỉ decode một lần, mỗi thread giữ một Cipher riêng
+// Tin mới dùng AES-GCM với khóa riêng cho từng hội thoại, suy ra từ khóa chung bằng HKDF-SHA256;
+// tin cũ (chuỗi Base64 và envelope CBC) vẫn giải mã bằng khóa chung
+public class MessageCrypto {
+
+    private static final String CBC_TRANSFORMATION = "AES/CBC/PKCS5Padding";
+    private static final String GCM_TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final String HMAC = "HmacSHA256";
+    private static final int GCM_NONCE_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 16;
+    private static final int KEY_ID_LENGTH = 4;
+    private static final byte[] HKDF_SALT = "javachat/conversation-key/v1".getBytes(StandardCharsets.UTF_8);
+    static final int MAX_CACHED_KEYS = 64;
+
+    private static volatile MessageCrypto instance;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ThreadLocal<Cipher> cbcCiphers = new ThreadLocal<>();
+    private final ThreadLocal<Cipher> gcmCiphers = new ThreadLocal<>();
+    private final ThreadLocal<Mac> macs = new ThreadLocal<>();
+    private volatile String encodedKey;
+    // Khóa chung và cache khóa hội thoại đi cùng nhau: đổi khóa chung thì bỏ cả cache cũ
+    private volatile Keys keys;
+
+    MessageCrypto() {
+    }
+
+    public static MessageCrypto getInstance() {
+        if (instance == null) {
+            synchronized (MessageCrypto.class) {
+                if (instance == null) {
+                    instance = new MessageCrypto();
+                }
+            }
+        }
+        return instance;
+    }
+
+    // Gọi lại với cùng một khóa sẽ không decode lại
+    public synchronized void setKey(String encodedKey) {
+        if (encodedKey == null) {
+            this.encodedKey = null;
+            this.keys = null;
+            return;
+        }
+        if (encodedKey.equals(this.encodedKey)) {
+            return;
+        }
+        try {
+            byte[] keyBytes = Base64.getMimeDecoder().decode(encodedKey);
+            SecretKeySpec master = new SecretKeySpec(keyBytes, "AES");
+            // HKDF extract chỉ làm một lần cho mỗi khóa chung
+            byte[] pseudoRandomKey = hmac(HKDF_SALT, keyBytes);
+            this.keys = new Keys(master, keyIdOf(keyBytes), pseudoRandomKey);
+            this.encodedKey = encodedKey;
+        } catch (IllegalArgumentException | GeneralSecurityException e) {
+            this.encodedKey = null;
+            this.keys = null;
+        }
+    }
+
+    public boolean hasKey() {
+        return keys != null;
+    }
+
+    // Trả về MessageEnvelope AES-GCM bằng khóa của hội thoại; Cipher ghi thẳng ciphertext + tag vào sau header
+    public byte[] encrypt(String conversationKey, String message) throws GeneralSecurityException {
+        DataKey dataKey = dataKey(requireKeys(), conversationKey);
+        byte[] nonce = new byte[GCM_NONCE_LENGTH];
+        secureRandom.nextBytes(nonce);
+        Cipher cipher = cipher(gcmCiphers, GCM_TRANSFORMATION);
+        cipher.init(Cipher.ENCRYPT_MODE, dataKey.key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, nonce));
+        byte[] plaintext = message.getBytes(StandardCharsets.UTF_8);
+        int headerLength = MessageEnvelope.headerLength(dataKey.keyId, nonce);
+        byte[] envelope = new byte[headerLength + cipher.getOutputSize(plaintext.length)];
+        MessageEnvelope.writeHeader(envelope, MessageEnvelope.VERSION_AES_GCM, dataKey.keyId, nonce, GCM_TAG_LENGTH);
+        cipher.updateAAD(envelope, 0, headerLength);
+        int written = cipher.doFinal(plaintext, 0, plaintext.length, envelope, headerLength);
+        return headerLength + written == envelope.length ? envelope : Arrays.copyOf(envelope, headerLength + written);
+    }
+
+    public String decrypt(String conversationKey, MessageEnvelope envelope) throws GeneralSecurityException {
+        return decrypt(requireKeys(), conversationKey, envelope);
+    }
+
+    // Giải mã cả lô; conversationKeys song song với envelopes (tin trong danh sách hội thoại thuộc nhiều hội thoại khác nhau)
+    // Envelope null là tin rỗng, phần tử lỗi trả về null để nơi gọi tự xử lý
+    public List<String> decryptAll(List<String> conversationKeys, List<MessageEnvelope> envelopes) throws GeneralSecurityException {
+        Keys current = requireKeys();
+        List<String> result = new ArrayList<>(envelopes.size());
+        for (int i = 0; i < envelopes.size(); i++) {
+            MessageEnvelope envelope = envelopes.get(i);
+            if (envelope == null) {
+                result.add("");
+                continue;
+            }
+            try {
+                result.add(decrypt(current, conversationKeys.get(i), envelope));
+            } catch (GeneralSecurityException e) {
+                result.add(null);
+            }
+        }
+        return result;
+    }
+
+    private String decrypt(Keys current, String conversationKey, MessageEnvelope envelope) throws GeneralSecurityException {
+        if (envelope.version == MessageEnvelope.VERSION_AES_GCM) {
+            return decryptGcm(current, conversationKey, envelope);
+        }
+        if (envelope.version != MessageEnvelope.VERSION_LEGACY && envelope.version != MessageEnvelope.VERSION_AES_CBC) {
+            throw new GeneralSecurityException("Unsupported or malformed envelope");
+        }
+        // Chuỗi cũ không có key id; envelope mới mang key id nên khóa sai bị từ chối thay vì giải ra rác
+        if (envelope.keyId.length > 0 && !Arrays.equals(envelope.keyId, current.masterKeyId)) {
+            throw new GeneralSecurityException("Unknown key id");
+        }
+        Cipher cipher = cipher(cbcCiphers, CBC_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, current.master, new IvParameterSpec(envelope.nonce));
+        byte[] decryptedBytes = cipher.doFinal(envelope.data, envelope.ciphertextOffset, envelope.ciphertextLength);
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    // Tag được kiểm tra trước khi trả plaintext, không có bước bỏ padding nên không có padding oracle
+    private String decryptGcm(Keys current, String conversationKey, MessageEnvelope envelope) throws GeneralSecurityException {
+        if (conversationKey == null || envelope.tagLength != GCM_TAG_LENGTH || envelope.nonce.length != GCM_NONCE_LENGTH) {
+            throw new GeneralSecurityException("Malformed GCM envelope");
+        }
+        DataKey dataKey = dataKey(current, conversationKey);
+        if (!Arrays.equals(envelope.keyId, dataKey.keyId)) {
+            throw new GeneralSecurityException("Unknown key id");
+        }
+        Cipher cipher = cipher(gcmCiphers, GCM_TRANSFORMATION);
+        cipher.init(Cipher.DECRYPT_MODE, dataKey.key, new GCMParameterSpec(GCM_TAG_LENGTH * 8, envelope.nonce));
+        cipher.updateAAD(envelope.data, 0, envelope.ciphertextOffset);
+        byte[] decryptedBytes = cipher.doFinal(envelope.data, envelope.ciphertextOffset, envelope.ciphertextLength);
+        return new String(decryptedBytes, StandardCharsets.UTF_8);
+    }
+
+    // Khóa hội thoại lấy từ cache; chỉ lần đầu (hoặc sau khi bị đẩy khỏi cache) mới chạy HKDF expand
+    private DataKey dataKey(Keys current, String conversationKey) throws GeneralSecurityException {
+        synchronized (current.cache) {
+            DataKey cached = current.cache.get(conversationKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+        byte[] info = ("conversation:" + conversationKey).getBytes(StandardCharsets.UTF_8);
+        byte[] input = Arrays.copyOf(info, info.length + 1);
+        input[info.length] = 1;
+        byte[] keyBytes = hmac(current.pseudoRandomKey, input);
+        DataKey dataKey = new DataKey(new SecretKeySpec(keyBytes, "AES"), keyIdOf(keyBytes));
+        synchronized (current.cache) {
+            current.cache.put(conversationKey, dataKey);
+        }
+        return dataKey;
+    }
+
+    int cachedKeyCount() {
+        Keys current = keys;
+        if (current == null) {
+            return 0;
+        }
+        synchronized (current.cache) {
+            return current.cache.size();
+        }
+    }
+
+    private byte[] hmac(byte[] key, byte[] input) throws GeneralSecurityException {
+        Mac mac = macs.get();
+        if (mac == null) {
+            mac = Mac.getInstance(HMAC);
+            macs.set(mac);
+        }
+        mac.init(new SecretKeySpec(key, HMAC));
+        return mac.doFinal(input);
+    }
+
+    // 4 byte đầu SHA-256 của khóa: đủ để phân biệt các khóa, không lộ gì về khóa
+    private static byte[] keyIdOf(byte[] keyBytes) throws GeneralSecurityException {
+        return Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(keyBytes), KEY_ID_LENGTH);
+    }
+
+    private Keys requireKeys() throws GeneralSecurityException {
+        Keys current = keys;
+        if (current == null) {
+            throw new GeneralSecurityException("AES key not set");
+        }
+        return current;
+    }
+
+    private static Cipher cipher(ThreadLocal<Cipher> ciphers, String transformation) throws GeneralSecurityException {
+        Cipher cipher = ciphers.get();
+        if (cipher == null) {
+            cipher = Cipher.getInstance(transformation);
+            ciphers.set(cipher);
+        }
+        return cipher;
+    }
+
+    private static final class Keys {
+        final SecretKeySpec master;
+        final byte[] masterKeyId;
+        final byte[] pseudoRandomKey;
+        // LRU theo thứ tự truy cập, giới hạn số khóa hội thoại giữ trong bộ nhớ
+        final Map<String, DataKey> cache = new LinkedHashMap<String, DataKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, DataKey> eldest) {
+                return size() > MAX_CACHED_KEYS;
+            }
+        };
+
+        Keys(SecretKeySpec master, byte[] masterKeyId, byte[] pseudoRandomKey) {
+            this.master = master;
+            this.masterKeyId = masterKeyId;
+            this.pseudoRandomKey = pseudoRandomKey;
+        }
+    }
+
+    private static final class DataKey {
+        final SecretKeySpec key;
+        final byte[] keyId;
+
+        DataKey(SecretKeySpec key, byte[] keyId) {
+            this.key = key;
+            this.keyId = keyId;
+        }
+    }
+}
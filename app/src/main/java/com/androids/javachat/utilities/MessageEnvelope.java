@@ -0,0 +1,113 @@
+package com.androids.javachat.utilities;
+
+import java.util.Arrays;
+import java.util.Base64;
+
+// Tin nhắn đã mã hóa ở dạng nhị phân, lưu thành Blob trên Firestore và BLOB trong Room thay cho chuỗi Base64
+// [version:1][keyIdLength:1][keyId][nonceLength:1][nonce][tagLength:1][ciphertext][tag]
+// Ciphertext và tag nằm liền nhau ở cuối nên Cipher đọc thẳng từ mảng gốc, không phải copy
+public final class MessageEnvelope {
+
+    // Chuỗi Base64 cũ (IV 16 byte + ciphertext CBC), chỉ có khi đọc tin nhắn trước khi đổi định dạng
+    public static final byte VERSION_LEGACY = 0;
+    public static final byte VERSION_AES_CBC = 1;
+    // Khóa riêng theo hội thoại, header (version + keyId + nonce) được xác thực cùng ciphertext qua AAD
+    public static final byte VERSION_AES_GCM = 2;
+    static final byte VERSION_INVALID = -1;
+
+    private static final int LEGACY_IV_LENGTH = 16;
+    private static final byte[] EMPTY = new byte[0];
+
+    public final byte version;
+    public final byte[] keyId;
+    public final byte[] nonce;
+    public final int tagLength;
+    final byte[] data;
+    final int ciphertextOffset;
+    // Gồm cả tag
+    final int ciphertextLength;
+
+    private MessageEnvelope(byte version, byte[] keyId, byte[] nonce, int tagLength, byte[] data,
+                            int ciphertextOffset, int ciphertextLength) {
+        this.version = version;
+        this.keyId = keyId;
+        this.nonce = nonce;
+        this.tagLength = tagLength;
+        this.data = data;
+        this.ciphertextOffset = ciphertextOffset;
+        this.ciphertextLength = ciphertextLength;
+    }
+
+    // Đọc payload nhị phân nếu có, không thì chuỗi Base64 cũ; null nếu tin nhắn rỗng
+    // Dữ liệu hỏng không ném lỗi ở đây mà trả về envelope VERSION_INVALID để MessageCrypto báo lỗi từng tin
+    public static MessageEnvelope read(byte[] payload, String legacyMessage) {
+        if (payload != null && payload.length > 0) {
+            return parse(payload);
+        }
+        if (legacyMessage != null && !legacyMessage.isEmpty()) {
+            return parseLegacy(legacyMessage);
+        }
+        return null;
+    }
+
+    static MessageEnvelope parse(byte[] payload) {
+        int position = 0;
+        byte version = payload[position++];
+        if ((version != VERSION_AES_CBC && version != VERSION_AES_GCM) || payload.length < position + 1) {
+            return invalid();
+        }
+        int keyIdLength = payload[position++] & 0xFF;
+        if (payload.length < position + keyIdLength + 1) {
+            return invalid();
+        }
+        byte[] keyId = Arrays.copyOfRange(payload, position, position + keyIdLength);
+        position += keyIdLength;
+        int nonceLength = payload[position++] & 0xFF;
+        if (payload.length < position + nonceLength + 1) {
+            return invalid();
+        }
+        byte[] nonce = Arrays.copyOfRange(payload, position, position + nonceLength);
+        position += nonceLength;
+        int tagLength = payload[position++] & 0xFF;
+        int ciphertextLength = payload.length - position;
+        if (ciphertextLength <= tagLength) {
+            return invalid();
+        }
+        return new MessageEnvelope(version, keyId, nonce, tagLength, payload, position, ciphertextLength);
+    }
+
+    static MessageEnvelope parseLegacy(String legacyMessage) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getMimeDecoder().decode(legacyMessage);
+        } catch (IllegalArgumentException e) {
+            return invalid();
+        }
+        if (bytes.length <= LEGACY_IV_LENGTH) {
+            return invalid();
+        }
+        return new MessageEnvelope(VERSION_LEGACY, EMPTY, Arrays.copyOf(bytes, LEGACY_IV_LENGTH), 0, bytes,
+                LEGACY_IV_LENGTH, bytes.length - LEGACY_IV_LENGTH);
+    }
+
+    private static MessageEnvelope invalid() {
+        return new MessageEnvelope(VERSION_INVALID, EMPTY, EMPTY, 0, EMPTY, 0, 0);
+    }
+
+    // Độ dài header, để Cipher ghi ciphertext thẳng vào sau header trong cùng một mảng
+    static int headerLength(byte[] keyId, byte[] nonce) {
+        return 4 + keyId.length + nonce.length;
+    }
+
+    static void writeHeader(byte[] output, byte version, byte[] keyId, byte[] nonce, int tagLength) {
+        int position = 0;
+        output[position++] = version;
+        output[position++] = (byte) keyId.length;
+        System.arraycopy(keyId, 0, output, position, keyId.length);
+        position += keyId.length;
+        output[position++] = (byte) nonce.length;
+        System.arraycopy(nonce, 0, output, position, nonce.length);
+        position += nonce.length;
+        output[position] = (byte) tagLength;
+    }
+}
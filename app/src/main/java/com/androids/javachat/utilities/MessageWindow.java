@@ -0,0 +1,146 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.ChatMessage;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Cửa sổ tin nhắn đang hiển thị: giới hạn số phần tử, bỏ bớt các trang nằm xa màn hình
+public class MessageWindow {
+
+    // Cũ nhất trước; trùng thời gian thì so sánh id để thứ tự luôn xác định
+    public static final Comparator<ChatMessage> OLDEST_FIRST = Comparator
+            .comparing((ChatMessage chatMessage) -> chatMessage.dateObject)
+            .thenComparing(chatMessage -> chatMessage.messageId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final OrderedList<ChatMessage> messages = new OrderedList<>(OLDEST_FIRST);
+    private final Map<String, ChatMessage> messagesById = new HashMap<>();
+    private final int maxSize;
+    private boolean newerEvicted = false;
+
+    public MessageWindow(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+
+    public boolean isEmpty() {
+        return messages.isEmpty();
+    }
+
+    public ChatMessage oldest() {
+        return messages.first();
+    }
+
+    public ChatMessage newest() {
+        return messages.last();
+    }
+
+    public long oldestTimestamp() {
+        return messages.first().dateObject.getTime();
+    }
+
+    public long newestTimestamp() {
+        return messages.last().dateObject.getTime();
+    }
+
+    public List<ChatMessage> snapshot() {
+        return messages.snapshot();
+    }
+
+    // Có tin nhắn mới hơn đã bị bỏ khỏi cửa sổ (vẫn còn trong store cục bộ)
+    public boolean hasEvictedNewer() {
+        return newerEvicted;
+    }
+
+    public void setEvictedNewer(boolean newerEvicted) {
+        this.newerEvicted = newerEvicted;
+    }
+
+    // Bỏ toàn bộ cửa sổ, dùng khi nhảy về trang mới nhất
+    public void clear() {
+        messages.clear();
+        messagesById.clear();
+        newerEvicted = false;
+    }
+
+    // Tin đang chờ gửi bị outbox bỏ cuộc: thay bằng bản sao đánh dấu lỗi, trả về false nếu không có trong cửa sổ
+    public boolean markFailed(String messageId) {
+        ChatMessage existing = messagesById.get(messageId);
+        if (existing == null || !existing.pending || existing.failed) {
+            return false;
+        }
+        ChatMessage failed = existing.copy();
+        failed.failed = true;
+        messages.remove(existing);
+        messages.add(failed);
+        messagesById.put(messageId, failed);
+        return true;
+    }
+
+    // Chèn một trang cũ hơn, trả về số phần tử đã chèn
+    public int addOlder(List<ChatMessage> olderMessages) {
+        return addAll(olderMessages);
+    }
+
+    // Thêm tin nhắn mới hơn, trả về số phần tử đã thêm
+    public int addNewer(List<ChatMessage> newerMessages) {
+        return addAll(newerMessages);
+    }
+
+    // Bỏ các tin nhắn mới nhất vượt quá giới hạn (khi người dùng đang cuộn lên)
+    public int trimNewest() {
+        int removed = messages.size() - maxSize;
+        if (removed <= 0) {
+            return 0;
+        }
+        forget(messages.removeRange(maxSize, messages.size()));
+        newerEvicted = true;
+        return removed;
+    }
+
+    // Bỏ các tin nhắn cũ nhất vượt quá giới hạn (khi người dùng đang ở cuối danh sách)
+    public int trimOldest() {
+        int removed = messages.size() - maxSize;
+        if (removed <= 0) {
+            return 0;
+        }
+        forget(messages.removeRange(0, removed));
+        return removed;
+    }
+
+    // Tin nhắn đang chờ gửi được thay bằng bản đã ghi lên Firestore (cùng id) khi bản đó về tới
+    private int addAll(List<ChatMessage> candidates) {
+        int added = 0;
+        for (ChatMessage chatMessage : candidates) {
+            if (chatMessage.messageId == null) {
+                messages.add(chatMessage);
+                added++;
+                continue;
+            }
+            ChatMessage existing = messagesById.get(chatMessage.messageId);
+            if (existing != null && !(existing.pending && !chatMessage.pending)) {
+                continue;
+            }
+            if (existing != null) {
+                messages.remove(existing);
+            }
+            messagesById.put(chatMessage.messageId, chatMessage);
+            messages.add(chatMessage);
+            added++;
+        }
+        return added;
+    }
+
+    private void forget(List<ChatMessage> removedMessages) {
+        for (ChatMessage chatMessage : removedMessages) {
+            if (chatMessage.messageId != null) {
+                messagesById.remove(chatMessage.messageId);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.androids.javachat.utilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+// Danh sách luôn được sắp xếp theo comparator: chèn/tìm bằng binary search thay vì sort lại cả danh sách
+// Comparator phải phân biệt được mọi phần tử (ví dụ so sánh thêm id khi trùng thời gian)
+public class OrderedList<T> {
+
+    private final ArrayList<T> items = new ArrayList<>();
+    private final Comparator<? super T> comparator;
+
+    public OrderedList(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public boolean isEmpty() {
+        return items.isEmpty();
+    }
+
+    public T get(int index) {
+        return items.get(index);
+    }
+
+    public T first() {
+        return items.get(0);
+    }
+
+    public T last() {
+        return items.get(items.size() - 1);
+    }
+
+    // Chèn vào đúng vị trí, trả về index của phần tử vừa chèn
+    public int add(T item) {
+        int size = items.size();
+        if (size == 0 || comparator.compare(item, items.get(size - 1)) >= 0) {
+            // Trường hợp thường gặp: phần tử mới nhất nằm ở cuối
+            items.add(item);
+            return size;
+        }
+        int index = Collections.binarySearch(items, item, comparator);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        items.add(index, item);
+        return index;
+    }
+
+    public int indexOf(T item) {
+        int index = Collections.binarySearch(items, item, comparator);
+        return index >= 0 ? index : -1;
+    }
+
+    public T removeAt(int index) {
+        return items.remove(index);
+    }
+
+    // Trả về index của phần tử đã xóa, -1 nếu không có
+    public int remove(T item) {
+        int index = indexOf(item);
+        if (index >= 0) {
+            items.remove(index);
+        }
+        return index;
+    }
+
+    // Xóa các phần tử trong [fromIndex, toIndex) và trả về chúng
+    public List<T> removeRange(int fromIndex, int toIndex) {
+        List<T> range = items.subList(fromIndex, toIndex);
+        List<T> removed = new ArrayList<>(range);
+        range.clear();
+        return removed;
+    }
+
+    public void clear() {
+        items.clear();
+    }
+
+    // Bản sao để đưa cho ListAdapter, tránh adapter giữ tham chiếu tới danh sách đang thay đổi
+    public List<T> snapshot() {
+        return new ArrayList<>(items);
+    }
+}
@@ -0,0 +1,153 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+
+import com.androids.javachat.database.ChatDatabase;
+import com.androids.javachat.database.OutboxDao;
+import com.androids.javachat.firebase.FirestoreOutboxTransport;
+import com.androids.javachat.firebase.OutboxWorker;
+import com.androids.javachat.models.OutboxMessage;
+import com.androids.javachat.Networks.NotificationCoalescer;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+// Tin nhắn được ghi vào outbox trên đĩa trước, rồi mới gửi lên Firestore theo đúng thứ tự;
+// gửi lỗi thì giữ lại và để OutboxWorker thử lại với backoff tăng dần
+// Tin bị server từ chối hoặc quá MAX_ATTEMPTS lần thử được đánh dấu failed để không chặn các tin sau
+public class Outbox {
+
+    static final int MAX_ATTEMPTS = 10;
+
+    public interface Transport {
+        // Ghi tin nhắn (kèm hội thoại) và chỉ trả về khi đã ghi xong; phải idempotent theo clientId
+        // Lỗi không thể thành công khi thử lại (ví dụ bị từ chối quyền) thì ném RejectedException
+        void send(OutboxMessage message) throws Exception;
+    }
+
+    public static class RejectedException extends Exception {
+        public RejectedException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    public interface RetryScheduler {
+        void scheduleRetry();
+    }
+
+    public interface Listener {
+        void onSent(OutboxMessage message);
+
+        void onFailed(OutboxMessage message, Exception e);
+    }
+
+    private static Outbox instance;
+
+    private final OutboxDao outboxDao;
+    private final Transport transport;
+    private final Executor ioExecutor;
+    private final Executor sendExecutor;
+    private final RetryScheduler retryScheduler;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Ghi đĩa và gửi mạng chạy trên hai executor khác nhau: một lần gửi đang chờ mạng không làm chậm việc lưu tin mới
+    Outbox(OutboxDao outboxDao, Transport transport, Executor ioExecutor, Executor sendExecutor, RetryScheduler retryScheduler) {
+        this.outboxDao = outboxDao;
+        this.transport = transport;
+        this.ioExecutor = ioExecutor;
+        this.sendExecutor = sendExecutor;
+        this.retryScheduler = retryScheduler;
+    }
+
+    public static synchronized Outbox getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new Outbox(ChatDatabase.getInstance(appContext).outboxDao(),
+                    new FirestoreOutboxTransport(),
+                    Executors.newSingleThreadExecutor(),
+                    Executors.newSingleThreadExecutor(),
+                    () -> OutboxWorker.schedule(appContext));
+            instance.addListener(new NotificationListener(NotificationCoalescer.getInstance(appContext)));
+        }
+        return instance;
+    }
+
+    // Listener cấp tiến trình: tin gửi xong lúc nào (kể cả do OutboxWorker gửi sau khi app khởi động lại)
+    // cũng báo cho người nhận; các tin liên tiếp được gộp thành một thông báo
+    static class NotificationListener implements Listener {
+        private final NotificationCoalescer notificationCoalescer;
+
+        NotificationListener(NotificationCoalescer notificationCoalescer) {
+            this.notificationCoalescer = notificationCoalescer;
+        }
+
+        @Override
+        public void onSent(OutboxMessage message) {
+            // Token người nhận được NotificationCoalescer.Sender tra khi gửi
+            notificationCoalescer.submit(message.receiverId, null, message.senderId, message.senderName);
+        }
+
+        @Override
+        public void onFailed(OutboxMessage message, Exception e) {
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // Lưu xuống đĩa rồi thử gửi ngay; listener được gọi trên thread của outbox
+    public void enqueue(OutboxMessage message) {
+        ioExecutor.execute(() -> {
+            outboxDao.insert(message);
+            drainAsync();
+        });
+    }
+
+    // Các tin nhắn chưa gửi được của một hội thoại, để hiển thị lại ở trạng thái "đang gửi"
+    public void loadPending(String conversationKey, Consumer<List<OutboxMessage>> callback) {
+        ioExecutor.execute(() -> callback.accept(outboxDao.getPending(conversationKey)));
+    }
+
+    public void drainAsync() {
+        sendExecutor.execute(this::drain);
+    }
+
+    // Gửi lần lượt từ tin cũ nhất; gặp lỗi tạm thời thì dừng để không gửi tin sau trước tin trước,
+    // lỗi vĩnh viễn thì đánh dấu failed rồi gửi tiếp. Trả về true nếu không còn tin nào chờ gửi
+    public synchronized boolean drain() {
+        OutboxMessage message;
+        while ((message = outboxDao.getOldest()) != null) {
+            try {
+                transport.send(message);
+            } catch (Exception e) {
+                if (e instanceof RejectedException || message.attempts + 1 >= MAX_ATTEMPTS) {
+                    outboxDao.markFailed(message.clientId);
+                    message.failed = true;
+                    for (Listener listener : listeners) {
+                        listener.onFailed(message, e);
+                    }
+                    continue;
+                }
+                outboxDao.incrementAttempts(message.clientId);
+                for (Listener listener : listeners) {
+                    listener.onFailed(message, e);
+                }
+                retryScheduler.scheduleRetry();
+                return false;
+            }
+            outboxDao.delete(message.clientId);
+            for (Listener listener : listeners) {
+                listener.onSent(message);
+            }
+        }
+        return true;
+    }
+}
@@ -2,112 +2,182 @@ package com.androids.javachat.utilities;
 
 import android.content.Context;
 import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.security.crypto.EncryptedSharedPreferences;
 import androidx.security.crypto.MasterKey;
 
-import com.androids.javachat.R;
-import com.google.auth.oauth2.GoogleCredentials;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.util.Arrays;
-import java.util.Date;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
+// Một instance cho cả process: giải mã preferences một lần vào snapshot trong bộ nhớ,
+// đọc chỉ lấy từ snapshot; ghi cập nhật snapshot ngay rồi gộp các thay đổi vào một lần apply()
 public class PreferenceManager {
-    private SharedPreferences sharedPreferences;
-    private SharedPreferences.Editor editor;
-    private GoogleCredentials googleCredentials;
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
-    public PreferenceManager(Context context) {
+    private static PreferenceManager instance;
+
+    private final SharedPreferences sharedPreferences;
+    private final Executor applyExecutor;
+    // Giữ tham chiếu mạnh vì SharedPreferences chỉ giữ listener bằng weak reference
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener = this::onPreferenceChanged;
+    // Snapshot không đổi, mỗi lần ghi thay bằng bản mới nên đọc không cần khóa
+    private volatile Map<String, Object> snapshot;
+    private SharedPreferences.Editor pendingEditor;
+    private final Set<String> pendingKeys = new HashSet<>();
+    private boolean pendingClear;
+
+    PreferenceManager(SharedPreferences sharedPreferences, Executor applyExecutor) {
+        this.sharedPreferences = sharedPreferences;
+        this.applyExecutor = applyExecutor;
+        this.snapshot = Collections.unmodifiableMap(new HashMap<>(sharedPreferences.getAll()));
+        sharedPreferences.registerOnSharedPreferenceChangeListener(changeListener);
+    }
+
+    public static synchronized PreferenceManager getInstance(Context context) {
+        if (instance == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            instance = new PreferenceManager(openSharedPreferences(context.getApplicationContext()), mainHandler::post);
+        }
+        return instance;
+    }
+
+    // Tạo MasterKey + EncryptedSharedPreferences là phần tốn thời gian nhất, chỉ nên chạy một lần
+    static SharedPreferences openSharedPreferences(Context context) {
         try {
             MasterKey masterKey = new MasterKey.Builder(context)
                     .setKeyScheme(MasterKey.KeyScheme.AES256_GCM)
                     .build();
-            sharedPreferences = EncryptedSharedPreferences.create(
+            SharedPreferences sharedPreferences = EncryptedSharedPreferences.create(
                     context,
                     Constant.KEY_PREFERENCE_NAME,
                     masterKey,
                     EncryptedSharedPreferences.PrefKeyEncryptionScheme.AES256_SIV,
                     EncryptedSharedPreferences.PrefValueEncryptionScheme.AES256_GCM
             );
-            editor = sharedPreferences.edit();
             Log.d("PreferenceManager", "Initialized EncryptedSharedPreferences");
+            return sharedPreferences;
         } catch (Exception e) {
             Log.e("PreferenceManager", "Failed to initialize EncryptedSharedPreferences: " + e.getMessage());
-            sharedPreferences = context.getSharedPreferences(Constant.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
-            editor = sharedPreferences.edit();
             Log.d("PreferenceManager", "Fallback to regular SharedPreferences");
-        }
-        initGoogleCredentials(context);
-    }
-
-    private void initGoogleCredentials(Context context) {
-        try {
-            InputStream serviceAccountStream = context.getResources().openRawResource(R.raw.account_service);
-            googleCredentials = GoogleCredentials
-                    .fromStream(serviceAccountStream)
-                    .createScoped(Arrays.asList("https://www.googleapis.com/auth/firebase.messaging"));
-            Log.d("PreferenceManager", "Initialized GoogleCredentials");
-        } catch (IOException e) {
-            Log.e("PreferenceManager", "Failed to initialize GoogleCredentials: " + e.getMessage());
+            return context.getSharedPreferences(Constant.KEY_PREFERENCE_NAME, Context.MODE_PRIVATE);
         }
     }
 
     public void putBoolean(String key, Boolean value) {
-        editor.putBoolean(key, value).apply();
+        synchronized (this) {
+            updateSnapshot(key, value);
+            editor().putBoolean(key, value);
+        }
     }
 
     public boolean getBoolean(String key) {
-        return sharedPreferences.getBoolean(key, false);
+        Object value = snapshot.get(key);
+        return value instanceof Boolean && (Boolean) value;
     }
 
     public void putString(String key, String value) {
-        editor.putString(key, value).apply();
+        synchronized (this) {
+            updateSnapshot(key, value);
+            editor().putString(key, value);
+        }
     }
 
     public String getString(String key) {
-        return sharedPreferences.getString(key, null);
+        Object value = snapshot.get(key);
+        return value instanceof String ? (String) value : null;
     }
 
     public void clear() {
-        editor.clear().apply();
-    }
-
-    public String getAccessToken() throws IOException {
-        if (googleCredentials == null) {
-            throw new IOException("GoogleCredentials not initialized");
-        }
-        Future<String> future = executor.submit(() -> {
-            try {
-                googleCredentials.refreshIfExpired();
-                return googleCredentials.getAccessToken().getTokenValue();
-            } catch (IOException e) {
-                Log.e("PreferenceManager", "Failed to refresh access token: " + e.getMessage());
-                throw e;
-            }
-        });
-        try {
-            return future.get();
-        } catch (Exception e) {
-            Log.e("PreferenceManager", "Failed to get access token: " + e.getMessage());
-            throw new IOException("Failed to get access token", e);
+        synchronized (this) {
+            // Editor.clear() luôn chạy trước các put trong cùng editor, nên ghi hết thay đổi cũ trước
+            flush();
+            snapshot = Collections.emptyMap();
+            editor().clear();
+            pendingClear = true;
         }
     }
 
     public void saveDeviceFcmToken(String token) {
-        editor.putString(Constant.DEVICE_FCM_TOKEN, token).apply();
+        putString(Constant.DEVICE_FCM_TOKEN, token);
         Log.d("FCM_TOKEN", "Device FCM token saved: " + token);
     }
 
     public String getDeviceFcmToken() {
-        String token = sharedPreferences.getString(Constant.DEVICE_FCM_TOKEN, null);
+        String token = getString(Constant.DEVICE_FCM_TOKEN);
         Log.d("FCM_TOKEN", "Device FCM token retrieved: " + (token != null ? token : "null"));
         return token;
     }
-}
\ No newline at end of file
+
+    // Ghi các thay đổi đang chờ ra SharedPreferences bằng một lần apply()
+    public synchronized void flush() {
+        if (pendingEditor == null) {
+            return;
+        }
+        pendingEditor.apply();
+        pendingEditor = null;
+        pendingKeys.clear();
+        pendingClear = false;
+    }
+
+    private void updateSnapshot(String key, Object value) {
+        Map<String, Object> next = new HashMap<>(snapshot);
+        if (value == null) {
+            next.remove(key);
+        } else {
+            next.put(key, value);
+        }
+        snapshot = Collections.unmodifiableMap(next);
+        pendingKeys.add(key);
+    }
+
+    private SharedPreferences.Editor editor() {
+        if (pendingEditor == null) {
+            pendingEditor = sharedPreferences.edit();
+            applyExecutor.execute(this::flush);
+        }
+        return pendingEditor;
+    }
+
+    // Đồng bộ snapshot khi preferences đổi từ nơi khác; bỏ qua key còn đang chờ ghi để không đè giá trị mới bằng giá trị cũ
+    private synchronized void onPreferenceChanged(SharedPreferences preferences, String key) {
+        if (pendingClear || (key != null && pendingKeys.contains(key))) {
+            return;
+        }
+        if (key == null) {
+            // Đã clear: nếu sau đó còn thay đổi chưa ghi thì snapshot hiện tại mới là giá trị đúng
+            if (pendingEditor != null) {
+                return;
+            }
+            snapshot = Collections.unmodifiableMap(new HashMap<>(preferences.getAll()));
+            return;
+        }
+        Map<String, Object> next = new HashMap<>(snapshot);
+        Object value = readValue(preferences, key, snapshot.get(key));
+        if (value == null) {
+            next.remove(key);
+        } else {
+            next.put(key, value);
+        }
+        snapshot = Collections.unmodifiableMap(next);
+    }
+
+    // Chỉ giải mã đúng key vừa đổi; kiểu đã biết thì đọc trực tiếp, key mới thì mới cần getAll()
+    private static Object readValue(SharedPreferences preferences, String key, Object previous) {
+        if (!preferences.contains(key)) {
+            return null;
+        }
+        if (previous instanceof String) {
+            return preferences.getString(key, null);
+        }
+        if (previous instanceof Boolean) {
+            return preferences.getBoolean(key, false);
+        }
+        return preferences.getAll().get(key);
+    }
+}
@@ -0,0 +1,251 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.ProcessLifecycleOwner;
+
+import com.androids.javachat.firebase.FirestorePresenceStore;
+import com.androids.javachat.firebase.FirestoreUserSource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Trạng thái online theo vòng đời cả app (ProcessLifecycleOwner), không ghi lại mỗi lần chuyển activity
+// Foreground: ghi availability=1 + lastSeen rồi heartbeat mỗi HEARTBEAT_MILLIS; background: chờ DEBOUNCE_MILLIS mới ghi 0
+// Bên xem chỉ coi là online khi availability=1 và lastSeen chưa quá ONLINE_TTL_MILLIS, nên client bị crash tự hết online
+// Mỗi người được theo dõi chỉ có một snapshot listener, dùng chung cho mọi observer
+public class PresenceService {
+
+    public interface Store {
+        void write(String userId, boolean online);
+
+        Registration listen(String userId, SnapshotListener listener);
+    }
+
+    public interface SnapshotListener {
+        // lastSeen = 0 nếu document chưa có trường này
+        void onSnapshot(boolean available, long lastSeen);
+    }
+
+    public interface Registration {
+        void remove();
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    public interface Observer {
+        void onPresenceChanged(boolean online, long lastSeen);
+    }
+
+    static final long DEBOUNCE_MILLIS = 5000;
+    static final long HEARTBEAT_MILLIS = 60 * 1000;
+    // Rộng hơn hai nhịp heartbeat để chịu được một lần ghi trễ và lệch đồng hồ nhỏ giữa hai máy
+    static final long ONLINE_TTL_MILLIS = HEARTBEAT_MILLIS * 5 / 2;
+
+    private static PresenceService instance;
+
+    private final Store store;
+    private final Scheduler scheduler;
+    private final Executor callbackExecutor;
+    private final LongSupplier clock;
+    private final Supplier<String> currentUserId;
+    private final Map<String, Watch> watches = new HashMap<>();
+    private boolean foreground = false;
+    // User đang được ghi là online trên server, null nếu đã ghi offline
+    private String onlineUserId;
+    private long lastWriteAt;
+    // Tăng mỗi lần chuyển trạng thái; task hẹn giờ của trạng thái cũ thấy khác generation thì bỏ qua
+    private int generation = 0;
+
+    // Một listener Firestore cho mỗi người được theo dõi
+    private static class Watch {
+        final List<Observer> observers = new ArrayList<>();
+        Registration registration;
+        boolean hasSnapshot;
+        boolean available;
+        long lastSeen;
+        boolean online;
+    }
+
+    PresenceService(Store store, Scheduler scheduler, Executor callbackExecutor, LongSupplier clock,
+                    Supplier<String> currentUserId) {
+        this.store = store;
+        this.scheduler = scheduler;
+        this.callbackExecutor = callbackExecutor;
+        this.clock = clock;
+        this.currentUserId = currentUserId;
+    }
+
+    // Gọi trên main thread (đăng ký observer cho ProcessLifecycleOwner)
+    public static synchronized PresenceService getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            UserRepository userRepository = UserRepository.getInstance(appContext);
+            PreferenceManager preferenceManager = PreferenceManager.getInstance(appContext);
+            ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+            PresenceService service = new PresenceService(
+                    // Listener presence đọc cả document user nên cũng làm mới cache hồ sơ (token, ảnh)
+                    new FirestorePresenceStore(document -> userRepository.put(FirestoreUserSource.toUser(document))),
+                    (task, delayMillis) -> executor.schedule(task, delayMillis, TimeUnit.MILLISECONDS),
+                    ContextCompat.getMainExecutor(appContext),
+                    System::currentTimeMillis,
+                    () -> preferenceManager.getString(Constant.KEY_USER_ID));
+            ProcessLifecycleOwner.get().getLifecycle().addObserver(new DefaultLifecycleObserver() {
+                @Override
+                public void onStart(@NonNull LifecycleOwner owner) {
+                    service.onForeground();
+                }
+
+                @Override
+                public void onStop(@NonNull LifecycleOwner owner) {
+                    service.onBackground();
+                }
+            });
+            instance = service;
+        }
+        return instance;
+    }
+
+    // Gọi sau khi đăng nhập: app đã ở foreground thì ProcessLifecycleOwner không báo lại onStart
+    public synchronized void start() {
+        if (foreground && onlineUserId == null) {
+            beat(++generation);
+        }
+    }
+
+    synchronized void onForeground() {
+        foreground = true;
+        int current = ++generation;
+        if (onlineUserId == null) {
+            beat(current);
+        } else {
+            // Quay lại trước khi hết debounce: server vẫn thấy online, chỉ nối tiếp nhịp heartbeat cũ
+            scheduler.schedule(() -> beat(current),
+                    Math.max(0, lastWriteAt + HEARTBEAT_MILLIS - clock.getAsLong()));
+        }
+    }
+
+    synchronized void onBackground() {
+        foreground = false;
+        int current = ++generation;
+        scheduler.schedule(() -> goOffline(current), DEBOUNCE_MILLIS);
+    }
+
+    // Ghi offline ngay, trước khi FirebaseAuth.signOut() làm mất quyền ghi document
+    public synchronized void signOut(String userId) {
+        generation++;
+        String target = userId != null ? userId : onlineUserId;
+        if (target != null) {
+            store.write(target, false);
+        }
+        onlineUserId = null;
+    }
+
+    private synchronized void beat(int expected) {
+        if (expected != generation || !foreground) {
+            return;
+        }
+        String userId = currentUserId.get();
+        if (userId == null) {
+            return;
+        }
+        store.write(userId, true);
+        onlineUserId = userId;
+        lastWriteAt = clock.getAsLong();
+        scheduler.schedule(() -> beat(expected), HEARTBEAT_MILLIS);
+    }
+
+    private synchronized void goOffline(int expected) {
+        if (expected != generation || onlineUserId == null) {
+            return;
+        }
+        store.write(onlineUserId, false);
+        onlineUserId = null;
+    }
+
+    // Observer nhận trạng thái hiện tại ngay nếu đã có snapshot, sau đó chỉ khi online/offline đổi
+    public synchronized Registration observe(String userId, Observer observer) {
+        Watch watch = watches.get(userId);
+        if (watch == null) {
+            Watch created = new Watch();
+            created.observers.add(observer);
+            watches.put(userId, created);
+            created.registration = store.listen(userId,
+                    (available, lastSeen) -> onSnapshot(userId, created, available, lastSeen));
+            return () -> unobserve(userId, created, observer);
+        }
+        watch.observers.add(observer);
+        if (watch.hasSnapshot) {
+            boolean online = watch.online;
+            long lastSeen = watch.lastSeen;
+            callbackExecutor.execute(() -> observer.onPresenceChanged(online, lastSeen));
+        }
+        return () -> unobserve(userId, watch, observer);
+    }
+
+    private synchronized void unobserve(String userId, Watch watch, Observer observer) {
+        if (!watch.observers.remove(observer) || !watch.observers.isEmpty()) {
+            return;
+        }
+        if (watches.get(userId) == watch) {
+            watches.remove(userId);
+        }
+        if (watch.registration != null) {
+            watch.registration.remove();
+        }
+    }
+
+    synchronized int watchedUserCount() {
+        return watches.size();
+    }
+
+    private synchronized void onSnapshot(String userId, Watch watch, boolean available, long lastSeen) {
+        if (watches.get(userId) != watch) {
+            return;
+        }
+        boolean first = !watch.hasSnapshot;
+        watch.hasSnapshot = true;
+        watch.available = available;
+        watch.lastSeen = lastSeen;
+        evaluate(userId, watch, first);
+    }
+
+    private void evaluate(String userId, Watch watch, boolean notifyAlways) {
+        long now = clock.getAsLong();
+        boolean online = watch.available && watch.lastSeen > 0 && now - watch.lastSeen < ONLINE_TTL_MILLIS;
+        if (online) {
+            // Không có heartbeat mới trước khi hết TTL thì tự chuyển sang offline
+            long seen = watch.lastSeen;
+            scheduler.schedule(() -> expire(userId, watch, seen), seen + ONLINE_TTL_MILLIS - now);
+        }
+        if (!notifyAlways && online == watch.online) {
+            return;
+        }
+        watch.online = online;
+        long lastSeen = watch.lastSeen;
+        for (Observer observer : new ArrayList<>(watch.observers)) {
+            callbackExecutor.execute(() -> observer.onPresenceChanged(online, lastSeen));
+        }
+    }
+
+    private synchronized void expire(String userId, Watch watch, long seen) {
+        if (watches.get(userId) != watch || watch.lastSeen != seen) {
+            return;
+        }
+        evaluate(userId, watch, false);
+    }
+}
@@ -0,0 +1,142 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+// Token bucket không khóa: tối đa maxPermits lượt liên tiếp, sau đó hồi một lượt mỗi windowMillis / maxPermits
+// Toàn bộ trạng thái là một mốc thời gian (GCRA) trong AtomicLong nên kiểm tra và trừ lượt là một lần CAS
+// Trạng thái chỉ được ghi ra preferences định kỳ hoặc khi gọi persist(), không ghi mỗi lần gửi
+public class RateLimiter {
+
+    public interface Store {
+        String load();
+
+        void save(String state);
+    }
+
+    static final long PERSIST_INTERVAL_MS = 10 * 1000;
+
+    private static RateLimiter messageLimiter;
+    private static RateLimiter loginLimiter;
+
+    private final long intervalMillis;
+    private final long burstMillis;
+    private final Store store;
+    private final LongSupplier clock;
+    // Thời điểm bucket đầy trở lại; nhỏ hơn hiện tại nghĩa là còn đủ maxPermits lượt
+    private final AtomicLong theoreticalArrival = new AtomicLong();
+    private final AtomicLong lastPersistedAt;
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    public RateLimiter(int maxPermits, long windowMillis, Store store, LongSupplier clock) {
+        this.intervalMillis = Math.max(1, windowMillis / maxPermits);
+        this.burstMillis = intervalMillis * maxPermits;
+        this.store = store;
+        this.clock = clock;
+        this.lastPersistedAt = new AtomicLong(clock.getAsLong());
+        theoreticalArrival.set(restore(store.load()));
+    }
+
+    public static synchronized RateLimiter forMessages(Context context) {
+        if (messageLimiter == null) {
+            messageLimiter = new RateLimiter(Constant.MAX_MESSAGES_PER_MINUTE, Constant.RATE_LIMIT_WINDOW,
+                    preferenceStore(PreferenceManager.getInstance(context), Constant.KEY_MESSAGE_RATE_LIMIT),
+                    System::currentTimeMillis);
+        }
+        return messageLimiter;
+    }
+
+    public static synchronized RateLimiter forLogins(Context context) {
+        if (loginLimiter == null) {
+            loginLimiter = new RateLimiter(Constant.MAX_LOGIN_ATTEMPTS, Constant.ATTEMPT_WINDOW,
+                    preferenceStore(PreferenceManager.getInstance(context), Constant.KEY_LOGIN_RATE_LIMIT),
+                    System::currentTimeMillis);
+        }
+        return loginLimiter;
+    }
+
+    public static Store preferenceStore(PreferenceManager preferenceManager, String key) {
+        return new Store() {
+            @Override
+            public String load() {
+                return preferenceManager.getString(key);
+            }
+
+            @Override
+            public void save(String state) {
+                preferenceManager.putString(key, state);
+            }
+        };
+    }
+
+    // Lấy một lượt nếu còn; kiểm tra và trừ lượt là nguyên tử nên nhiều thread gửi cùng lúc không vượt giới hạn
+    public boolean tryAcquire() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = clampToWindow(now);
+            long next = Math.max(current, now) + intervalMillis;
+            if (next - now > burstMillis) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                dirty.set(true);
+                persistPeriodically(now);
+                return true;
+            }
+        }
+    }
+
+    // Chỉ kiểm tra, không trừ lượt
+    public boolean canAcquire() {
+        long now = clock.getAsLong();
+        return Math.max(clampToWindow(now), now) + intervalMillis - now <= burstMillis;
+    }
+
+    public void reset() {
+        theoreticalArrival.set(0);
+        dirty.set(true);
+        persist();
+    }
+
+    // Ghi trạng thái ra store nếu có thay đổi chưa ghi
+    public void persist() {
+        if (dirty.getAndSet(false)) {
+            lastPersistedAt.set(clock.getAsLong());
+            store.save(String.valueOf(theoreticalArrival.get()));
+        }
+    }
+
+    // Đồng hồ tiến thì bucket chỉ đầy lại tối đa maxPermits (nhờ max với now);
+    // đồng hồ lùi thì kéo mốc về now + burst để không khóa lâu hơn một cửa sổ
+    private long clampToWindow(long now) {
+        while (true) {
+            long current = theoreticalArrival.get();
+            long limit = now + burstMillis;
+            if (current <= limit || theoreticalArrival.compareAndSet(current, limit)) {
+                return Math.min(current, limit);
+            }
+        }
+    }
+
+    private void persistPeriodically(long now) {
+        long last = lastPersistedAt.get();
+        if (Math.abs(now - last) >= PERSIST_INTERVAL_MS && lastPersistedAt.compareAndSet(last, now)) {
+            persist();
+        }
+    }
+
+    private static long restore(String state) {
+        if (state == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(state);
+        } catch (NumberFormatException e) {
+            // Trạng thái hỏng thì coi như bucket đầy
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.User;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+// Trie theo tên đã chuẩn hóa của các người dùng đã thấy, để tìm kiếm cục bộ ngay khi gõ trong lúc chờ Firestore
+// Chỉ khớp tiền tố của cả tên đã chuẩn hóa, giống truy vấn khoảng nameLower trên Firestore,
+// để kết quả cục bộ không khác kết quả mạng thay thế nó ngay sau đó
+public class UserPrefixIndex {
+
+    private static final Pattern COMBINING_MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static class Node {
+        // TreeMap để duyệt theo thứ tự chữ cái, kết quả ra đúng thứ tự tên
+        final TreeMap<Character, Node> children = new TreeMap<>();
+        final Set<String> userIds = new LinkedHashSet<>();
+    }
+
+    private final Node root = new Node();
+    private final Map<String, User> users = new HashMap<>();
+    private final Map<String, String> keyByUser = new HashMap<>();
+
+    // Chuẩn hóa tên cho tìm kiếm: chữ thường, bỏ dấu tiếng Việt, gộp khoảng trắng
+    // Cùng quy tắc với trường nameLower trên Firestore
+    public static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = Normalizer.normalize(name.trim(), Normalizer.Form.NFD);
+        String stripped = COMBINING_MARKS.matcher(decomposed).replaceAll("")
+                .replace('đ', 'd').replace('Đ', 'D');
+        return WHITESPACE.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ");
+    }
+
+    public synchronized int size() {
+        return users.size();
+    }
+
+    // Thêm hoặc cập nhật (người dùng đổi tên thì khóa cũ bị gỡ)
+    public synchronized void put(User user) {
+        if (user == null || user.id == null) {
+            return;
+        }
+        remove(user.id);
+        String normalized = normalize(user.name);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < normalized.length(); i++) {
+            node = node.children.computeIfAbsent(normalized.charAt(i), c -> new Node());
+        }
+        node.userIds.add(user.id);
+        users.put(user.id, user);
+        keyByUser.put(user.id, normalized);
+    }
+
+    public synchronized void putAll(List<User> userList) {
+        for (User user : userList) {
+            put(user);
+        }
+    }
+
+    public synchronized void remove(String userId) {
+        String key = keyByUser.remove(userId);
+        users.remove(userId);
+        if (key == null) {
+            return;
+        }
+        Node node = root;
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node != null) {
+            node.userIds.remove(userId);
+        }
+    }
+
+    // Tối đa limit người dùng có tên bắt đầu bằng prefix
+    public synchronized List<User> search(String prefix, int limit) {
+        List<User> result = new ArrayList<>();
+        Node node = root;
+        String key = normalize(prefix);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.children.get(key.charAt(i));
+        }
+        if (node == null) {
+            return result;
+        }
+        collect(node, new LinkedHashSet<>(), result, limit);
+        return result;
+    }
+
+    private void collect(Node node, Set<String> seen, List<User> result, int limit) {
+        for (String userId : node.userIds) {
+            if (result.size() >= limit) {
+                return;
+            }
+            if (seen.add(userId)) {
+                result.add(users.get(userId));
+            }
+        }
+        for (Node child : node.children.values()) {
+            if (result.size() >= limit) {
+                return;
+            }
+            collect(child, seen, result, limit);
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.androids.javachat.utilities;
+
+import android.content.Context;
+
+import androidx.core.content.ContextCompat;
+
+import com.androids.javachat.database.ChatDatabase;
+import com.androids.javachat.database.UserDao;
+import com.androids.javachat.firebase.FirestoreUserSource;
+import com.androids.javachat.models.CachedUser;
+import com.androids.javachat.models.User;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.function.LongSupplier;
+
+// Hồ sơ người dùng (tên, ảnh, FCM token) dùng chung cho chat, tìm kiếm người dùng và thông báo
+// Đọc theo thứ tự: LRU trong bộ nhớ -> bảng users trên đĩa -> Firestore; bản còn hạn TTL thì không gọi mạng
+// Nhiều lượt get cùng một id khi đang tải chỉ tạo một request; snapshot listener gọi put() để cập nhật ngay
+public class UserRepository {
+
+    public interface Callback<T> {
+        void onSuccess(T result);
+
+        void onFailure(Exception e);
+    }
+
+    public interface Source {
+        void fetch(String userId, Callback<User> callback);
+    }
+
+    static final int MAX_MEMORY_ENTRIES = 200;
+    static final long TTL_MS = 60 * 60 * 1000;
+    static final int MAX_INDEXED_USERS = 5000;
+
+    private static UserRepository instance;
+
+    private final UserDao userDao;
+    private final Source source;
+    private final Executor ioExecutor;
+    private final Executor callbackExecutor;
+    private final LongSupplier clock;
+    private final Map<String, CachedUser> memory = new LinkedHashMap<String, CachedUser>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+            return size() > MAX_MEMORY_ENTRIES;
+        }
+    };
+    private final Map<String, List<Callback<User>>> inFlight = new HashMap<>();
+    // Mọi hồ sơ đã xác minh từng được lưu, để tìm theo tên mà không cần mạng
+    private final UserPrefixIndex prefixIndex = new UserPrefixIndex();
+    private boolean indexLoaded = false;
+
+    UserRepository(UserDao userDao, Source source, Executor ioExecutor, Executor callbackExecutor, LongSupplier clock) {
+        this.userDao = userDao;
+        this.source = source;
+        this.ioExecutor = ioExecutor;
+        this.callbackExecutor = callbackExecutor;
+        this.clock = clock;
+    }
+
+    public static synchronized UserRepository getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new UserRepository(ChatDatabase.getInstance(appContext).userDao(),
+                    new FirestoreUserSource(),
+                    Executors.newSingleThreadExecutor(),
+                    ContextCompat.getMainExecutor(appContext),
+                    System::currentTimeMillis);
+        }
+        return instance;
+    }
+
+    // Chỉ đọc bộ nhớ, không chạm đĩa hay mạng; null nếu chưa có hoặc đã hết hạn
+    public synchronized User peek(String userId) {
+        CachedUser cachedUser = memory.get(userId);
+        return cachedUser != null && isFresh(cachedUser) ? cachedUser.toUser() : null;
+    }
+
+    // Callback chạy trên callbackExecutor (main thread)
+    public void get(String userId, Callback<User> callback) {
+        User cached = peek(userId);
+        if (cached != null) {
+            callbackExecutor.execute(() -> callback.onSuccess(cached));
+            return;
+        }
+        synchronized (this) {
+            List<Callback<User>> waiting = inFlight.get(userId);
+            if (waiting != null) {
+                waiting.add(callback);
+                return;
+            }
+            waiting = new ArrayList<>();
+            waiting.add(callback);
+            inFlight.put(userId, waiting);
+        }
+        ioExecutor.execute(() -> {
+            CachedUser stored = userDao.get(userId);
+            if (stored != null && isFresh(stored)) {
+                remember(stored);
+                complete(userId, stored.toUser(), null);
+                return;
+            }
+            source.fetch(userId, new Callback<User>() {
+                @Override
+                public void onSuccess(User user) {
+                    put(user);
+                    complete(userId, user, null);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    // Mất mạng: bản cũ trên đĩa vẫn tốt hơn không có gì
+                    complete(userId, stored != null ? stored.toUser() : null, e);
+                }
+            });
+        });
+    }
+
+    // Nạp các hồ sơ trên đĩa vào trie (một lần mỗi process); onLoaded chạy trên callbackExecutor
+    public void loadIndex(Runnable onLoaded) {
+        ioExecutor.execute(() -> {
+            synchronized (this) {
+                if (indexLoaded) {
+                    callbackExecutor.execute(onLoaded);
+                    return;
+                }
+                indexLoaded = true;
+            }
+            List<User> users = new ArrayList<>();
+            for (CachedUser cachedUser : userDao.getVerified(MAX_INDEXED_USERS)) {
+                users.add(cachedUser.toUser());
+            }
+            prefixIndex.putAll(users);
+            callbackExecutor.execute(onLoaded);
+        });
+    }
+
+    // Tìm trong bộ nhớ, gọi được trên main thread; không xét TTL vì chỉ dùng để hiển thị tạm trong lúc chờ Firestore
+    public List<User> searchCached(String prefix, int limit) {
+        return prefixIndex.search(prefix, limit);
+    }
+
+    public void put(User user) {
+        List<User> users = new ArrayList<>();
+        users.add(user);
+        putAll(users);
+    }
+
+    public void putAll(List<User> users) {
+        long now = clock.getAsLong();
+        List<CachedUser> cachedUsers = new ArrayList<>(users.size());
+        for (User user : users) {
+            if (user != null && user.id != null) {
+                cachedUsers.add(CachedUser.from(user, now));
+            }
+        }
+        synchronized (this) {
+            for (CachedUser cachedUser : cachedUsers) {
+                memory.put(cachedUser.id, cachedUser);
+            }
+        }
+        for (User user : users) {
+            if (user != null && user.id != null && user.isEmailVerified) {
+                prefixIndex.put(user);
+            }
+        }
+        ioExecutor.execute(() -> userDao.insertAll(cachedUsers));
+    }
+
+    // Ví dụ khi FCM báo token không còn hợp lệ
+    public void invalidate(String userId) {
+        synchronized (this) {
+            memory.remove(userId);
+        }
+        prefixIndex.remove(userId);
+        ioExecutor.execute(() -> userDao.delete(userId));
+    }
+
+    private synchronized void remember(CachedUser cachedUser) {
+        memory.put(cachedUser.id, cachedUser);
+    }
+
+    private boolean isFresh(CachedUser cachedUser) {
+        return clock.getAsLong() - cachedUser.fetchedAt < TTL_MS;
+    }
+
+    private void complete(String userId, User user, Exception error) {
+        List<Callback<User>> waiting;
+        synchronized (this) {
+            waiting = inFlight.remove(userId);
+        }
+        if (waiting == null) {
+            return;
+        }
+        for (Callback<User> callback : waiting) {
+            callbackExecutor.execute(() -> {
+                if (user != null) {
+                    callback.onSuccess(user);
+                } else {
+                    callback.onFailure(error);
+                }
+            });
+        }
+    }
+}
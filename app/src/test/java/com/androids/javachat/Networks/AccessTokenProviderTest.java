@@ -0,0 +1,154 @@
+package com.androids.javachat.Networks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class AccessTokenProviderTest {
+
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    private ScheduledExecutorService executor;
+    private AtomicLong now;
+    private AtomicInteger fetches;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        now = new AtomicLong(1_000_000);
+        fetches = new AtomicInteger();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallers_shareOneFetch() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AccessTokenProvider provider = new AccessTokenProvider(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            return token(HOUR_MS);
+        }, executor, now::get);
+
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(provider.getTokenAsync());
+        }
+        release.countDown();
+        for (CompletableFuture<String> future : futures) {
+            assertEquals("token-1", future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    public void cachedToken_isReturnedWithoutFetchUntilNearExpiry() throws Exception {
+        AccessTokenProvider provider = new AccessTokenProvider(() -> token(HOUR_MS), executor, now::get);
+        assertEquals("token-1", provider.getToken());
+
+        now.addAndGet(HOUR_MS - AccessTokenProvider.EXPIRY_MARGIN_MS - 1);
+        CompletableFuture<String> cached = provider.getTokenAsync();
+        assertTrue(cached.isDone());
+        assertEquals("token-1", cached.get());
+
+        now.addAndGet(1);
+        assertEquals("token-2", provider.getToken());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void token_isRefreshedInBackgroundBeforeExpiry() throws Exception {
+        RecordingExecutor recordingExecutor = new RecordingExecutor();
+        executor.shutdownNow();
+        executor = recordingExecutor;
+        CountDownLatch refreshed = new CountDownLatch(2);
+        AccessTokenProvider provider = new AccessTokenProvider(() -> {
+            refreshed.countDown();
+            return token(HOUR_MS);
+        }, executor, now::get);
+
+        assertEquals("token-1", provider.getToken());
+        // Lần làm mới được lên lịch trước khi hết hạn REFRESH_AHEAD_MS; executor chạy ngay lần đầu để không phải chờ
+        assertTrue(refreshed.await(5, TimeUnit.SECONDS));
+        assertEquals(HOUR_MS - AccessTokenProvider.REFRESH_AHEAD_MS, (long) recordingExecutor.delays.get(0));
+        CompletableFuture<String> cached;
+        do {
+            cached = provider.getTokenAsync();
+        } while (!"token-2".equals(cached.get(5, TimeUnit.SECONDS)));
+        assertTrue(cached.isDone());
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    public void refreshToken_replacesCachedToken() throws Exception {
+        AccessTokenProvider provider = new AccessTokenProvider(() -> token(HOUR_MS), executor, now::get);
+        assertEquals("token-1", provider.getToken());
+        assertEquals("token-2", provider.refreshToken());
+        assertEquals("token-2", provider.getToken());
+    }
+
+    @Test
+    public void failedFetch_isReportedAndRetriedOnNextCall() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        AccessTokenProvider provider = new AccessTokenProvider(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IOException("offline");
+            }
+            return token(HOUR_MS);
+        }, executor, now::get);
+
+        try {
+            provider.getTokenAsync().get(5, TimeUnit.SECONDS);
+            fail("Expected the first fetch to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("token-1", provider.getToken());
+    }
+
+    // Ghi lại độ trễ được lên lịch, chạy ngay lần đầu và giữ nguyên độ trễ cho các lần sau
+    // (execute() cũng đi qua schedule với độ trễ 0 nên không tính)
+    private static class RecordingExecutor extends ScheduledThreadPoolExecutor {
+        final List<Long> delays = new CopyOnWriteArrayList<>();
+
+        RecordingExecutor() {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            if (delay == 0) {
+                return super.schedule(command, 0, unit);
+            }
+            delays.add(unit.toMillis(delay));
+            return super.schedule(command, delays.size() == 1 ? 0 : delay, unit);
+        }
+    }
+
+    private AccessTokenProvider.Token token(long lifetimeMs) {
+        return new AccessTokenProvider.Token("token-" + fetches.incrementAndGet(), now.get() + lifetimeMs);
+    }
+}
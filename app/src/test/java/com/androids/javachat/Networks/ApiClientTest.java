@@ -0,0 +1,103 @@
+package com.androids.javachat.Networks;
+
+import com.androids.javachat.models.MessageRequest;
+import com.androids.javachat.models.MessageResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class ApiClientTest {
+
+    private static final int SENDS = 100;
+
+    private MockWebServer server;
+    private AtomicInteger tokenFetches;
+    private ApiService apiService;
+    private OkHttpClient client;
+    private ScheduledExecutorService tokenExecutor;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+        tokenFetches = new AtomicInteger();
+        tokenExecutor = Executors.newSingleThreadScheduledExecutor();
+        AccessTokenProvider tokenProvider = new AccessTokenProvider(
+                () -> new AccessTokenProvider.Token("token-" + tokenFetches.incrementAndGet(), Long.MAX_VALUE),
+                tokenExecutor, System::currentTimeMillis);
+        client = ApiClient.createClient(tokenProvider, false);
+        apiService = ApiClient.createRetrofit(server.url("/").toString(), client).create(ApiService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+        tokenExecutor.shutdownNow();
+    }
+
+    @Test
+    public void sends_reuseOneConnectionAndCachedToken() throws Exception {
+        for (int i = 0; i < SENDS; i++) {
+            server.enqueue(new MockResponse().setBody("{\"name\":\"projects/test/messages/" + i + "\"}"));
+        }
+
+        for (int i = 0; i < SENDS; i++) {
+            Response<MessageResponse> response = apiService.sendNotification(request()).execute();
+            assertTrue(response.isSuccessful());
+        }
+
+        assertEquals(SENDS, server.getRequestCount());
+        for (int i = 0; i < SENDS; i++) {
+            RecordedRequest recorded = server.takeRequest();
+            assertEquals("Bearer token-1", recorded.getHeader("Authorization"));
+            // sequenceNumber đếm theo từng kết nối: tăng liên tục nghĩa là cùng một kết nối
+            assertEquals(i, recorded.getSequenceNumber());
+        }
+        assertEquals(1, client.connectionPool().connectionCount());
+        assertEquals(1, tokenFetches.get());
+    }
+
+    @Test
+    public void unauthorized_refreshesTokenAndRetriesOnce() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setBody("{\"name\":\"projects/test/messages/1\"}"));
+
+        Response<MessageResponse> response = apiService.sendNotification(request()).execute();
+
+        assertTrue(response.isSuccessful());
+        assertEquals("Bearer token-1", server.takeRequest().getHeader("Authorization"));
+        assertEquals("Bearer token-2", server.takeRequest().getHeader("Authorization"));
+        assertEquals(2, tokenFetches.get());
+    }
+
+    @Test
+    public void unauthorizedAfterRefresh_givesUp() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(401));
+        server.enqueue(new MockResponse().setResponseCode(401));
+
+        Response<MessageResponse> response = apiService.sendNotification(request()).execute();
+
+        assertEquals(401, response.code());
+        assertEquals(2, server.getRequestCount());
+    }
+
+    private static MessageRequest request() {
+        HashMap<String, String> data = new HashMap<>();
+        data.put("title", "JavaChat");
+        return new MessageRequest(new MessageRequest.Message("receiver-token", data));
+    }
+}
@@ -0,0 +1,98 @@
+package com.androids.javachat.Networks;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class NotificationCoalescerTest {
+
+    private long now;
+    private List<long[]> dueTimes;
+    private List<Runnable> tasks;
+    private List<NotificationCoalescer.Burst> sent;
+    private NotificationCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        now = 0;
+        dueTimes = new ArrayList<>();
+        tasks = new ArrayList<>();
+        sent = new ArrayList<>();
+        coalescer = new NotificationCoalescer(sent::add, (task, delayMillis) -> {
+            dueTimes.add(new long[]{now + delayMillis});
+            tasks.add(task);
+        }, () -> now);
+    }
+
+    @Test
+    public void burstToOneRecipient_sendsOneNotificationWithCount() {
+        for (int i = 0; i < 10; i++) {
+            coalescer.submit("bob", "token-bob", "alice", "Alice");
+            advance(100);
+        }
+        advance(NotificationCoalescer.QUIET_MILLIS);
+
+        assertEquals(1, sent.size());
+        assertEquals(10, sent.get(0).count);
+        assertEquals("token-bob", sent.get(0).recipientToken);
+    }
+
+    @Test
+    public void separateRecipients_areNotMerged() {
+        coalescer.submit("bob", "token-bob", "alice", "Alice");
+        coalescer.submit("carol", "token-carol", "alice", "Alice");
+        advance(NotificationCoalescer.QUIET_MILLIS);
+
+        assertEquals(2, sent.size());
+        assertEquals(1, sent.get(0).count);
+        assertEquals(1, sent.get(1).count);
+    }
+
+    @Test
+    public void continuousTyping_isFlushedAfterMaxDelay() {
+        for (int i = 0; i < 20; i++) {
+            coalescer.submit("bob", null, "alice", "Alice");
+            advance(NotificationCoalescer.QUIET_MILLIS - 1);
+        }
+
+        // Không bao giờ im lặng đủ lâu nhưng vẫn phải gửi sau MAX_DELAY_MILLIS
+        assertFalse(sent.isEmpty());
+        assertTrue(sent.size() < 20);
+        advance(NotificationCoalescer.MAX_DELAY_MILLIS);
+        assertEquals(20, sent.stream().mapToInt(burst -> burst.count).sum());
+    }
+
+    @Test
+    public void messageAfterFlush_startsNewBurst() {
+        coalescer.submit("bob", "token-bob", "alice", "Alice");
+        advance(NotificationCoalescer.QUIET_MILLIS);
+        coalescer.submit("bob", "token-bob", "alice", "Alice");
+        advance(NotificationCoalescer.QUIET_MILLIS);
+
+        assertEquals(2, sent.size());
+        assertEquals(1, sent.get(1).count);
+    }
+
+    // Chạy các lượt hẹn giờ tới hạn theo thứ tự thời gian
+    private void advance(long millis) {
+        long target = now + millis;
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i)[0] <= target && (next < 0 || dueTimes.get(i)[0] < dueTimes.get(next)[0])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = Math.max(now, dueTimes.remove(next)[0]);
+            tasks.remove(next).run();
+        }
+        now = target;
+    }
+}
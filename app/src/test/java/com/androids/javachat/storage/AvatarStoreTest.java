@@ -0,0 +1,140 @@
+package com.androids.javachat.storage;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class AvatarStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File blobDirectory;
+    private File cacheDirectory;
+    private CountingBlobStore blobStore;
+    private AvatarStore avatarStore;
+
+    @Before
+    public void setUp() throws Exception {
+        blobDirectory = folder.newFolder("blobs");
+        cacheDirectory = folder.newFolder("cache");
+        blobStore = new CountingBlobStore(new LocalBlobStore(blobDirectory));
+        avatarStore = new AvatarStore(blobStore, cacheDirectory, Runnable::run);
+    }
+
+    @Test
+    public void upload_sameContentIsStoredOnceUnderItsHash() {
+        byte[] image = "jpeg-bytes".getBytes(StandardCharsets.UTF_8);
+        String hash = AvatarStore.hashOf(image);
+
+        String firstUrl = upload(hash, image);
+        String secondUrl = upload(hash, image.clone());
+
+        assertEquals(64, hash.length());
+        assertEquals(firstUrl, secondUrl);
+        assertEquals(1, blobDirectory.listFiles().length);
+        assertTrue(new File(blobDirectory, hash).exists());
+    }
+
+    @Test
+    public void fetch_readsDiskCacheWithoutTouchingBlobStore() {
+        byte[] image = "jpeg-bytes".getBytes(StandardCharsets.UTF_8);
+        String hash = AvatarStore.hashOf(image);
+        upload(hash, image);
+
+        for (int i = 0; i < 3; i++) {
+            assertArrayEquals(image, fetch(hash));
+        }
+        assertEquals(0, blobStore.gets.get());
+    }
+
+    @Test
+    public void fetch_downloadsOnceThenServesFromDisk() throws Exception {
+        byte[] image = "other-device".getBytes(StandardCharsets.UTF_8);
+        String hash = AvatarStore.hashOf(image);
+        Files.write(new File(blobDirectory, hash).toPath(), image);
+
+        assertArrayEquals(image, fetch(hash));
+        assertArrayEquals(image, fetch(hash));
+        assertEquals(1, blobStore.gets.get());
+        assertTrue(new File(cacheDirectory, hash).exists());
+    }
+
+    @Test
+    public void fetch_rejectsContentThatDoesNotMatchHash() throws Exception {
+        String hash = AvatarStore.hashOf("expected".getBytes(StandardCharsets.UTF_8));
+        Files.write(new File(blobDirectory, hash).toPath(), "tampered".getBytes(StandardCharsets.UTF_8));
+
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        avatarStore.fetch(hash, new BlobStore.Callback<byte[]>() {
+            @Override
+            public void onSuccess(byte[] result) {
+                fail("Tampered content must not be returned");
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                failure.set(e);
+            }
+        });
+        assertNotNull(failure.get());
+        assertFalse(new File(cacheDirectory, hash).exists());
+    }
+
+    private String upload(String hash, byte[] image) {
+        AtomicReference<String> url = new AtomicReference<>();
+        avatarStore.upload(hash, image, callback(url));
+        assertNotNull(url.get());
+        return url.get();
+    }
+
+    private byte[] fetch(String hash) {
+        AtomicReference<byte[]> data = new AtomicReference<>();
+        avatarStore.fetch(hash, callback(data));
+        assertNotNull(data.get());
+        return data.get();
+    }
+
+    private static <T> BlobStore.Callback<T> callback(AtomicReference<T> result) {
+        return new BlobStore.Callback<T>() {
+            @Override
+            public void onSuccess(T value) {
+                result.set(value);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                throw new AssertionError(e);
+            }
+        };
+    }
+
+    private static class CountingBlobStore implements BlobStore {
+        private final BlobStore delegate;
+        private final AtomicInteger gets = new AtomicInteger();
+
+        CountingBlobStore(BlobStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void put(String hash, byte[] data, Callback<String> callback) {
+            delegate.put(hash, data, callback);
+        }
+
+        @Override
+        public void get(String hash, Callback<byte[]> callback) {
+            gets.incrementAndGet();
+            delegate.get(hash, callback);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.database.MessageDao;
+import com.androids.javachat.models.ChatMessage;
+import com.androids.javachat.models.EncryptedMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ChatMessagePipelineTest {
+
+    private static final int SNAPSHOT_SIZE = 5000;
+    private static final String FAILED_TEXT = "Không thể giải mã tin nhắn";
+
+    private ExecutorService workerExecutor;
+    private ExecutorService mainExecutor;
+    private Thread mainThread;
+    private MessageCrypto messageCrypto;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        messageCrypto = new MessageCrypto();
+        messageCrypto.setKey(Base64.getEncoder().encodeToString(keyBytes));
+        workerExecutor = Executors.newSingleThreadExecutor();
+        mainExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            mainThread = new Thread(runnable, "fake-main");
+            return mainThread;
+        });
+    }
+
+    @After
+    public void tearDown() {
+        workerExecutor.shutdownNow();
+        mainExecutor.shutdownNow();
+    }
+
+    @Test
+    public void largeSnapshot_isDecodedOffMainThreadAndDeliveredInOneBatch() throws Exception {
+        List<EncryptedMessage> snapshot = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (int i = SNAPSHOT_SIZE - 1; i >= 0; i--) {
+            EncryptedMessage encryptedMessage = new EncryptedMessage();
+            encryptedMessage.id = "msg" + i;
+            encryptedMessage.senderId = i % 2 == 0 ? "alice" : "bob";
+            encryptedMessage.receiverId = i % 2 == 0 ? "bob" : "alice";
+            encryptedMessage.conversationKey = "alice_bob";
+            encryptedMessage.payload = messageCrypto.encrypt(encryptedMessage.conversationKey, "Tin nhắn \\u003C" + i + "\\u003E");
+            encryptedMessage.timestamp = now + i;
+            snapshot.add(encryptedMessage);
+        }
+
+        AtomicInteger mainDispatches = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        AtomicReference<Thread> deliveryThread = new AtomicReference<>();
+        AtomicInteger failures = new AtomicInteger(-1);
+        CountDownLatch done = new CountDownLatch(1);
+        ChatMessagePipeline pipeline = new ChatMessagePipeline(messageCrypto, null, FAILED_TEXT, workerExecutor,
+                runnable -> {
+                    mainDispatches.incrementAndGet();
+                    mainExecutor.execute(runnable);
+                });
+
+        // Phần việc của main thread khi nhận snapshot chỉ là submit: chưa có gì được giải mã khi submit trả về
+        Future<Boolean> deliveredDuringSubmit = mainExecutor.submit(() -> {
+            pipeline.submitMessages(snapshot, (chatMessages, failedCount) -> {
+                batches.incrementAndGet();
+                deliveryThread.set(Thread.currentThread());
+                delivered.set(chatMessages);
+                failures.set(failedCount);
+                done.countDown();
+            });
+            return delivered.get() != null;
+        });
+        assertFalse(deliveredDuringSubmit.get(5, TimeUnit.SECONDS));
+
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(1, mainDispatches.get());
+        assertEquals(1, batches.get());
+        assertEquals(0, failures.get());
+        assertSame(mainThread, deliveryThread.get());
+        List<ChatMessage> chatMessages = delivered.get();
+        assertEquals(SNAPSHOT_SIZE, chatMessages.size());
+        assertEquals("Tin nhắn <0>", chatMessages.get(0).message);
+        assertEquals("Tin nhắn <" + (SNAPSHOT_SIZE - 1) + ">", chatMessages.get(SNAPSHOT_SIZE - 1).message);
+        assertNotNull(chatMessages.get(0).dateTime);
+    }
+
+    @Test
+    public void missingKey_keepsCiphertextAndReportsFailures() throws Exception {
+        // Không hiện ciphertext dù là chuỗi Base64 cũ hay envelope nhị phân
+        EncryptedMessage legacyMessage = new EncryptedMessage();
+        legacyMessage.message = "bGVnYWN5LWNpcGhlcnRleHQtd2l0aC1pdg==";
+        legacyMessage.timestamp = 1L;
+        EncryptedMessage binaryMessage = new EncryptedMessage();
+        binaryMessage.conversationKey = "alice_bob";
+        binaryMessage.payload = messageCrypto.encrypt(binaryMessage.conversationKey, "hello");
+        binaryMessage.timestamp = 2L;
+        MessageCrypto noKey = new MessageCrypto();
+        ChatMessagePipeline pipeline = new ChatMessagePipeline(noKey, null, FAILED_TEXT, workerExecutor, mainExecutor);
+
+        AtomicInteger failures = new AtomicInteger(-1);
+        List<String> texts = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        List<EncryptedMessage> input = new ArrayList<>();
+        input.add(legacyMessage);
+        input.add(binaryMessage);
+        pipeline.submitMessages(input, (chatMessages, failedCount) -> {
+            failures.set(failedCount);
+            for (ChatMessage chatMessage : chatMessages) {
+                texts.add(chatMessage.message);
+            }
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, failures.get());
+        assertEquals(List.of(FAILED_TEXT, FAILED_TEXT), texts);
+    }
+
+    @Test
+    public void pendingWrite_isShownAsPendingAndNotStored() throws Exception {
+        // Bản ghi cục bộ do outbox commit: chưa được server xác nhận
+        EncryptedMessage localWrite = new EncryptedMessage();
+        localWrite.id = "client-1";
+        localWrite.conversationKey = "alice_bob";
+        localWrite.payload = messageCrypto.encrypt(localWrite.conversationKey, "hello");
+        localWrite.timestamp = 1L;
+        localWrite.pending = true;
+        EncryptedMessage received = new EncryptedMessage();
+        received.id = "msg-2";
+        received.conversationKey = "alice_bob";
+        received.payload = messageCrypto.encrypt(received.conversationKey, "hi");
+        received.timestamp = 2L;
+        List<EncryptedMessage> stored = new ArrayList<>();
+        ChatMessagePipeline pipeline = new ChatMessagePipeline(messageCrypto, recordingDao(stored), FAILED_TEXT, workerExecutor, mainExecutor);
+
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        workerExecutor.execute(() -> pipeline.storeAndProcess(List.of(localWrite, received), (chatMessages, failedCount) -> {
+            delivered.set(chatMessages);
+            done.countDown();
+        }));
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(2, delivered.get().size());
+        assertTrue(delivered.get().get(0).pending);
+        assertFalse(delivered.get().get(1).pending);
+        assertEquals(1, stored.size());
+        assertEquals("msg-2", stored.get(0).id);
+    }
+
+    @Test
+    public void dateTime_usesCalendarYearAtYearEnd() throws Exception {
+        // 30/12/2024 thuộc tuần đầu của năm 2025 theo week-year
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.DECEMBER, 30, 10, 0, 0);
+        EncryptedMessage encryptedMessage = new EncryptedMessage();
+        encryptedMessage.id = "msg-1";
+        encryptedMessage.conversationKey = "alice_bob";
+        encryptedMessage.payload = messageCrypto.encrypt(encryptedMessage.conversationKey, "hello");
+        encryptedMessage.timestamp = calendar.getTimeInMillis();
+        ChatMessagePipeline pipeline = new ChatMessagePipeline(messageCrypto, null, FAILED_TEXT, workerExecutor, mainExecutor);
+
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        pipeline.submitMessages(List.of(encryptedMessage), (chatMessages, failedCount) -> {
+            delivered.set(chatMessages);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        String dateTime = delivered.get().get(0).dateTime;
+        assertTrue(dateTime, dateTime.contains("2024"));
+        assertFalse(dateTime, dateTime.contains("2025"));
+    }
+
+    private static MessageDao recordingDao(List<EncryptedMessage> stored) {
+        return new MessageDao() {
+            @Override
+            public void insertAll(List<EncryptedMessage> messages) {
+                stored.addAll(messages);
+            }
+
+            @Override
+            public List<EncryptedMessage> getLatestMessages(String conversationKey, int limit) {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<EncryptedMessage> getMessagesBefore(String conversationKey, long before, String beforeId, int limit) {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<EncryptedMessage> getMessagesAfter(String conversationKey, long after, String afterId, int limit) {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public Long getLatestTimestamp(String conversationKey) {
+                return null;
+            }
+        };
+    }
+}
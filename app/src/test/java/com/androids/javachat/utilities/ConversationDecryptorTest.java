@@ -0,0 +1,179 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.ChatMessage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConversationDecryptorTest {
+
+    private static final int CONVERSATIONS = 5000;
+
+    private ExecutorService workerExecutor;
+    private ExecutorService mainExecutor;
+    private Thread mainThread;
+    private String encodedKey;
+    private MessageCrypto sender;
+    private MessageCrypto receiver;
+    private ConversationDecryptor decryptor;
+
+    @Before
+    public void setUp() {
+        byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        encodedKey = Base64.getEncoder().encodeToString(keyBytes);
+        sender = new MessageCrypto();
+        sender.setKey(encodedKey);
+        // Bên nhận chưa có khóa lúc snapshot đầu tiên về
+        receiver = new MessageCrypto();
+        workerExecutor = Executors.newFixedThreadPool(4);
+        mainExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            mainThread = new Thread(runnable, "fake-main");
+            return mainThread;
+        });
+        decryptor = new ConversationDecryptor(receiver, workerExecutor, mainExecutor);
+    }
+
+    @After
+    public void tearDown() {
+        workerExecutor.shutdownNow();
+        mainExecutor.shutdownNow();
+    }
+
+    @Test
+    public void lateKey_decryptsOnlyPendingConversationsInOneBatch() throws Exception {
+        List<ChatMessage> conversations = new ArrayList<>();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            conversations.add(conversation(i, i % 10 != 0));
+        }
+        receiver.setKey(encodedKey);
+
+        AtomicInteger mainDispatches = new AtomicInteger();
+        AtomicInteger batches = new AtomicInteger();
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        AtomicReference<Thread> deliveryThread = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        ConversationDecryptor countingDecryptor = new ConversationDecryptor(receiver, workerExecutor, runnable -> {
+            mainDispatches.incrementAndGet();
+            mainExecutor.execute(runnable);
+        });
+        countingDecryptor.decryptPending(conversations, decrypted -> {
+            batches.incrementAndGet();
+            deliveryThread.set(Thread.currentThread());
+            delivered.set(decrypted);
+            done.countDown();
+        });
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        // Nhiều phần chạy song song nhưng main thread chỉ nhận một lượt
+        assertEquals(1, mainDispatches.get());
+        assertEquals(1, batches.get());
+        assertSame(mainThread, deliveryThread.get());
+        // Hội thoại đã giải mã từ trước không bị xử lý lại
+        assertEquals(CONVERSATIONS - CONVERSATIONS / 10, delivered.get().size());
+        Set<String> ids = new HashSet<>();
+        for (ChatMessage conversation : delivered.get()) {
+            int index = Integer.parseInt(conversation.conversionId.substring("user".length()));
+            assertTrue(conversation.decrypted);
+            assertEquals("Xin chào <" + index + ">", conversation.message);
+            assertSame(conversations.get(index).envelope, conversation.envelope);
+            assertFalse(conversations.get(index).decrypted);
+            ids.add(conversation.conversionId);
+        }
+        assertEquals(delivered.get().size(), ids.size());
+    }
+
+    @Test
+    public void failedEntriesStayPending() throws Exception {
+        List<ChatMessage> conversations = new ArrayList<>();
+        conversations.add(conversation(0, true));
+        ChatMessage corrupted = conversation(1, true);
+        corrupted.envelope = MessageEnvelope.read(null, "not-a-ciphertext");
+        conversations.add(corrupted);
+        receiver.setKey(encodedKey);
+
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        decryptor.decryptPending(conversations, decrypted -> {
+            delivered.set(decrypted);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, delivered.get().size());
+        assertEquals("user0", delivered.get().get(0).conversionId);
+    }
+
+    @Test
+    public void chunkThatThrows_stillDeliversOtherChunks() throws Exception {
+        List<ChatMessage> conversations = new ArrayList<>();
+        for (int i = 0; i < ConversationDecryptor.CHUNK_SIZE * 3; i++) {
+            conversations.add(conversation(i, true));
+        }
+        receiver.setKey(encodedKey);
+        // Phần thứ hai gặp lỗi ngoài dự kiến trong decryptAll
+        MessageCrypto failing = new MessageCrypto() {
+            @Override
+            public List<String> decryptAll(List<String> conversationKeys, List<MessageEnvelope> envelopes) throws GeneralSecurityException {
+                if (envelopes.get(0) == conversations.get(ConversationDecryptor.CHUNK_SIZE).envelope) {
+                    throw new IllegalArgumentException("boom");
+                }
+                return receiver.decryptAll(conversationKeys, envelopes);
+            }
+        };
+        ConversationDecryptor failingDecryptor = new ConversationDecryptor(failing, workerExecutor, mainExecutor);
+
+        AtomicReference<List<ChatMessage>> delivered = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(1);
+        failingDecryptor.decryptPending(conversations, decrypted -> {
+            delivered.set(decrypted);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(ConversationDecryptor.CHUNK_SIZE * 2, delivered.get().size());
+        for (ChatMessage conversation : delivered.get()) {
+            int index = Integer.parseInt(conversation.conversionId.substring("user".length()));
+            assertTrue(index < ConversationDecryptor.CHUNK_SIZE || index >= ConversationDecryptor.CHUNK_SIZE * 2);
+        }
+    }
+
+    @Test
+    public void nothingPending_skipsCallback() throws Exception {
+        List<ChatMessage> conversations = new ArrayList<>();
+        conversations.add(conversation(0, false));
+        conversations.add(new ChatMessage());
+        decryptor.decryptPending(conversations, decrypted -> fail("Nothing to decrypt"));
+    }
+
+    private ChatMessage conversation(int index, boolean pending) throws Exception {
+        ChatMessage conversation = new ChatMessage();
+        conversation.senderId = "user" + index;
+        conversation.receiverId = "me";
+        conversation.conversionId = "user" + index;
+        conversation.dateObject = new Date(index);
+        String conversationKey = ConversationKey.of(conversation.senderId, conversation.receiverId);
+        conversation.envelope = MessageEnvelope.read(sender.encrypt(conversationKey, "Xin chào \\u003C" + index + "\\u003E"), null);
+        conversation.decrypted = !pending;
+        conversation.message = pending ? "Không thể giải mã tin nhắn" : "Xin chào <" + index + ">";
+        return conversation;
+    }
+}
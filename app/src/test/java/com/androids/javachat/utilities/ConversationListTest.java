@@ -0,0 +1,186 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ConversationListTest {
+
+    private static final int CONVERSATIONS = 5_000;
+    private static final int UPDATES = 20_000;
+
+    private static final Comparator<ChatMessage> NEWEST_FIRST = Comparator
+            .comparing((ChatMessage chatMessage) -> chatMessage.dateObject, Comparator.nullsLast(Comparator.reverseOrder()))
+            .thenComparing(chatMessage -> chatMessage.conversionId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private List<ChatMessage> initial;
+    private List<ChatMessage> updates;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        initial = new ArrayList<>();
+        for (int i = 0; i < CONVERSATIONS; i++) {
+            initial.add(conversation("user-" + i, random.nextInt(1_000_000), "hello"));
+        }
+        // Phần lớn là tin mới đẩy hội thoại lên đầu, phần còn lại đổi nội dung ở vị trí bất kỳ
+        updates = new ArrayList<>();
+        long clock = 1_000_000;
+        for (int i = 0; i < UPDATES; i++) {
+            String id = "user-" + random.nextInt(CONVERSATIONS);
+            long time = random.nextInt(10) < 8 ? ++clock : random.nextInt(1_000_000);
+            updates.add(conversation(id, time, "message " + i));
+        }
+    }
+
+    @Test
+    public void notifications_replayedOnShadowListMatchModel() {
+        ConversationList list = new ConversationList(NEWEST_FIRST);
+        List<ChatMessage> shadow = new ArrayList<>();
+        list.setListener(new ConversationList.Listener() {
+            @Override
+            public void onInserted(int position) {
+                shadow.add(position, list.get(position));
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                shadow.add(toPosition, shadow.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position) {
+                shadow.set(position, list.get(position));
+            }
+
+            @Override
+            public void onRemoved(int position) {
+                shadow.remove(position);
+            }
+        });
+        for (ChatMessage conversation : initial) {
+            list.upsert(conversation);
+        }
+        for (int i = 0; i < 2_000; i++) {
+            list.upsert(updates.get(i));
+            if (i % 100 == 0) {
+                list.remove(updates.get(i).conversionId);
+            }
+        }
+        assertEquals(list.snapshot(), shadow);
+        for (int i = 1; i < list.size(); i++) {
+            assertTrue(NEWEST_FIRST.compare(list.get(i - 1), list.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void upsert_newestMessageMovesConversationToTop() {
+        ConversationList list = new ConversationList(NEWEST_FIRST);
+        list.upsert(conversation("a", 3, "x"));
+        list.upsert(conversation("b", 2, "x"));
+        list.upsert(conversation("c", 1, "x"));
+        List<String> events = new ArrayList<>();
+        list.setListener(recorder(events));
+
+        assertEquals(0, list.upsert(conversation("c", 4, "y")));
+        assertEquals(List.of("move 2->0", "change 0"), events);
+        assertEquals("y", list.find("c").message);
+        assertEquals(3, list.size());
+    }
+
+    @Test
+    public void upsert_samePositionOnlyChanges() {
+        ConversationList list = new ConversationList(NEWEST_FIRST);
+        list.upsert(conversation("a", 3, "x"));
+        list.upsert(conversation("b", 2, "x"));
+        List<String> events = new ArrayList<>();
+        list.setListener(recorder(events));
+
+        list.upsert(conversation("b", 2, "decrypted"));
+        assertEquals(List.of("change 1"), events);
+    }
+
+    @Test
+    public void remove_notifiesPositionAndForgetsId() {
+        ConversationList list = new ConversationList(NEWEST_FIRST);
+        list.upsert(conversation("a", 3, "x"));
+        list.upsert(conversation("b", 2, "x"));
+        List<String> events = new ArrayList<>();
+        list.setListener(recorder(events));
+
+        assertEquals(0, list.remove("a"));
+        assertEquals(-1, list.remove("a"));
+        assertNull(list.find("a"));
+        assertEquals(List.of("remove 0"), events);
+    }
+
+    @Test
+    public void upsert_rebindsOneItemPerUpdate() {
+        ConversationList list = new ConversationList(NEWEST_FIRST);
+        for (ChatMessage conversation : initial) {
+            list.upsert(conversation);
+        }
+        int[] rebinds = new int[1];
+        list.setListener(recorder(null, rebinds));
+        for (ChatMessage update : updates) {
+            list.upsert(update);
+        }
+        // Mỗi cập nhật chỉ bind lại đúng một item
+        assertEquals(UPDATES, rebinds[0]);
+        assertEquals(CONVERSATIONS, list.size());
+    }
+
+    private static ChatMessage conversation(String conversionId, long time, String message) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.conversionId = conversionId;
+        chatMessage.dateObject = new Date(time);
+        chatMessage.message = message;
+        return chatMessage;
+    }
+
+    private static ConversationList.Listener recorder(List<String> events) {
+        return recorder(events, new int[1]);
+    }
+
+    // Ghi lại lệnh notify; rebinds đếm số item adapter phải bind lại
+    private static ConversationList.Listener recorder(List<String> events, int[] rebinds) {
+        return new ConversationList.Listener() {
+            @Override
+            public void onInserted(int position) {
+                record("insert " + position);
+                rebinds[0]++;
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                record("move " + fromPosition + "->" + toPosition);
+            }
+
+            @Override
+            public void onChanged(int position) {
+                record("change " + position);
+                rebinds[0]++;
+            }
+
+            @Override
+            public void onRemoved(int position) {
+                record("remove " + position);
+            }
+
+            private void record(String event) {
+                if (events != null) {
+                    events.add(event);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,93 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeferredInitTest {
+
+    private Runnable firstFrame;
+    private ArrayDeque<Runnable> mainQueue;
+    private List<String> ran;
+    private DeferredInit deferredInit;
+
+    @Before
+    public void setUp() {
+        mainQueue = new ArrayDeque<>();
+        ran = new ArrayList<>();
+        deferredInit = new DeferredInit(onFirstFrame -> firstFrame = onFirstFrame, mainQueue::add);
+    }
+
+    @Test
+    public void stepsWaitForFirstFrame() {
+        deferredInit.add("fcmToken", () -> ran.add("fcmToken"));
+        deferredInit.add("authCheck", () -> ran.add("authCheck"));
+
+        assertTrue(ran.isEmpty());
+        assertTrue(mainQueue.isEmpty());
+        assertEquals(2, deferredInit.pendingCount());
+
+        firstFrame.run();
+        runMainQueue();
+        assertEquals(List.of("fcmToken", "authCheck"), ran);
+        assertEquals(0, deferredInit.pendingCount());
+    }
+
+    @Test
+    public void eachStepRunsInItsOwnMainThreadTurn() {
+        deferredInit.add("fcmToken", () -> ran.add("fcmToken"));
+        deferredInit.add("outbox", () -> ran.add("outbox"));
+        deferredInit.add("authCheck", () -> ran.add("authCheck"));
+
+        firstFrame.run();
+        // Không dồn cả ba việc vào một message: giữa hai việc main thread có thể vẽ frame khác
+        assertEquals(3, mainQueue.size());
+        mainQueue.poll().run();
+        assertEquals(List.of("fcmToken"), ran);
+    }
+
+    @Test
+    public void addAfterFirstFrame_runsOnNextTurn() {
+        firstFrame.run();
+        deferredInit.add("late", () -> ran.add("late"));
+
+        assertTrue(ran.isEmpty());
+        runMainQueue();
+        assertEquals(List.of("late"), ran);
+    }
+
+    @Test
+    public void clear_dropsPendingAndPostedSteps() {
+        deferredInit.add("fcmToken", () -> ran.add("fcmToken"));
+        firstFrame.run();
+        deferredInit.add("authCheck", () -> ran.add("authCheck"));
+
+        deferredInit.clear();
+        runMainQueue();
+        deferredInit.add("afterDestroy", () -> ran.add("afterDestroy"));
+        firstFrame.run();
+        runMainQueue();
+
+        assertTrue(ran.isEmpty());
+    }
+
+    @Test
+    public void repeatedFirstFrameCallback_runsStepsOnce() {
+        deferredInit.add("fcmToken", () -> ran.add("fcmToken"));
+        firstFrame.run();
+        firstFrame.run();
+        runMainQueue();
+        assertEquals(List.of("fcmToken"), ran);
+    }
+
+    private void runMainQueue() {
+        while (!mainQueue.isEmpty()) {
+            mainQueue.poll().run();
+        }
+    }
+}
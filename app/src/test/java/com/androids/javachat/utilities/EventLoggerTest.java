@@ -0,0 +1,168 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.database.LogEventDao;
+import com.androids.javachat.models.LogEvent;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class EventLoggerTest {
+
+    private MemoryLogEventDao dao;
+    private List<Boolean> scheduledFlushes;
+    private RecordingSink sink;
+    private EventLogger eventLogger;
+
+    @Before
+    public void setUp() {
+        dao = new MemoryLogEventDao();
+        scheduledFlushes = new ArrayList<>();
+        sink = new RecordingSink();
+        eventLogger = new EventLogger(dao, Runnable::run, scheduledFlushes::add, "test-device", () -> 1_000L);
+    }
+
+    @Test
+    public void log_queuesLocallyAndSchedulesTimedFlushOnce() {
+        eventLogger.log("user-1", "message_sent", "user-2");
+        eventLogger.log("user-1", "fcm_sent", "user-2");
+
+        assertEquals(2, dao.events.size());
+        assertEquals(List.of(false), scheduledFlushes);
+        LogEvent event = dao.events.get(0);
+        assertEquals("user-2", event.receiverId);
+        assertEquals("test-device", event.deviceInfo);
+        assertEquals(1_000L, event.timestamp);
+        assertNotNull(event.eventId);
+    }
+
+    @Test
+    public void reachingSizeThreshold_schedulesImmediateFlush() {
+        for (int i = 0; i < EventLogger.FLUSH_THRESHOLD; i++) {
+            eventLogger.log("user-1", "message_sent");
+        }
+        assertEquals(List.of(false, true), scheduledFlushes);
+    }
+
+    @Test
+    public void flush_writesInBatchesOfAtMost500AndEmptiesQueue() throws Exception {
+        for (int i = 0; i < 1_200; i++) {
+            eventLogger.log("user-1", "decryption_failed");
+        }
+
+        assertEquals(1_200, eventLogger.flush(sink));
+        assertEquals(List.of(500, 500, 200), sink.batchSizes);
+        assertTrue(dao.events.isEmpty());
+        assertEquals(1_200, sink.eventIds.size());
+    }
+
+    @Test
+    public void failedBatch_staysQueuedForRetry() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            eventLogger.log("user-1", "message_sent");
+        }
+        sink.failNext = true;
+        try {
+            eventLogger.flush(sink);
+            fail("Expected the flush to fail");
+        } catch (Exception expected) {
+            // Lô lỗi phải còn nguyên trong hàng đợi
+        }
+        assertEquals(10, dao.events.size());
+
+        assertEquals(10, eventLogger.flush(sink));
+        assertTrue(dao.events.isEmpty());
+    }
+
+    @Test
+    public void backpressure_samplesRoutineEventsAndKeepsErrors() {
+        for (int i = 0; i < EventLogger.SAMPLING_THRESHOLD; i++) {
+            eventLogger.log("user-1", "decryption_failed");
+        }
+        for (int i = 0; i < 100; i++) {
+            eventLogger.log("user-1", "message_sent");
+            eventLogger.log("user-1", "fcm_send_failed");
+        }
+
+        long sent = dao.events.stream().filter(e -> "message_sent".equals(e.action)).count();
+        long failed = dao.events.stream().filter(e -> "fcm_send_failed".equals(e.action)).count();
+        assertEquals(100 / EventLogger.SAMPLE_RATE, sent);
+        assertEquals(100, failed);
+        assertEquals(90, eventLogger.getDroppedCount());
+    }
+
+    @Test
+    public void fullQueue_dropsNewEvents() {
+        for (int i = 0; i < EventLogger.MAX_QUEUED_EVENTS + 5; i++) {
+            eventLogger.log("user-1", "fcm_send_failed");
+        }
+        assertEquals(EventLogger.MAX_QUEUED_EVENTS, dao.events.size());
+        assertEquals(5, eventLogger.getDroppedCount());
+    }
+
+    @Test
+    public void messagesSent_needFarFewerWritesThanOneAddPerEvent() throws Exception {
+        int messages = 100;
+        for (int i = 0; i < messages; i++) {
+            eventLogger.log("user-1", "message_sent", "user-2");
+            eventLogger.log("user-1", "fcm_sent", "user-2");
+        }
+        eventLogger.flush(sink);
+
+        // Trước đây mỗi sự kiện là một lần add() riêng: 2 lượt gọi mạng cho mỗi tin nhắn
+        int legacyRoundTrips = messages * 2;
+        assertEquals(1, sink.batchSizes.size());
+        assertTrue(legacyRoundTrips / sink.batchSizes.size() >= 2);
+    }
+
+    private static class RecordingSink implements EventLogger.EventSink {
+        final List<Integer> batchSizes = new ArrayList<>();
+        final Set<String> eventIds = new HashSet<>();
+        boolean failNext;
+
+        @Override
+        public void write(List<LogEvent> events) throws Exception {
+            if (failNext) {
+                failNext = false;
+                throw new Exception("offline");
+            }
+            assertTrue(events.size() <= EventLogger.MAX_BATCH_SIZE);
+            batchSizes.add(events.size());
+            for (LogEvent event : events) {
+                eventIds.add(event.eventId);
+            }
+        }
+    }
+
+    private static class MemoryLogEventDao implements LogEventDao {
+        final List<LogEvent> events = new ArrayList<>();
+        private long nextId = 1;
+
+        @Override
+        public void insert(LogEvent event) {
+            event.id = nextId++;
+            events.add(event);
+        }
+
+        @Override
+        public int count() {
+            return events.size();
+        }
+
+        @Override
+        public List<LogEvent> getOldest(int limit) {
+            return new ArrayList<>(events.subList(0, Math.min(limit, events.size())));
+        }
+
+        @Override
+        public void deleteUpTo(long maxId) {
+            events.removeIf(event -> event.id <= maxId);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class ListenerRegistryTest {
+
+    private FakeQuery query;
+    private ListenerRegistry registry;
+    private List<Long> received;
+    private long resumeAfter;
+
+    @Before
+    public void setUp() {
+        query = new FakeQuery();
+        registry = new ListenerRegistry();
+        received = new ArrayList<>();
+        resumeAfter = 0;
+    }
+
+    private void listen() {
+        registry.add("messages", () -> query.listen(resumeAfter, timestamp -> {
+            received.add(timestamp);
+            resumeAfter = Math.max(resumeAfter, timestamp);
+        }));
+    }
+
+    @Test
+    public void listenerAttachesOnlyWhileStarted() {
+        listen();
+        assertEquals(0, query.liveListeners.size());
+
+        registry.start();
+        assertEquals(1, query.liveListeners.size());
+        assertEquals(1, registry.liveCount());
+    }
+
+    @Test
+    public void stoppedApp_receivesNoUpdates() {
+        listen();
+        registry.start();
+        query.emit(1);
+        int liveBefore = ListenerRegistry.liveListenerCount();
+
+        registry.stop();
+        for (long timestamp = 2; timestamp <= 100; timestamp++) {
+            query.emit(timestamp);
+        }
+
+        // Không còn listener nào mở: không có dữ liệu mạng và không có callback nào chạy khi ở background
+        assertEquals(0, query.liveListeners.size());
+        assertEquals(0, registry.liveCount());
+        assertEquals(liveBefore - 1, ListenerRegistry.liveListenerCount());
+        assertEquals(1, query.deliveredCount);
+        assertEquals(List.of(1L), received);
+    }
+
+    @Test
+    public void restart_reattachesWithResumeToken() {
+        listen();
+        registry.start();
+        query.emit(5);
+        registry.stop();
+        registry.start();
+
+        assertEquals(2, query.attachCount);
+        assertEquals(List.of(0L, 5L), query.resumeTokens);
+    }
+
+    @Test
+    public void addWithSameKey_replacesPreviousListener() {
+        registry.start();
+        listen();
+        listen();
+        listen();
+
+        assertEquals(1, query.liveListeners.size());
+        assertEquals(1, registry.liveCount());
+    }
+
+    @Test
+    public void recreatedActivities_doNotAccumulateListeners() {
+        int liveBefore = ListenerRegistry.liveListenerCount();
+        for (int i = 0; i < 10; i++) {
+            registry = new ListenerRegistry();
+            listen();
+            registry.start();
+            registry.stop();
+            registry.clear();
+        }
+        assertEquals(0, query.liveListeners.size());
+        assertEquals(liveBefore, ListenerRegistry.liveListenerCount());
+    }
+
+    @Test
+    public void clear_dropsListenersAddedAfterDestroy() {
+        registry.clear();
+        listen();
+        registry.start();
+        assertEquals(0, query.attachCount);
+    }
+
+    // Giả lập một truy vấn Firestore: chỉ listener còn mở mới nhận snapshot
+    private static class FakeQuery {
+        final List<Consumer<Long>> liveListeners = new ArrayList<>();
+        final List<Long> resumeTokens = new ArrayList<>();
+        int attachCount;
+        int deliveredCount;
+
+        ListenerRegistry.Registration listen(long resumeAfter, Consumer<Long> listener) {
+            attachCount++;
+            resumeTokens.add(resumeAfter);
+            liveListeners.add(listener);
+            return () -> liveListeners.remove(listener);
+        }
+
+        void emit(long timestamp) {
+            for (Consumer<Long> listener : new ArrayList<>(liveListeners)) {
+                deliveredCount++;
+                listener.accept(timestamp);
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+public class MessageCryptoTest {
+
+    private static final int MESSAGES = 500;
+    private static final String CONVERSATION = "alice_bob";
+    private static final int[] MESSAGE_SIZES = {50, 200, 1000};
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private Cipher cbcCipher;
+    private SecretKeySpec cbcKey;
+    private byte[] cbcKeyId;
+    private String encodedKey;
+    private List<byte[]> payloads;
+    private List<String> legacyMessages;
+    private MessageCrypto messageCrypto;
+
+    @Before
+    public void setUp() throws Exception {
+        byte[] keyBytes = new byte[32];
+        secureRandom.nextBytes(keyBytes);
+        cbcCipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cbcKey = new SecretKeySpec(keyBytes, "AES");
+        cbcKeyId = Arrays.copyOf(MessageDigest.getInstance("SHA-256").digest(keyBytes), 4);
+        encodedKey = Base64.getEncoder().encodeToString(keyBytes);
+        messageCrypto = new MessageCrypto();
+        messageCrypto.setKey(encodedKey);
+        payloads = new ArrayList<>();
+        legacyMessages = new ArrayList<>();
+        for (int i = 0; i < MESSAGES; i++) {
+            payloads.add(messageCrypto.encrypt(CONVERSATION, "Tin nhắn thử nghiệm số " + i));
+            legacyMessages.add(legacyEncrypt(keyBytes, "Tin nhắn thử nghiệm số " + i));
+        }
+    }
+
+    @Test
+    public void decryptAll_roundTripsEveryMessage() throws Exception {
+        List<String> decrypted = messageCrypto.decryptAll(keys(MESSAGES), envelopes(payloads));
+        for (int i = 0; i < MESSAGES; i++) {
+            assertEquals("Tin nhắn thử nghiệm số " + i, decrypted.get(i));
+        }
+    }
+
+    @Test
+    public void decryptAll_readsLegacyBase64Messages() throws Exception {
+        List<MessageEnvelope> envelopes = new ArrayList<>();
+        for (String legacyMessage : legacyMessages) {
+            envelopes.add(MessageEnvelope.read(null, legacyMessage));
+        }
+        List<String> decrypted = messageCrypto.decryptAll(keys(MESSAGES), envelopes);
+        for (int i = 0; i < MESSAGES; i++) {
+            assertEquals("Tin nhắn thử nghiệm số " + i, decrypted.get(i));
+            assertEquals(decrypted.get(i), legacyDecrypt(encodedKey, legacyMessages.get(i)));
+        }
+    }
+
+    @Test
+    public void decryptAll_marksCorruptedMessagesAsNull() throws Exception {
+        byte[] truncated = Arrays.copyOf(payloads.get(1), 10);
+        byte[] unknownVersion = payloads.get(2).clone();
+        unknownVersion[0] = 42;
+        List<MessageEnvelope> input = new ArrayList<>();
+        input.add(MessageEnvelope.read(payloads.get(0), null));
+        input.add(MessageEnvelope.read(null, "not-a-ciphertext"));
+        input.add(MessageEnvelope.read(truncated, null));
+        input.add(MessageEnvelope.read(unknownVersion, null));
+        input.add(MessageEnvelope.read(null, null));
+        List<String> decrypted = messageCrypto.decryptAll(keys(input.size()), input);
+        assertEquals("Tin nhắn thử nghiệm số 0", decrypted.get(0));
+        assertNull(decrypted.get(1));
+        assertNull(decrypted.get(2));
+        assertNull(decrypted.get(3));
+        assertEquals("", decrypted.get(4));
+    }
+
+    @Test
+    public void decrypt_rejectsEnvelopeFromAnotherKey() throws Exception {
+        byte[] otherKey = new byte[32];
+        new SecureRandom().nextBytes(otherKey);
+        MessageCrypto other = new MessageCrypto();
+        other.setKey(Base64.getEncoder().encodeToString(otherKey));
+
+        List<String> decrypted = other.decryptAll(keys(1), envelopes(payloads.subList(0, 1)));
+        assertNull(decrypted.get(0));
+    }
+
+    @Test
+    public void decrypt_rejectsEnvelopeFromAnotherConversation() throws Exception {
+        MessageEnvelope envelope = MessageEnvelope.read(payloads.get(0), null);
+        assertEquals(MessageEnvelope.VERSION_AES_GCM, envelope.version);
+        assertEquals("Tin nhắn thử nghiệm số 0", messageCrypto.decrypt(CONVERSATION, envelope));
+        try {
+            messageCrypto.decrypt("alice_carol", envelope);
+            fail("Envelope of another conversation must not decrypt");
+        } catch (GeneralSecurityException expected) {
+        }
+    }
+
+    @Test
+    public void decrypt_rejectsTamperedCiphertextAndHeader() throws Exception {
+        byte[] tamperedCiphertext = payloads.get(0).clone();
+        tamperedCiphertext[tamperedCiphertext.length - 20] ^= 1;
+        byte[] tamperedNonce = payloads.get(1).clone();
+        // [version][keyIdLength][keyId x4][nonceLength][nonce...]
+        tamperedNonce[7] ^= 1;
+        byte[] tamperedTag = payloads.get(2).clone();
+        tamperedTag[tamperedTag.length - 1] ^= 1;
+
+        List<String> decrypted = messageCrypto.decryptAll(keys(3),
+                envelopes(List.of(tamperedCiphertext, tamperedNonce, tamperedTag)));
+        assertEquals(Arrays.asList(null, null, null), decrypted);
+    }
+
+    @Test
+    public void decryptAll_readsCbcEnvelopes() throws Exception {
+        List<byte[]> cbcPayloads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            cbcPayloads.add(cbcEnvelope("Tin nhắn CBC " + i));
+        }
+        List<String> decrypted = messageCrypto.decryptAll(keys(10), envelopes(cbcPayloads));
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Tin nhắn CBC " + i, decrypted.get(i));
+        }
+    }
+
+    @Test
+    public void keyCache_evictsLeastRecentlyUsedConversations() throws Exception {
+        List<byte[]> perConversation = new ArrayList<>();
+        int conversations = MessageCrypto.MAX_CACHED_KEYS * 2;
+        for (int i = 0; i < conversations; i++) {
+            perConversation.add(messageCrypto.encrypt("conversation-" + i, "hello " + i));
+        }
+        assertEquals(MessageCrypto.MAX_CACHED_KEYS, messageCrypto.cachedKeyCount());
+        // Khóa đã bị đẩy khỏi cache được suy ra lại, tin vẫn giải mã được
+        for (int i = 0; i < conversations; i++) {
+            MessageEnvelope envelope = MessageEnvelope.read(perConversation.get(i), null);
+            assertEquals("hello " + i, messageCrypto.decrypt("conversation-" + i, envelope));
+        }
+        assertEquals(MessageCrypto.MAX_CACHED_KEYS, messageCrypto.cachedKeyCount());
+
+        messageCrypto.setKey(Base64.getEncoder().encodeToString(new byte[32]));
+        assertEquals(0, messageCrypto.cachedKeyCount());
+    }
+
+    @Test
+    public void envelope_isSmallerThanBase64Text() {
+        long envelopeBytes = 0;
+        long base64Bytes = 0;
+        for (int i = 0; i < MESSAGES; i++) {
+            envelopeBytes += payloads.get(i).length;
+            base64Bytes += legacyMessages.get(i).getBytes(StandardCharsets.UTF_8).length;
+        }
+        assertTrue(envelopeBytes < base64Bytes);
+    }
+
+    @Test
+    public void gcmEnvelope_hasFixedOverheadAndRoundTrips() throws Exception {
+        // Header + tag GCM không phụ thuộc độ dài tin, không có padding như CBC
+        int overhead = messageCrypto.encrypt(CONVERSATION, "").length;
+        for (int size : MESSAGE_SIZES) {
+            String message = "x".repeat(size);
+            byte[] payload = messageCrypto.encrypt(CONVERSATION, message);
+            assertEquals(overhead + size, payload.length);
+            assertEquals(message, messageCrypto.decryptAll(keys(1), envelopes(List.of(payload))).get(0));
+        }
+    }
+
+    private static List<String> keys(int count) {
+        return Collections.nCopies(count, CONVERSATION);
+    }
+
+    private static List<MessageEnvelope> envelopes(List<byte[]> payloads) {
+        List<MessageEnvelope> envelopes = new ArrayList<>(payloads.size());
+        for (byte[] payload : payloads) {
+            envelopes.add(MessageEnvelope.read(payload, null));
+        }
+        return envelopes;
+    }
+
+    // Envelope AES-CBC (version 1) với khóa chung, như trước khi chuyển sang GCM; Cipher và key id dùng lại như MessageCrypto
+    private byte[] cbcEnvelope(String message) throws Exception {
+        byte[] iv = new byte[16];
+        secureRandom.nextBytes(iv);
+        Cipher cipher = cbcCipher;
+        cipher.init(Cipher.ENCRYPT_MODE, cbcKey, new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        int headerLength = MessageEnvelope.headerLength(cbcKeyId, iv);
+        byte[] envelope = new byte[headerLength + ciphertext.length];
+        MessageEnvelope.writeHeader(envelope, MessageEnvelope.VERSION_AES_CBC, cbcKeyId, iv, 0);
+        System.arraycopy(ciphertext, 0, envelope, headerLength, ciphertext.length);
+        return envelope;
+    }
+
+    // Định dạng chuỗi trước đây: Base64(IV + ciphertext CBC)
+    private static String legacyEncrypt(byte[] keyBytes, String message) throws Exception {
+        byte[] iv = new byte[16];
+        new SecureRandom().nextBytes(iv);
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
+        byte[] ciphertext = cipher.doFinal(message.getBytes(StandardCharsets.UTF_8));
+        byte[] encrypted = new byte[iv.length + ciphertext.length];
+        System.arraycopy(iv, 0, encrypted, 0, iv.length);
+        System.arraycopy(ciphertext, 0, encrypted, iv.length, ciphertext.length);
+        return Base64.getMimeEncoder().encodeToString(encrypted);
+    }
+
+    // Bản sao cách giải mã trước đây trong ChatActivity/MainActivity
+    private static String legacyDecrypt(String aesKey, String encryptedMessage) throws Exception {
+        byte[] keyBytes = Base64.getMimeDecoder().decode(aesKey);
+        byte[] encryptedBytes = Base64.getMimeDecoder().decode(encryptedMessage);
+        byte[] iv = new byte[16];
+        byte[] ciphertext = new byte[encryptedBytes.length - 16];
+        System.arraycopy(encryptedBytes, 0, iv, 0, 16);
+        System.arraycopy(encryptedBytes, 16, ciphertext, 0, encryptedBytes.length - 16);
+        Cipher cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
+        cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyBytes, "AES"), new IvParameterSpec(iv));
+        return new String(cipher.doFinal(ciphertext), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,52 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.ChatMessage;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MessageWindowTest {
+
+    @Test
+    public void confirmedCopy_replacesPendingMessage() {
+        MessageWindow window = new MessageWindow(10);
+        window.addNewer(List.of(message("client-1", 1, true)));
+
+        // Bản ghi cục bộ còn pending không thay bản đang chờ; bản đã xác nhận thì thay
+        assertEquals(0, window.addNewer(List.of(message("client-1", 1, true))));
+        assertEquals(1, window.addNewer(List.of(message("client-1", 1, false))));
+        assertEquals(1, window.size());
+        assertFalse(window.snapshot().get(0).pending);
+    }
+
+    @Test
+    public void clear_resetsEvictedNewerAndAcceptsSameIdsAgain() {
+        MessageWindow window = new MessageWindow(2);
+        List<ChatMessage> page = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            page.add(message("msg" + i, i, false));
+        }
+        window.addOlder(page);
+        window.trimNewest();
+        assertTrue(window.hasEvictedNewer());
+
+        window.clear();
+        assertTrue(window.isEmpty());
+        assertFalse(window.hasEvictedNewer());
+        assertEquals(2, window.addNewer(page.subList(2, 4)));
+        assertEquals(3, window.newestTimestamp());
+    }
+
+    private static ChatMessage message(String id, long timestamp, boolean pending) {
+        ChatMessage chatMessage = new ChatMessage();
+        chatMessage.messageId = id;
+        chatMessage.dateObject = new Date(timestamp);
+        chatMessage.pending = pending;
+        return chatMessage;
+    }
+}
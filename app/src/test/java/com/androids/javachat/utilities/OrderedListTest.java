@@ -0,0 +1,78 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderedListTest {
+
+    private static final int ITEMS = 10_000;
+    private static final int UPDATES = 1_000;
+
+    private static final Comparator<long[]> BY_TIME_THEN_ID = Comparator
+            .comparingLong((long[] item) -> item[0])
+            .thenComparingLong(item -> item[1]);
+
+    private List<long[]> initialItems;
+    private List<long[]> updates;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        initialItems = new ArrayList<>();
+        for (int i = 0; i < ITEMS; i++) {
+            initialItems.add(new long[]{random.nextInt(1_000_000), i});
+        }
+        updates = new ArrayList<>();
+        for (int i = 0; i < UPDATES; i++) {
+            updates.add(new long[]{random.nextInt(1_000_000), ITEMS + i});
+        }
+    }
+
+    @Test
+    public void add_keepsItemsSorted() {
+        OrderedList<long[]> list = filledList();
+        for (long[] update : updates) {
+            int index = list.add(update);
+            assertSame(update, list.get(index));
+        }
+        for (int i = 1; i < list.size(); i++) {
+            assertTrue(BY_TIME_THEN_ID.compare(list.get(i - 1), list.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void remove_findsItemByBinarySearch() {
+        OrderedList<long[]> list = filledList();
+        long[] item = initialItems.get(ITEMS / 2);
+        int index = list.indexOf(item);
+        assertTrue(index >= 0);
+        assertEquals(index, list.remove(item));
+        assertEquals(-1, list.indexOf(item));
+        assertEquals(ITEMS - 1, list.size());
+    }
+
+    @Test
+    public void removeRange_returnsRemovedItems() {
+        OrderedList<long[]> list = filledList();
+        long[] first = list.first();
+        List<long[]> removed = list.removeRange(0, 10);
+        assertEquals(10, removed.size());
+        assertSame(first, removed.get(0));
+        assertEquals(ITEMS - 10, list.size());
+    }
+
+    private OrderedList<long[]> filledList() {
+        OrderedList<long[]> list = new OrderedList<>(BY_TIME_THEN_ID);
+        for (long[] item : initialItems) {
+            list.add(item);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,241 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.database.OutboxDao;
+import com.androids.javachat.models.OutboxMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class OutboxTest {
+
+    private MemoryOutboxDao dao;
+    private FakeTransport transport;
+    private int scheduledRetries;
+    private RecordingListener listener;
+    private Outbox outbox;
+
+    @Before
+    public void setUp() {
+        dao = new MemoryOutboxDao();
+        transport = new FakeTransport();
+        scheduledRetries = 0;
+        listener = new RecordingListener();
+        outbox = new Outbox(dao, transport, Runnable::run, Runnable::run, () -> scheduledRetries++);
+        outbox.addListener(listener);
+    }
+
+    @Test
+    public void enqueue_sendsImmediatelyAndEmptiesOutbox() {
+        outbox.enqueue(message("m1", 1));
+
+        assertEquals(List.of("m1"), new ArrayList<>(transport.documents.keySet()));
+        assertTrue(dao.rows.isEmpty());
+        assertEquals(List.of("m1"), listener.sent);
+        assertEquals(0, scheduledRetries);
+    }
+
+    @Test
+    public void failedSend_keepsMessageAndSchedulesRetry() {
+        transport.failuresLeft = 1;
+        outbox.enqueue(message("m1", 1));
+
+        assertEquals(1, dao.rows.size());
+        assertEquals(1, dao.rows.get("m1").attempts);
+        assertEquals(List.of("m1"), listener.failed);
+        assertEquals(1, scheduledRetries);
+
+        assertTrue(outbox.drain());
+        assertTrue(dao.rows.isEmpty());
+        assertEquals(List.of("m1"), listener.sent);
+    }
+
+    @Test
+    public void drain_sendsOldestFirstAndStopsAtFirstFailure() {
+        transport.failuresLeft = 3;
+        outbox.enqueue(message("m2", 2));
+        outbox.enqueue(message("m1", 1));
+        outbox.enqueue(message("m3", 3));
+        assertEquals(3, dao.rows.size());
+        assertTrue(transport.documents.isEmpty());
+
+        assertTrue(outbox.drain());
+        assertEquals(List.of("m1", "m2", "m3"), new ArrayList<>(transport.documents.keySet()));
+        assertEquals(List.of("m1", "m2", "m3"), listener.sent);
+    }
+
+    @Test
+    public void rejectedMessage_isMarkedFailedAndDoesNotBlockLaterMessages() {
+        transport.rejected.add("m1");
+        outbox.enqueue(message("m1", 1));
+        outbox.enqueue(message("m2", 2));
+
+        assertEquals(List.of("m2"), new ArrayList<>(transport.documents.keySet()));
+        assertEquals(List.of("m1"), listener.failed);
+        assertEquals(List.of("m2"), listener.sent);
+        assertTrue(dao.rows.get("m1").failed);
+        assertEquals(0, scheduledRetries);
+        // Tin lỗi vẫn nằm trong outbox để màn hình chat hiển thị là gửi lỗi
+        List<List<OutboxMessage>> pending = new ArrayList<>();
+        outbox.loadPending("a_b", pending::add);
+        assertEquals(1, pending.get(0).size());
+        assertTrue(outbox.drain());
+    }
+
+    @Test
+    public void tooManyAttempts_marksMessageFailed() {
+        transport.failuresLeft = Outbox.MAX_ATTEMPTS;
+        outbox.enqueue(message("m1", 1));
+        for (int i = 1; i < Outbox.MAX_ATTEMPTS - 1; i++) {
+            assertFalse(outbox.drain());
+        }
+        // Lần thử cuối cùng: bỏ cuộc, outbox coi như không còn tin chờ gửi nên worker dừng thử lại
+        assertTrue(outbox.drain());
+
+        assertTrue(dao.rows.get("m1").failed);
+        assertEquals(Outbox.MAX_ATTEMPTS, dao.rows.get("m1").attempts);
+        assertEquals(Outbox.MAX_ATTEMPTS - 1, scheduledRetries);
+        outbox.enqueue(message("m2", 2));
+        assertEquals(List.of("m2"), listener.sent);
+    }
+
+    @Test
+    public void retryAfterLostAck_writesSameDocumentOnce() {
+        // Lần ghi đầu tới được server nhưng không nhận được phản hồi
+        transport.loseNextAck = true;
+        outbox.enqueue(message("m1", 1));
+        assertEquals(1, dao.rows.size());
+
+        assertTrue(outbox.drain());
+        assertEquals(1, transport.documents.size());
+        assertEquals(2, transport.writes);
+    }
+
+    @Test
+    public void loadPending_returnsOnlyThatConversationInOrder() {
+        transport.failuresLeft = 10;
+        outbox.enqueue(message("m2", 2));
+        outbox.enqueue(message("m1", 1));
+        OutboxMessage other = message("x1", 0);
+        other.conversationKey = "other";
+        outbox.enqueue(other);
+
+        List<List<OutboxMessage>> result = new ArrayList<>();
+        outbox.loadPending("a_b", result::add);
+        assertEquals(List.of("m1", "m2"),
+                result.get(0).stream().map(m -> m.clientId).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void removedListener_isNotNotified() {
+        outbox.removeListener(listener);
+        outbox.enqueue(message("m1", 1));
+        assertTrue(listener.sent.isEmpty());
+    }
+
+    private static OutboxMessage message(String clientId, long timestamp) {
+        OutboxMessage message = new OutboxMessage();
+        message.clientId = clientId;
+        message.conversationKey = "a_b";
+        message.senderId = "a";
+        message.receiverId = "b";
+        message.message = "ciphertext-" + clientId;
+        message.timestamp = timestamp;
+        return message;
+    }
+
+    // Giống Firestore: document theo clientId, ghi lại thì ghi đè
+    private static class FakeTransport implements Outbox.Transport {
+        final Map<String, String> documents = new LinkedHashMap<>();
+        final Set<String> rejected = new HashSet<>();
+        int failuresLeft;
+        boolean loseNextAck;
+        int writes;
+
+        @Override
+        public void send(OutboxMessage message) throws Exception {
+            if (rejected.contains(message.clientId)) {
+                throw new Outbox.RejectedException(new Exception("PERMISSION_DENIED"));
+            }
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                throw new Exception("offline");
+            }
+            writes++;
+            documents.put(message.clientId, message.message);
+            if (loseNextAck) {
+                loseNextAck = false;
+                throw new Exception("timeout");
+            }
+        }
+    }
+
+    private static class RecordingListener implements Outbox.Listener {
+        final List<String> sent = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+
+        @Override
+        public void onSent(OutboxMessage message) {
+            sent.add(message.clientId);
+        }
+
+        @Override
+        public void onFailed(OutboxMessage message, Exception e) {
+            failed.add(message.clientId);
+        }
+    }
+
+    private static class MemoryOutboxDao implements OutboxDao {
+        final Map<String, OutboxMessage> rows = new LinkedHashMap<>();
+
+        @Override
+        public void insert(OutboxMessage message) {
+            rows.put(message.clientId, message);
+        }
+
+        @Override
+        public OutboxMessage getOldest() {
+            return rows.values().stream().filter(m -> !m.failed).min(Comparator.comparingLong(m -> m.timestamp)).orElse(null);
+        }
+
+        @Override
+        public List<OutboxMessage> getPending(String conversationKey) {
+            return rows.values().stream()
+                    .filter(m -> conversationKey.equals(m.conversationKey))
+                    .sorted(Comparator.comparingLong(m -> m.timestamp))
+                    .collect(Collectors.toList());
+        }
+
+        @Override
+        public void incrementAttempts(String clientId) {
+            OutboxMessage message = rows.get(clientId);
+            if (message != null) {
+                message.attempts++;
+            }
+        }
+
+        @Override
+        public void markFailed(String clientId) {
+            OutboxMessage message = rows.get(clientId);
+            if (message != null) {
+                message.failed = true;
+                message.attempts++;
+            }
+        }
+
+        @Override
+        public void delete(String clientId) {
+            rows.remove(clientId);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.androids.javachat.utilities;
+
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class PreferenceManagerTest {
+
+    private FakeSharedPreferences preferences;
+    private Queue<Runnable> applyQueue;
+    private PreferenceManager preferenceManager;
+
+    @Before
+    public void setUp() {
+        preferences = new FakeSharedPreferences();
+        preferences.values.put(Constant.KEY_USER_ID, "user-1");
+        preferences.values.put(Constant.KEY_SIGNED_IN, true);
+        applyQueue = new ArrayDeque<>();
+        preferenceManager = new PreferenceManager(preferences, applyQueue::add);
+    }
+
+    @Test
+    public void reads_comeFromSnapshotWithoutTouchingPreferences() {
+        int readsAfterLoad = preferences.reads;
+        for (int i = 0; i < 100; i++) {
+            assertEquals("user-1", preferenceManager.getString(Constant.KEY_USER_ID));
+            assertTrue(preferenceManager.getBoolean(Constant.KEY_SIGNED_IN));
+        }
+        assertNull(preferenceManager.getString(Constant.KEY_NAME));
+        assertEquals(readsAfterLoad, preferences.reads);
+    }
+
+    @Test
+    public void writes_areVisibleImmediatelyAndCoalescedIntoOneApply() {
+        preferenceManager.putString(Constant.KEY_NAME, "Tien");
+        preferenceManager.putString(Constant.KEY_EMAIL, "tien@example.com");
+        preferenceManager.putBoolean(Constant.KEY_SIGNED_IN, false);
+
+        assertEquals("Tien", preferenceManager.getString(Constant.KEY_NAME));
+        assertFalse(preferenceManager.getBoolean(Constant.KEY_SIGNED_IN));
+        assertEquals(0, preferences.applies);
+        assertEquals(1, applyQueue.size());
+
+        runPendingApplies();
+        assertEquals(1, preferences.applies);
+        assertEquals("tien@example.com", preferences.values.get(Constant.KEY_EMAIL));
+        assertEquals(false, preferences.values.get(Constant.KEY_SIGNED_IN));
+    }
+
+    @Test
+    public void clear_doesNotDropWritesMadeBeforeOrAfterIt() {
+        preferenceManager.putString(Constant.KEY_NAME, "Tien");
+        preferenceManager.clear();
+        preferenceManager.putBoolean(Constant.KEY_SIGNED_IN, false);
+        runPendingApplies();
+
+        assertNull(preferenceManager.getString(Constant.KEY_USER_ID));
+        assertNull(preferenceManager.getString(Constant.KEY_NAME));
+        assertFalse(preferenceManager.getBoolean(Constant.KEY_SIGNED_IN));
+        assertEquals(1, preferences.values.size());
+        assertEquals(false, preferences.values.get(Constant.KEY_SIGNED_IN));
+    }
+
+    @Test
+    public void externalChange_refreshesSnapshot() {
+        SharedPreferences.Editor editor = preferences.edit();
+        editor.putString(Constant.KEY_USER_ID, "user-2").putString(Constant.KEY_NAME, "Other").apply();
+
+        assertEquals("user-2", preferenceManager.getString(Constant.KEY_USER_ID));
+        assertEquals("Other", preferenceManager.getString(Constant.KEY_NAME));
+    }
+
+    @Test
+    public void staleNotification_doesNotOverwritePendingWrite() {
+        preferenceManager.putString(Constant.KEY_NAME, "first");
+        runPendingApplies();
+        preferenceManager.putString(Constant.KEY_NAME, "second");
+
+        // Thông báo trễ của lần apply trước tới khi giá trị mới chưa được ghi
+        preferences.notifyListeners(Constant.KEY_NAME);
+        assertEquals("second", preferenceManager.getString(Constant.KEY_NAME));
+
+        runPendingApplies();
+        assertEquals("second", preferences.values.get(Constant.KEY_NAME));
+    }
+
+    private void runPendingApplies() {
+        Runnable task;
+        while ((task = applyQueue.poll()) != null) {
+            task.run();
+        }
+    }
+
+    // SharedPreferences trong bộ nhớ, đếm số lần đọc và apply
+    private static class FakeSharedPreferences implements SharedPreferences {
+        final Map<String, Object> values = new HashMap<>();
+        final List<OnSharedPreferenceChangeListener> listeners = new ArrayList<>();
+        int reads;
+        int applies;
+
+        @Override
+        public Map<String, ?> getAll() {
+            reads++;
+            return new HashMap<>(values);
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+            reads++;
+            Object value = values.get(key);
+            return value != null ? (String) value : defValue;
+        }
+
+        @Override
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            reads++;
+            Object value = values.get(key);
+            return value != null ? (Boolean) value : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new FakeEditor();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            listeners.remove(listener);
+        }
+
+        void notifyListeners(String key) {
+            for (OnSharedPreferenceChangeListener listener : new ArrayList<>(listeners)) {
+                listener.onSharedPreferenceChanged(this, key);
+            }
+        }
+
+        // Giống SharedPreferencesImpl: clear() chạy trước, sau đó mới tới các put/remove
+        private class FakeEditor implements Editor {
+            private final Map<String, Object> changes = new HashMap<>();
+            private boolean clearRequested;
+
+            @Override
+            public Editor putString(String key, String value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor putStringSet(String key, Set<String> values) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putInt(String key, int value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putLong(String key, long value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putFloat(String key, float value) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Editor putBoolean(String key, boolean value) {
+                changes.put(key, value);
+                return this;
+            }
+
+            @Override
+            public Editor remove(String key) {
+                changes.put(key, null);
+                return this;
+            }
+
+            @Override
+            public Editor clear() {
+                clearRequested = true;
+                return this;
+            }
+
+            @Override
+            public boolean commit() {
+                apply();
+                return true;
+            }
+
+            @Override
+            public void apply() {
+                applies++;
+                if (clearRequested) {
+                    values.clear();
+                }
+                for (Map.Entry<String, Object> change : changes.entrySet()) {
+                    if (change.getValue() == null) {
+                        values.remove(change.getKey());
+                    } else {
+                        values.put(change.getKey(), change.getValue());
+                    }
+                }
+                if (clearRequested) {
+                    notifyListeners(null);
+                }
+                for (String key : changes.keySet()) {
+                    notifyListeners(key);
+                }
+            }
+        }
+    }
+}
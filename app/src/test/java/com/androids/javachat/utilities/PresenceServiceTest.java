@@ -0,0 +1,176 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class PresenceServiceTest {
+
+    private long now;
+    private String userId;
+    private List<long[]> dueTimes;
+    private List<Runnable> tasks;
+    private FakeStore store;
+    private PresenceService presence;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000L;
+        userId = "alice";
+        dueTimes = new ArrayList<>();
+        tasks = new ArrayList<>();
+        store = new FakeStore();
+        presence = new PresenceService(store, (task, delayMillis) -> {
+            dueTimes.add(new long[]{now + delayMillis});
+            tasks.add(task);
+        }, Runnable::run, () -> now, () -> userId);
+    }
+
+    @Test
+    public void foreground_writesOnlineAndHeartbeats() {
+        presence.onForeground();
+        assertEquals(List.of("alice:true"), store.writes);
+
+        advance(PresenceService.HEARTBEAT_MILLIS * 3);
+        assertEquals(4, store.writes.size());
+    }
+
+    @Test
+    public void quickBackgroundAndReturn_writesNothingExtra() {
+        presence.onForeground();
+        advance(10_000);
+        presence.onBackground();
+        advance(PresenceService.DEBOUNCE_MILLIS - 1);
+        presence.onForeground();
+        advance(1);
+
+        assertEquals(List.of("alice:true"), store.writes);
+        // Nhịp heartbeat cũ vẫn giữ đúng chu kỳ sau khi quay lại
+        advance(PresenceService.HEARTBEAT_MILLIS);
+        assertEquals(2, store.writes.size());
+    }
+
+    @Test
+    public void background_writesOfflineAfterDebounceAndStopsHeartbeat() {
+        presence.onForeground();
+        presence.onBackground();
+        advance(PresenceService.DEBOUNCE_MILLIS);
+
+        assertEquals(List.of("alice:true", "alice:false"), store.writes);
+        advance(PresenceService.HEARTBEAT_MILLIS * 5);
+        assertEquals(2, store.writes.size());
+    }
+
+    @Test
+    public void signOut_writesOfflineAndStartResumesAfterNextSignIn() {
+        presence.onForeground();
+        presence.signOut("alice");
+        userId = null;
+        advance(PresenceService.HEARTBEAT_MILLIS * 2);
+        assertEquals(List.of("alice:true", "alice:false"), store.writes);
+
+        userId = "bob";
+        presence.start();
+        assertEquals("bob:true", store.writes.get(2));
+    }
+
+    @Test
+    public void observers_shareOneListenerPerUser() {
+        List<Boolean> first = new ArrayList<>();
+        List<Boolean> second = new ArrayList<>();
+        PresenceService.Registration a = presence.observe("bob", (online, lastSeen) -> first.add(online));
+        store.emit("bob", true, now);
+        PresenceService.Registration b = presence.observe("bob", (online, lastSeen) -> second.add(online));
+
+        assertEquals(1, store.listenCount);
+        assertEquals(List.of(true), first);
+        assertEquals(List.of(true), second);
+
+        a.remove();
+        assertEquals(0, store.removedCount);
+        b.remove();
+        assertEquals(1, store.removedCount);
+        assertEquals(0, presence.watchedUserCount());
+    }
+
+    @Test
+    public void staleHeartbeat_isReportedOfflineAfterTtl() {
+        List<Boolean> states = new ArrayList<>();
+        presence.observe("bob", (online, lastSeen) -> states.add(online));
+        store.emit("bob", true, now);
+
+        // Máy của bob bị crash: availability vẫn là 1 nhưng không còn heartbeat
+        advance(PresenceService.ONLINE_TTL_MILLIS);
+        assertEquals(List.of(true, false), states);
+    }
+
+    @Test
+    public void heartbeats_keepObservedUserOnlineWithoutRepeatedCallbacks() {
+        List<Boolean> states = new ArrayList<>();
+        presence.observe("bob", (online, lastSeen) -> states.add(online));
+        for (int i = 0; i < 5; i++) {
+            store.emit("bob", true, now);
+            advance(PresenceService.HEARTBEAT_MILLIS);
+        }
+        assertEquals(List.of(true), states);
+    }
+
+    @Test
+    public void availabilityWithoutLastSeen_isOffline() {
+        List<Boolean> states = new ArrayList<>();
+        presence.observe("bob", (online, lastSeen) -> states.add(online));
+        store.emit("bob", true, 0);
+        assertEquals(List.of(false), states);
+    }
+
+    // Chạy các lượt hẹn giờ tới hạn theo thứ tự thời gian
+    private void advance(long millis) {
+        long target = now + millis;
+        while (true) {
+            int next = -1;
+            for (int i = 0; i < tasks.size(); i++) {
+                if (dueTimes.get(i)[0] <= target && (next < 0 || dueTimes.get(i)[0] < dueTimes.get(next)[0])) {
+                    next = i;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            now = Math.max(now, dueTimes.remove(next)[0]);
+            tasks.remove(next).run();
+        }
+        now = target;
+    }
+
+    private static class FakeStore implements PresenceService.Store {
+        final List<String> writes = new ArrayList<>();
+        final Map<String, PresenceService.SnapshotListener> listeners = new HashMap<>();
+        int listenCount;
+        int removedCount;
+
+        @Override
+        public void write(String userId, boolean online) {
+            writes.add(userId + ":" + online);
+        }
+
+        @Override
+        public PresenceService.Registration listen(String userId, PresenceService.SnapshotListener listener) {
+            listenCount++;
+            listeners.put(userId, listener);
+            return () -> {
+                removedCount++;
+                listeners.remove(userId);
+            };
+        }
+
+        void emit(String userId, boolean available, long lastSeen) {
+            listeners.get(userId).onSnapshot(available, lastSeen);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.androids.javachat.utilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class RateLimiterTest {
+
+    private static final int MAX = 10;
+    private static final long WINDOW_MS = 60 * 1000;
+    private static final long INTERVAL_MS = WINDOW_MS / MAX;
+
+    private AtomicLong now;
+    private MemoryStore store;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1_700_000_000_000L);
+        store = new MemoryStore();
+    }
+
+    @Test
+    public void burstIsLimitedThenRefillsOnePermitPerInterval() {
+        RateLimiter limiter = newLimiter();
+        for (int i = 0; i < MAX; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+        assertFalse(limiter.canAcquire());
+
+        now.addAndGet(INTERVAL_MS);
+        assertTrue(limiter.canAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        now.addAndGet(WINDOW_MS);
+        for (int i = 0; i < MAX; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertFalse(limiter.tryAcquire());
+    }
+
+    @Test
+    public void concurrentSenders_neverExceedLimit() throws Exception {
+        RateLimiter limiter = newLimiter();
+        int threads = 8;
+        int attemptsPerThread = 1_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger granted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < attemptsPerThread; i++) {
+                    if (limiter.tryAcquire()) {
+                        granted.incrementAndGet();
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertEquals(MAX, granted.get());
+    }
+
+    @Test
+    public void clockJumpingBack_doesNotLockOutLongerThanOneInterval() {
+        RateLimiter limiter = newLimiter();
+        for (int i = 0; i < MAX; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+
+        // Người dùng chỉnh đồng hồ lùi một ngày
+        now.addAndGet(-24 * 60 * 60 * 1000L);
+        assertFalse(limiter.tryAcquire());
+        now.addAndGet(INTERVAL_MS);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void clockJumpingForward_refillsAtMostToCapacity() {
+        RateLimiter limiter = newLimiter();
+        assertTrue(limiter.tryAcquire());
+
+        now.addAndGet(365L * 24 * 60 * 60 * 1000);
+        int granted = 0;
+        while (limiter.tryAcquire()) {
+            granted++;
+        }
+        assertEquals(MAX, granted);
+    }
+
+    @Test
+    public void state_isPersistedPeriodicallyAndRestored() {
+        RateLimiter limiter = newLimiter();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire());
+        }
+        assertEquals(0, store.saves);
+
+        now.addAndGet(RateLimiter.PERSIST_INTERVAL_MS);
+        assertTrue(limiter.tryAcquire());
+        assertEquals(1, store.saves);
+        limiter.persist();
+        assertEquals(1, store.saves);
+
+        // Sau khi khởi động lại: đã dùng 6 lượt, 1 lượt hồi lại trong PERSIST_INTERVAL_MS
+        RateLimiter restored = newLimiter();
+        int granted = 0;
+        while (restored.tryAcquire()) {
+            granted++;
+        }
+        assertEquals(MAX - 6 + (int) (RateLimiter.PERSIST_INTERVAL_MS / INTERVAL_MS), granted);
+    }
+
+    @Test
+    public void restoredStateFromSkewedClock_isClampedToOneWindow() {
+        store.state = String.valueOf(now.get() + 7 * 24 * 60 * 60 * 1000L);
+        RateLimiter limiter = newLimiter();
+        assertFalse(limiter.tryAcquire());
+
+        now.addAndGet(INTERVAL_MS);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void corruptState_startsWithFullBucket() {
+        store.state = "3";
+        RateLimiter legacy = newLimiter();
+        assertTrue(legacy.canAcquire());
+
+        store.state = "not-a-number";
+        RateLimiter corrupt = newLimiter();
+        int granted = 0;
+        while (corrupt.tryAcquire()) {
+            granted++;
+        }
+        assertEquals(MAX, granted);
+    }
+
+    @Test
+    public void reset_restoresFullBucketAndPersists() {
+        RateLimiter limiter = newLimiter();
+        while (limiter.tryAcquire()) {
+            // Dùng hết lượt
+        }
+        limiter.reset();
+        assertEquals(1, store.saves);
+        assertTrue(limiter.canAcquire());
+    }
+
+    private RateLimiter newLimiter() {
+        return new RateLimiter(MAX, WINDOW_MS, store, now::get);
+    }
+
+    private static class MemoryStore implements RateLimiter.Store {
+        String state;
+        int saves;
+
+        @Override
+        public String load() {
+            return state;
+        }
+
+        @Override
+        public void save(String state) {
+            this.state = state;
+            saves++;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.models.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class UserPrefixIndexTest {
+
+    private static final int USERS = 10_000;
+    private static final int QUERIES = 200;
+    private static final int RESULT_LIMIT = 50;
+    private static final String[] FAMILY_NAMES = {"Nguyễn", "Trần", "Lê", "Phạm", "Hoàng", "Đặng", "Vũ", "Bùi"};
+    private static final String[] GIVEN_NAMES = {"Tiến", "Minh", "Anh", "Đức", "Hương", "Linh", "Quân", "Thảo"};
+
+    private List<User> users;
+    private List<String> queries;
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(user("user-" + i, FAMILY_NAMES[random.nextInt(FAMILY_NAMES.length)] + " "
+                    + GIVEN_NAMES[random.nextInt(GIVEN_NAMES.length)] + " " + i));
+        }
+        queries = new ArrayList<>();
+        for (int i = 0; i < QUERIES; i++) {
+            String name = UserPrefixIndex.normalize(users.get(random.nextInt(USERS)).name);
+            queries.add(name.substring(0, 1 + random.nextInt(Math.min(6, name.length()))));
+        }
+    }
+
+    @Test
+    public void normalize_foldsCaseAndVietnameseDiacritics() {
+        assertEquals("nguyen minh tien", UserPrefixIndex.normalize("  Nguyễn   Minh Tiến "));
+        assertEquals("dang duc", UserPrefixIndex.normalize("Đặng Đức"));
+        assertEquals("", UserPrefixIndex.normalize(null));
+    }
+
+    @Test
+    public void search_matchesFullNamePrefixAndIgnoresDiacritics() {
+        UserPrefixIndex index = new UserPrefixIndex();
+        index.put(user("1", "Nguyễn Minh Tiến"));
+        index.put(user("2", "Tiên Lê"));
+        index.put(user("3", "Trần Anh"));
+
+        // Giống khoảng nameLower trên Firestore: từ giữa tên không khớp
+        assertEquals(List.of("2"), ids(index.search("tie", 10)));
+        assertTrue(index.search("minh", 10).isEmpty());
+        assertEquals(List.of("1"), ids(index.search("Nguyen M", 10)));
+        assertTrue(index.search("x", 10).isEmpty());
+        assertEquals(3, index.search("", 10).size());
+    }
+
+    @Test
+    public void put_withNewNameReplacesOldKeys() {
+        UserPrefixIndex index = new UserPrefixIndex();
+        index.put(user("1", "Minh"));
+        index.put(user("1", "Quân"));
+
+        assertTrue(index.search("minh", 10).isEmpty());
+        assertEquals(List.of("1"), ids(index.search("quan", 10)));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    public void search_respectsLimitAndReturnsEachUserOnce() {
+        UserPrefixIndex index = new UserPrefixIndex();
+        index.put(user("1", "An An"));
+        for (int i = 2; i < 100; i++) {
+            index.put(user(String.valueOf(i), "An " + i));
+        }
+        List<User> results = index.search("an", 10);
+        assertEquals(10, results.size());
+        assertEquals(10, ids(results).stream().distinct().count());
+    }
+
+    @Test
+    public void search_at10kUsersMatchesLinearScan() {
+        UserPrefixIndex index = new UserPrefixIndex();
+        index.putAll(users);
+
+        for (String query : queries) {
+            Set<String> expected = new HashSet<>();
+            for (User user : users) {
+                if (UserPrefixIndex.normalize(user.name).startsWith(query)) {
+                    expected.add(user.id);
+                }
+            }
+            assertEquals(query, expected, new HashSet<>(ids(index.search(query, USERS))));
+            assertEquals(query, Math.min(RESULT_LIMIT, expected.size()), index.search(query, RESULT_LIMIT).size());
+        }
+    }
+
+    private static User user(String id, String name) {
+        User user = new User();
+        user.id = id;
+        user.name = name;
+        user.isEmailVerified = true;
+        return user;
+    }
+
+    private static List<String> ids(List<User> users) {
+        List<String> ids = new ArrayList<>();
+        for (User user : users) {
+            ids.add(user.id);
+        }
+        return ids;
+    }
+}
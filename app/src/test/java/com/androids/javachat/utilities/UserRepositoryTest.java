@@ -0,0 +1,230 @@
+package com.androids.javachat.utilities;
+
+import com.androids.javachat.database.UserDao;
+import com.androids.javachat.models.CachedUser;
+import com.androids.javachat.models.User;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class UserRepositoryTest {
+
+    private long now;
+    private MemoryUserDao dao;
+    private FakeSource source;
+    private UserRepository repository;
+
+    @Before
+    public void setUp() {
+        now = 1_000_000L;
+        dao = new MemoryUserDao();
+        source = new FakeSource();
+        repository = new UserRepository(dao, source, Runnable::run, Runnable::run, () -> now);
+    }
+
+    @Test
+    public void secondGet_isServedFromMemoryWithoutNetwork() {
+        source.users.put("bob", user("bob", "token-1"));
+        List<User> results = new ArrayList<>();
+
+        repository.get("bob", collect(results));
+        source.completeAll();
+        repository.get("bob", collect(results));
+
+        assertEquals(1, source.fetches);
+        assertEquals(2, results.size());
+        assertEquals("token-1", results.get(1).token);
+        assertNotNull(dao.rows.get("bob"));
+    }
+
+    @Test
+    public void concurrentGets_shareOneRequest() {
+        source.users.put("bob", user("bob", "token-1"));
+        List<User> results = new ArrayList<>();
+
+        for (int i = 0; i < 5; i++) {
+            repository.get("bob", collect(results));
+        }
+        assertEquals(1, source.fetches);
+        assertTrue(results.isEmpty());
+
+        source.completeAll();
+        assertEquals(5, results.size());
+    }
+
+    @Test
+    public void diskCopy_isUsedAfterRestartWithinTtl() {
+        dao.rows.put("bob", CachedUser.from(user("bob", "token-1"), now));
+        List<User> results = new ArrayList<>();
+
+        repository.get("bob", collect(results));
+
+        assertEquals(0, source.fetches);
+        assertEquals("token-1", results.get(0).token);
+    }
+
+    @Test
+    public void expiredEntry_isRefetched() {
+        source.users.put("bob", user("bob", "token-1"));
+        List<User> results = new ArrayList<>();
+        repository.get("bob", collect(results));
+        source.completeAll();
+
+        now += UserRepository.TTL_MS;
+        source.users.put("bob", user("bob", "token-2"));
+        repository.get("bob", collect(results));
+        source.completeAll();
+
+        assertEquals(2, source.fetches);
+        assertEquals("token-2", results.get(1).token);
+    }
+
+    @Test
+    public void put_fromSnapshotListenerReplacesCachedProfile() {
+        repository.put(user("bob", "token-1"));
+        repository.put(user("bob", "token-2"));
+
+        assertEquals("token-2", repository.peek("bob").token);
+        assertEquals("token-2", dao.rows.get("bob").token);
+    }
+
+    @Test
+    public void invalidate_forcesNextGetToHitNetwork() {
+        repository.put(user("bob", "token-1"));
+        repository.invalidate("bob");
+        assertNull(repository.peek("bob"));
+
+        source.users.put("bob", user("bob", "token-2"));
+        repository.get("bob", collect(new ArrayList<>()));
+        assertEquals(1, source.fetches);
+    }
+
+    @Test
+    public void networkFailure_fallsBackToStaleDiskCopy() {
+        dao.rows.put("bob", CachedUser.from(user("bob", "token-old"), now - UserRepository.TTL_MS));
+        List<User> results = new ArrayList<>();
+
+        repository.get("bob", collect(results));
+        source.failAll(new Exception("offline"));
+
+        assertEquals("token-old", results.get(0).token);
+    }
+
+    @Test
+    public void memoryCache_isBoundedLru() {
+        for (int i = 0; i <= UserRepository.MAX_MEMORY_ENTRIES; i++) {
+            repository.put(user("user-" + i, null));
+        }
+        assertNull(repository.peek("user-0"));
+        assertNotNull(repository.peek("user-" + UserRepository.MAX_MEMORY_ENTRIES));
+    }
+
+    @Test
+    public void searchCached_findsVerifiedUsersFromDiskAndLaterPuts() {
+        dao.rows.put("bob", CachedUser.from(user("bob", null), now));
+        repository.loadIndex(() -> { });
+        repository.put(user("bobby", null));
+        User unverified = user("boris", null);
+        unverified.isEmailVerified = false;
+        repository.put(unverified);
+
+        List<User> results = repository.searchCached("bo", 10);
+        assertEquals(2, results.size());
+        assertEquals("bob", results.get(0).id);
+        assertEquals("bobby", results.get(1).id);
+
+        repository.invalidate("bob");
+        assertEquals(1, repository.searchCached("bo", 10).size());
+    }
+
+    private static User user(String id, String token) {
+        User user = new User();
+        user.id = id;
+        user.name = id;
+        user.token = token;
+        user.isEmailVerified = true;
+        return user;
+    }
+
+    private static UserRepository.Callback<User> collect(List<User> results) {
+        return new UserRepository.Callback<User>() {
+            @Override
+            public void onSuccess(User result) {
+                results.add(result);
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                fail("Unexpected failure: " + e);
+            }
+        };
+    }
+
+    // Giữ các request lại cho tới khi test trả lời, để mô phỏng nhiều lượt get cùng lúc
+    private static class FakeSource implements UserRepository.Source {
+        final Map<String, User> users = new HashMap<>();
+        final List<Map.Entry<String, UserRepository.Callback<User>>> pending = new ArrayList<>();
+        int fetches;
+
+        @Override
+        public void fetch(String userId, UserRepository.Callback<User> callback) {
+            fetches++;
+            pending.add(Map.entry(userId, callback));
+        }
+
+        void completeAll() {
+            List<Map.Entry<String, UserRepository.Callback<User>>> requests = new ArrayList<>(pending);
+            pending.clear();
+            for (Map.Entry<String, UserRepository.Callback<User>> request : requests) {
+                request.getValue().onSuccess(users.get(request.getKey()));
+            }
+        }
+
+        void failAll(Exception e) {
+            List<Map.Entry<String, UserRepository.Callback<User>>> requests = new ArrayList<>(pending);
+            pending.clear();
+            for (Map.Entry<String, UserRepository.Callback<User>> request : requests) {
+                request.getValue().onFailure(e);
+            }
+        }
+    }
+
+    private static class MemoryUserDao implements UserDao {
+        final Map<String, CachedUser> rows = new HashMap<>();
+
+        @Override
+        public void insertAll(List<CachedUser> users) {
+            for (CachedUser user : users) {
+                rows.put(user.id, user);
+            }
+        }
+
+        @Override
+        public CachedUser get(String userId) {
+            return rows.get(userId);
+        }
+
+        @Override
+        public List<CachedUser> getVerified(int limit) {
+            List<CachedUser> verified = new ArrayList<>();
+            for (CachedUser user : rows.values()) {
+                if (user.isEmailVerified && verified.size() < limit) {
+                    verified.add(user);
+                }
+            }
+            return verified;
+        }
+
+        @Override
+        public void delete(String userId) {
+            rows.remove(userId);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.androids.javachat.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.Until;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+
+import kotlin.Unit;
+
+/**
+ * Đo khởi động lạnh tới khi danh sách hội thoại hiển thị: timeToInitialDisplay là frame đầu của màn hình mở app,
+ * timeToFullDisplay là lúc MainActivity gọi reportFullyDrawn sau snapshot hội thoại đầu tiên.
+ * Thiết bị cần đăng nhập sẵn một tài khoản để app đi thẳng vào MainActivity.
+ * Chạy: ./gradlew :macrobenchmark:connectedBenchmarkAndroidTest
+ */
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+
+    private static final String PACKAGE_NAME = "com.androids.javachat";
+    private static final int ITERATIONS = 10;
+    private static final long LIST_TIMEOUT_MS = 15_000;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartupToConversationList() {
+        benchmarkRule.measureRepeated(
+                PACKAGE_NAME,
+                Collections.singletonList(new StartupTimingMetric()),
+                CompilationMode.DEFAULT,
+                StartupMode.COLD,
+                ITERATIONS,
+                scope -> {
+                    scope.pressHome();
+                    return Unit.INSTANCE;
+                },
+                scope -> {
+                    scope.startActivityAndWait();
+                    scope.getDevice().wait(Until.hasObject(By.res(PACKAGE_NAME, "conversationsRecyclerView")), LIST_TIMEOUT_MS);
+                    return Unit.INSTANCE;
+                });
+    }
+}